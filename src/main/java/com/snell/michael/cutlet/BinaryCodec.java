@@ -0,0 +1,289 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import com.snell.michael.cutlet.converters.RawNumber;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes json-lib trees in a binary format. Subclasses encode individual values, and build containers with
+ * the raw JSONNodes accessors so that strings are never reinterpreted by json-lib
+ */
+abstract class BinaryCodec {
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    // Byte and text strings longer than this are read as they arrive, rather than allocated at their declared length
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Deepest nesting of containers read, whatever the ParseOptions, as decoding recurses once per level
+     */
+    static final int MAX_DEPTH = 1000;
+
+    void write(Object node, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        writeHeader(out);
+        writeValue(out, node);
+        out.flush();
+    }
+
+    Object read(InputStream inputStream) throws IOException {
+        return read(inputStream, MAX_DEPTH);
+    }
+
+    /**
+     * @param maxDepth Deepest nesting of containers to read, no more than MAX_DEPTH
+     */
+    Object read(InputStream inputStream, int maxDepth) throws IOException {
+        return readDocument(new Input(new BufferedInputStream(inputStream), Math.min(maxDepth, MAX_DEPTH)));
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof JSONObject && !((JSONObject) value).isNullObject()) {
+            Map<Object, Object> properties = JSONNodes.properties((JSONObject) value);
+            writeObjectStart(out, properties.size());
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                writeKey(out, entry.getKey().toString());
+                writeValue(out, entry.getValue());
+            }
+            writeObjectEnd(out);
+        } else if (value instanceof JSONArray) {
+            List<Object> elements = JSONNodes.elements((JSONArray) value);
+            writeArrayStart(out, elements.size());
+            for (Object element : elements) {
+                writeValue(out, element);
+            }
+            writeArrayEnd(out);
+        } else if (value == null || value instanceof JSONNull || value instanceof JSONObject) {
+            writeNull(out);
+        } else if (value instanceof Boolean) {
+            writeBoolean(out, (Boolean) value);
+        } else if (value instanceof RawNumber) {
+            writeRawNumber(out, (RawNumber) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeLong(out, ((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            BigInteger bigInteger = (BigInteger) value;
+            if (bigInteger.bitLength() < 64) {
+                writeLong(out, bigInteger.longValue());
+            } else {
+                writeBigInteger(out, bigInteger);
+            }
+        } else if (value instanceof Double || value instanceof Float) {
+            writeDouble(out, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            writeBigDecimal(out, value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString()));
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    /**
+     * Integers as integers, and decimals as doubles unless that would lose precision
+     */
+    private void writeRawNumber(DataOutputStream out, RawNumber number) throws IOException {
+        if (number.isIntegral()) {
+            writeValue(out, new BigInteger(number.toString()));
+        } else {
+            BigDecimal bigDecimal = number.bigDecimalValue();
+            double d = bigDecimal.doubleValue();
+            if (!Double.isInfinite(d) && new BigDecimal(Double.toString(d)).compareTo(bigDecimal) == 0) {
+                writeDouble(out, d);
+            } else {
+                writeBigDecimal(out, bigDecimal);
+            }
+        }
+    }
+
+    // Encoding
+
+    protected void writeHeader(DataOutputStream out) throws IOException {
+    }
+
+    protected abstract void writeObjectStart(DataOutputStream out, int size) throws IOException;
+
+    protected void writeObjectEnd(DataOutputStream out) throws IOException {
+    }
+
+    protected void writeKey(DataOutputStream out, String key) throws IOException {
+        writeString(out, key);
+    }
+
+    protected abstract void writeArrayStart(DataOutputStream out, int size) throws IOException;
+
+    protected void writeArrayEnd(DataOutputStream out) throws IOException {
+    }
+
+    protected abstract void writeNull(DataOutputStream out) throws IOException;
+
+    protected abstract void writeBoolean(DataOutputStream out, boolean value) throws IOException;
+
+    protected abstract void writeLong(DataOutputStream out, long value) throws IOException;
+
+    /**
+     * @param value Integer outside the range of a long
+     */
+    protected abstract void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException;
+
+    protected abstract void writeBigDecimal(DataOutputStream out, BigDecimal value) throws IOException;
+
+    protected abstract void writeDouble(DataOutputStream out, double value) throws IOException;
+
+    protected abstract void writeString(DataOutputStream out, String value) throws IOException;
+
+    // Decoding
+
+    /**
+     * @return JSONObject, JSONArray, JSONNull, Boolean, Number or String
+     */
+    protected abstract Object readDocument(DataInputStream in) throws IOException;
+
+    /**
+     * Call before reading the content of a container, and exit after
+     */
+    protected static void enter(DataInputStream in) {
+        Input input = (Input) in;
+        if (++input.depth > input.maxDepth) {
+            throw ParseLimits.exceeded("nesting depth", input.depth, input.maxDepth);
+        }
+    }
+
+    protected static void exit(DataInputStream in) {
+        ((Input) in).depth--;
+    }
+
+    protected static void put(JSONObject jsonObject, String key, Object value) {
+        JSONNodes.properties(jsonObject).put(key, value);
+    }
+
+    protected static void add(JSONArray jsonArray, Object value) {
+        JSONNodes.elements(jsonArray).add(value);
+    }
+
+    /**
+     * @return Integer if the value fits, otherwise Long - as json-lib would parse it
+     */
+    protected static Number toNumber(long value) {
+        return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) ? (Number) (int) value : (Number) value;
+    }
+
+    protected static Number toNumber(BigInteger value) {
+        return (value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) ? toNumber(value.longValue()) : value;
+    }
+
+    /**
+     * @return The value of a 64 bit unsigned integer
+     */
+    protected static Number toUnsignedNumber(long value) {
+        return value >= 0 ? toNumber(value) : new BigInteger(Long.toHexString(value), 16);
+    }
+
+    protected static byte[] toUTF8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected static String readUTF8(DataInputStream in, long length) throws IOException {
+        return new String(readBytes(in, length), StandardCharsets.UTF_8);
+    }
+
+    protected static byte[] readBytes(DataInputStream in, long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw error(in, "Invalid length [" + length + "]");
+        }
+        if (length <= CHUNK_SIZE) {
+            byte[] bytes = new byte[(int) length];
+            in.readFully(bytes);
+            return bytes;
+        }
+        // The length is only declared, so memory is taken as the bytes arrive and truncated input fails early
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_SIZE);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (long remaining = length; remaining > 0; ) {
+            int n = (int) Math.min(remaining, CHUNK_SIZE);
+            in.readFully(chunk, 0, n);
+            bytes.write(chunk, 0, n);
+            remaining -= n;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return Error for invalid input, giving the number of bytes read when it was found
+     */
+    protected static CutletRuntimeException error(DataInputStream in, String message) {
+        return new CutletRuntimeException("Invalid binary data at offset [" + ((Input) in).offset.count + "]: " + message);
+    }
+
+    /**
+     * Input of one document, with the nesting depth reached
+     */
+    private static final class Input extends DataInputStream {
+        private final Offset offset;
+        private final int maxDepth;
+        private int depth;
+
+        private Input(InputStream inputStream, int maxDepth) {
+            super(new Offset(inputStream));
+            this.offset = (Offset) in;
+            this.maxDepth = maxDepth;
+        }
+    }
+
+    /**
+     * Counts the bytes read, for errors
+     */
+    private static final class Offset extends FilterInputStream {
+        private long count;
+
+        private Offset(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
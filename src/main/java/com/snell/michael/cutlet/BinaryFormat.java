@@ -0,0 +1,31 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+/**
+ * Binary encodings of the JSON data model, for JSON.writeBinary and JSON.parseBinary
+ */
+public enum BinaryFormat {
+    /**
+     * Concise Binary Object Representation (RFC 7049) - big numbers use tags 2, 3 and 4
+     */
+    CBOR(new CBORCodec()),
+    /**
+     * Smile, written without shared name or value back references (which are understood when reading)
+     */
+    SMILE(new SmileCodec()),
+    /**
+     * MessagePack - BigDecimals, and integers outside the 64 bit range, are written as strings
+     */
+    MESSAGE_PACK(new MessagePackCodec());
+
+    private final BinaryCodec codec;
+
+    BinaryFormat(BinaryCodec codec) {
+        this.codec = codec;
+    }
+
+    BinaryCodec getCodec() {
+        return codec;
+    }
+}
@@ -0,0 +1,103 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers for encoding output, so that text already held as a String or other CharSequence reaches a
+ * channel without an intermediate byte array. The text itself is not streamed
+ */
+final class BufferPool {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED = 16;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private BufferPool() {}
+
+    static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            POOLED.decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+    }
+
+    static void release(ByteBuffer buffer) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Encode text as UTF-8 into a channel, a pooled buffer at a time. Blocks until all of it is written
+     */
+    static void write(CharSequence text, WritableByteChannel channel) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        CharsetEncoder encoder = newEncoder();
+        ByteBuffer buffer = acquire();
+        try {
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, buffer, true);
+                drain(buffer, channel);
+            } while (result.isOverflow());
+            do {
+                result = encoder.flush(buffer);
+                drain(buffer, channel);
+            } while (result.isOverflow());
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Encode text as UTF-8 directly into a buffer
+     * @throws CutletRuntimeException If the buffer does not have room for all of it, leaving its position unchanged
+     */
+    static void write(CharSequence text, ByteBuffer buffer) {
+        int start = buffer.position();
+        CharsetEncoder encoder = newEncoder();
+        CoderResult result = encoder.encode(CharBuffer.wrap(text), buffer, true);
+        if (!result.isOverflow()) {
+            result = encoder.flush(buffer);
+        }
+        if (result.isOverflow()) {
+            buffer.position(start);
+            throw new CutletRuntimeException("Buffer too small, only [" + buffer.remaining() + "] bytes remaining");
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Unpaired surrogates are replaced, as String.getBytes does
+     */
+    private static CharsetEncoder newEncoder() {
+        return StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
@@ -0,0 +1,315 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * CBOR (RFC 7049). Reads definite and indefinite length items, half, single and double precision floats, and tags 2
+ * and 3 (big integers) and 4 (decimal fractions) - other tags are ignored
+ */
+final class CBORCodec extends BinaryCodec {
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int BYTES = 2;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE = 7;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xff;
+
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_DECIMAL_FRACTION = 4;
+
+    // Encoding
+
+    @Override
+    protected void writeObjectStart(DataOutputStream out, int size) throws IOException {
+        writeHead(out, MAP, size);
+    }
+
+    @Override
+    protected void writeArrayStart(DataOutputStream out, int size) throws IOException {
+        writeHead(out, ARRAY, size);
+    }
+
+    @Override
+    protected void writeNull(DataOutputStream out) throws IOException {
+        out.write(0xf6);
+    }
+
+    @Override
+    protected void writeBoolean(DataOutputStream out, boolean value) throws IOException {
+        out.write(value ? 0xf5 : 0xf4);
+    }
+
+    @Override
+    protected void writeLong(DataOutputStream out, long value) throws IOException {
+        if (value >= 0) {
+            writeHead(out, UNSIGNED, value);
+        } else {
+            writeHead(out, NEGATIVE, -1 - value);
+        }
+    }
+
+    @Override
+    protected void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+        boolean negative = value.signum() < 0;
+        BigInteger magnitude = negative ? value.negate().subtract(BigInteger.ONE) : value;
+        if (magnitude.bitLength() <= 64) {
+            writeHead(out, negative ? NEGATIVE : UNSIGNED, magnitude.longValue());
+        } else {
+            byte[] bytes = magnitude.toByteArray();
+            int offset = (bytes[0] == 0) ? 1 : 0;
+            writeHead(out, TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+            writeHead(out, BYTES, bytes.length - offset);
+            out.write(bytes, offset, bytes.length - offset);
+        }
+    }
+
+    @Override
+    protected void writeBigDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        writeHead(out, TAG, TAG_DECIMAL_FRACTION);
+        writeHead(out, ARRAY, 2);
+        writeLong(out, -(long) value.scale());
+        BigInteger mantissa = value.unscaledValue();
+        if (mantissa.bitLength() < 64) {
+            writeLong(out, mantissa.longValue());
+        } else {
+            writeBigInteger(out, mantissa);
+        }
+    }
+
+    @Override
+    protected void writeDouble(DataOutputStream out, double value) throws IOException {
+        if ((float) value == value) {
+            out.write(0xfa);
+            out.writeFloat((float) value);
+        } else {
+            out.write(0xfb);
+            out.writeDouble(value);
+        }
+    }
+
+    @Override
+    protected void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = toUTF8(value);
+        writeHead(out, TEXT, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param argument Unsigned, so a negative long is treated as a value above Long.MAX_VALUE
+     */
+    private static void writeHead(DataOutputStream out, int majorType, long argument) throws IOException {
+        int type = majorType << 5;
+        if (argument >= 0 && argument < 24) {
+            out.write(type | (int) argument);
+        } else if (argument >= 0 && argument < 0x100) {
+            out.write(type | 24);
+            out.write((int) argument);
+        } else if (argument >= 0 && argument < 0x10000) {
+            out.write(type | 25);
+            out.writeShort((int) argument);
+        } else if (argument >= 0 && argument < 0x100000000L) {
+            out.write(type | 26);
+            out.writeInt((int) argument);
+        } else {
+            out.write(type | 27);
+            out.writeLong(argument);
+        }
+    }
+
+    // Decoding
+
+    @Override
+    protected Object readDocument(DataInputStream in) throws IOException {
+        return readValue(in);
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        return readItem(in, in.readUnsignedByte());
+    }
+
+    private Object readItem(DataInputStream in, int initial) throws IOException {
+        int majorType = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (majorType) {
+            case UNSIGNED:
+                return toUnsignedNumber(readArgument(in, info));
+            case NEGATIVE:
+                long argument = readArgument(in, info);
+                return argument >= 0 ? toNumber(-1 - argument) : BigInteger.valueOf(-1).subtract((BigInteger) toUnsignedNumber(argument));
+            case BYTES:
+                throw error(in, "Byte strings cannot be represented in JSON");
+            case TEXT:
+                return readText(in, info);
+            case ARRAY:
+                return readArray(in, info);
+            case MAP:
+                return readMap(in, info);
+            case TAG:
+                return readTagged(in, readArgument(in, info));
+            default:
+                return readSimple(in, info);
+        }
+    }
+
+    private JSONArray readArray(DataInputStream in, int info) throws IOException {
+        JSONArray jsonArray = new JSONArray();
+        enter(in);
+        if (info == INDEFINITE) {
+            int initial;
+            while ((initial = in.readUnsignedByte()) != BREAK) {
+                add(jsonArray, readItem(in, initial));
+            }
+        } else {
+            long size = readArgument(in, info);
+            for (long i = 0; i < size; i++) {
+                add(jsonArray, readValue(in));
+            }
+        }
+        exit(in);
+        return jsonArray;
+    }
+
+    private JSONObject readMap(DataInputStream in, int info) throws IOException {
+        JSONObject jsonObject = new JSONObject();
+        enter(in);
+        if (info == INDEFINITE) {
+            int initial;
+            while ((initial = in.readUnsignedByte()) != BREAK) {
+                put(jsonObject, String.valueOf(readItem(in, initial)), readValue(in));
+            }
+        } else {
+            long size = readArgument(in, info);
+            for (long i = 0; i < size; i++) {
+                put(jsonObject, String.valueOf(readValue(in)), readValue(in));
+            }
+        }
+        exit(in);
+        return jsonObject;
+    }
+
+    private String readText(DataInputStream in, int info) throws IOException {
+        if (info == INDEFINITE) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int initial;
+            while ((initial = in.readUnsignedByte()) != BREAK) {
+                if (initial >>> 5 != TEXT || (initial & 0x1f) == INDEFINITE) {
+                    throw error(in, "Indefinite length text must be made of definite length text chunks");
+                }
+                bytes.write(readBytes(in, readArgument(in, initial & 0x1f)));
+            }
+            return bytes.toString("UTF-8");
+        } else {
+            return readUTF8(in, readArgument(in, info));
+        }
+    }
+
+    private Object readTagged(DataInputStream in, long tag) throws IOException {
+        if (tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) {
+            int initial = in.readUnsignedByte();
+            if (initial >>> 5 != BYTES || (initial & 0x1f) == INDEFINITE) {
+                throw error(in, "Big number tag must contain a byte string");
+            }
+            BigInteger magnitude = new BigInteger(1, readBytes(in, readArgument(in, initial & 0x1f)));
+            return toNumber(tag == TAG_POSITIVE_BIGNUM ? magnitude : BigInteger.valueOf(-1).subtract(magnitude));
+        } else if (tag == TAG_DECIMAL_FRACTION) {
+            enter(in);
+            Object value = readValue(in);
+            exit(in);
+            if (!(value instanceof JSONArray) || ((JSONArray) value).size() != 2) {
+                throw error(in, "Decimal fraction tag must contain an array of exponent and mantissa");
+            }
+            Object exponent = JSONNodes.getChild(value, 0);
+            Object mantissa = JSONNodes.getChild(value, 1);
+            if (!isInteger(exponent) || !isInteger(mantissa)) {
+                throw error(in, "Decimal fraction tag must contain an integer exponent and mantissa");
+            }
+            // The scale is the negated exponent, so must be an int other than Integer.MIN_VALUE
+            if (!(exponent instanceof Integer) || (Integer) exponent == Integer.MIN_VALUE) {
+                throw error(in, "Decimal fraction exponent [" + exponent + "] out of range");
+            }
+            BigInteger unscaled = mantissa instanceof BigInteger ? (BigInteger) mantissa : BigInteger.valueOf(((Number) mantissa).longValue());
+            return new BigDecimal(unscaled, -(Integer) exponent);
+        } else {
+            // Tags can nest without containers, so count towards the depth too
+            enter(in);
+            Object value = readValue(in);
+            exit(in);
+            return value;
+        }
+    }
+
+    /**
+     * @return Whether a decoded value is an integer (major type 0 or 1, or a big number tag)
+     */
+    private static boolean isInteger(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof BigInteger;
+    }
+
+    private Object readSimple(DataInputStream in, int info) throws IOException {
+        switch (info) {
+            case 20:
+                return Boolean.FALSE;
+            case 21:
+                return Boolean.TRUE;
+            case 22:
+            case 23:
+                return JSONNull.getInstance();
+            case 25:
+                return (double) halfToFloat(in.readUnsignedShort());
+            case 26:
+                return Double.valueOf(Float.toString(in.readFloat()));
+            case 27:
+                return in.readDouble();
+            default:
+                throw error(in, "Unsupported simple value [" + info + "]");
+        }
+    }
+
+    private static long readArgument(DataInputStream in, int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return in.readUnsignedByte();
+            case 25:
+                return in.readUnsignedShort();
+            case 26:
+                return in.readInt() & 0xffffffffL;
+            case 27:
+                return in.readLong();
+            default:
+                throw error(in, "Invalid additional information [" + info + "]");
+        }
+    }
+
+    private static float halfToFloat(int half) {
+        int sign = (half & 0x8000) != 0 ? -1 : 1;
+        int exponent = (half >>> 10) & 0x1f;
+        int fraction = half & 0x3ff;
+        if (exponent == 0) {
+            return sign * Math.scalb(fraction, -24);
+        } else if (exponent == 0x1f) {
+            return fraction == 0 ? sign * Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            return sign * Math.scalb(fraction + 1024, exponent - 25);
+        }
+    }
+}
@@ -6,9 +6,12 @@ import com.snell.michael.cutlet.converters.*;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URL;
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.Currency;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,6 +20,10 @@ public class ConverterMap {
     static ConverterMap DEFAULT_CONVERTER_MAP = createWithDefaults();
 
     private final Map<Class<?>, Converter<?>> classConverter = new HashMap<>();
+    private final Map<Class<?>, PrimitiveConverter.OfInt> intConverter = new HashMap<>();
+    private final Map<Class<?>, PrimitiveConverter.OfLong> longConverter = new HashMap<>();
+    private final Map<Class<?>, PrimitiveConverter.OfDouble> doubleConverter = new HashMap<>();
+    private CutletMetrics metrics;
 
     private ConverterMap() {}
 
@@ -31,6 +38,73 @@ public class ConverterMap {
         return this;
     }
 
+    /**
+     * Register the converter for int values. Will override any existing int converter
+     */
+    public ConverterMap register(PrimitiveConverter.OfInt converter) {
+        return registerPrimitive(int.class, converter);
+    }
+
+    /**
+     * Register the converter for long values. Will override any existing long converter
+     */
+    public ConverterMap register(PrimitiveConverter.OfLong converter) {
+        return registerPrimitive(long.class, converter);
+    }
+
+    /**
+     * Register the converter for double values. Will override any existing double converter
+     */
+    public ConverterMap register(PrimitiveConverter.OfDouble converter) {
+        return registerPrimitive(double.class, converter);
+    }
+
+    /**
+     * Register the int converter for a microtype wrapping an int, used in place of the converter for int values
+     * @param clazz Microtype class, or int.class for the converter for int values
+     * @param converter Converter
+     */
+    public ConverterMap registerPrimitive(Class<?> clazz, PrimitiveConverter.OfInt converter) {
+        intConverter.put(clazz, converter);
+        return this;
+    }
+
+    /**
+     * Register the long converter for a microtype wrapping a long, used in place of the converter for long values
+     * @param clazz Microtype class, or long.class for the converter for long values
+     * @param converter Converter
+     */
+    public ConverterMap registerPrimitive(Class<?> clazz, PrimitiveConverter.OfLong converter) {
+        longConverter.put(clazz, converter);
+        return this;
+    }
+
+    /**
+     * Register the double converter for a microtype wrapping a double, used in place of the converter for double values
+     * @param clazz Microtype class, or double.class for the converter for double values
+     * @param converter Converter
+     */
+    public ConverterMap registerPrimitive(Class<?> clazz, PrimitiveConverter.OfDouble converter) {
+        doubleConverter.put(clazz, converter);
+        return this;
+    }
+
+    /**
+     * Report converter calls made through this ConverterMap to a listener, rather than the global one
+     * @param metrics Listener, or null to use the global listener
+     */
+    public ConverterMap withMetrics(CutletMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return The listener set on this ConverterMap, otherwise the global listener
+     */
+    public CutletMetrics getMetrics() {
+        return metrics == null ? CutletMetrics.getGlobal() : metrics;
+    }
+
     /**
      * Read object by converting it
      * @param object Object to read
@@ -39,7 +113,60 @@ public class ConverterMap {
      * @return Converted value
      */
     public <T> T read(Object object, Class<T> clazz) {
-        return getConverter(clazz).read(object);
+        return read(object, clazz, getMetrics());
+    }
+
+    <T> T read(Object object, Class<T> clazz, CutletMetrics metrics) {
+        return read(getConverter(clazz), object, clazz, metrics);
+    }
+
+    /**
+     * Read with an already resolved converter
+     */
+    static <T> T read(Converter<T> converter, Object object, Class<T> clazz, CutletMetrics metrics) {
+        if (metrics == CutletMetrics.NONE) {
+            return converter.read(object);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T t = converter.read(object);
+            failed = false;
+            return t;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Read a value from a range of characters, without first creating a String of them if its converter is a
+     * TextConverter
+     * @param text Characters
+     * @param start Index of the first character of the value
+     * @param end Index after the last character of the value
+     * @param clazz Class of value
+     * @param <T> Type
+     * @return Converted value
+     */
+    public <T> T read(CharSequence text, int start, int end, Class<T> clazz) {
+        Converter<T> converter = getConverter(clazz);
+        if (!(converter instanceof TextConverter)) {
+            return read(converter, text.subSequence(start, end).toString(), clazz, getMetrics());
+        }
+        TextConverter<T> textConverter = (TextConverter<T>) converter;
+        CutletMetrics metrics = getMetrics();
+        if (metrics == CutletMetrics.NONE) {
+            return textConverter.read(text, start, end);
+        }
+        long begin = System.nanoTime();
+        boolean failed = true;
+        try {
+            T t = textConverter.read(text, start, end);
+            failed = false;
+            return t;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - begin, failed);
+        }
     }
 
     /**
@@ -50,15 +177,185 @@ public class ConverterMap {
      * @return Converted object
      */
     public <T> Object write(T t, Class<T> clazz) {
-        return getConverter(clazz).write(t);
+        return write(t, clazz, getMetrics());
+    }
+
+    <T> Object write(T t, Class<T> clazz, CutletMetrics metrics) {
+        Converter<T> converter = getConverter(clazz);
+        if (metrics == CutletMetrics.NONE) {
+            return converter.write(t);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object object = converter.write(t);
+            failed = false;
+            return object;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Write the text form of a value with a TextConverter, from getTextConverter
+     */
+    <T> void write(TextConverter<T> converter, T t, Class<T> clazz, Appendable appendable) throws IOException {
+        CutletMetrics metrics = getMetrics();
+        if (metrics == CutletMetrics.NONE) {
+            converter.write(t, appendable);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            converter.write(t, appendable);
+            failed = false;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - start, failed);
+        }
+    }
+
+    int readInt(Object object, CutletMetrics metrics) {
+        return readInt(int.class, object, metrics);
+    }
+
+    /**
+     * @param clazz Microtype class, or int.class
+     */
+    int readInt(Class<?> clazz, Object object, CutletMetrics metrics) {
+        PrimitiveConverter.OfInt converter = getPrimitiveConverter(intConverter, clazz, int.class);
+        if (metrics == CutletMetrics.NONE) {
+            return converter.readInt(object);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int value = converter.readInt(object);
+            failed = false;
+            return value;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - start, failed);
+        }
+    }
+
+    long readLong(Object object, CutletMetrics metrics) {
+        return readLong(long.class, object, metrics);
+    }
+
+    /**
+     * @param clazz Microtype class, or long.class
+     */
+    long readLong(Class<?> clazz, Object object, CutletMetrics metrics) {
+        PrimitiveConverter.OfLong converter = getPrimitiveConverter(longConverter, clazz, long.class);
+        if (metrics == CutletMetrics.NONE) {
+            return converter.readLong(object);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            long value = converter.readLong(object);
+            failed = false;
+            return value;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - start, failed);
+        }
+    }
+
+    double readDouble(Object object, CutletMetrics metrics) {
+        return readDouble(double.class, object, metrics);
+    }
+
+    /**
+     * @param clazz Microtype class, or double.class
+     */
+    double readDouble(Class<?> clazz, Object object, CutletMetrics metrics) {
+        PrimitiveConverter.OfDouble converter = getPrimitiveConverter(doubleConverter, clazz, double.class);
+        if (metrics == CutletMetrics.NONE) {
+            return converter.readDouble(object);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            double value = converter.readDouble(object);
+            failed = false;
+            return value;
+        } finally {
+            metrics.converted(clazz, System.nanoTime() - start, failed);
+        }
+    }
+
+    Object writeInt(int value) {
+        return writeInt(int.class, value);
+    }
+
+    Object writeInt(Class<?> clazz, int value) {
+        return getPrimitiveConverter(intConverter, clazz, int.class).writeInt(value);
+    }
+
+    Object writeLong(long value) {
+        return writeLong(long.class, value);
+    }
+
+    Object writeLong(Class<?> clazz, long value) {
+        return getPrimitiveConverter(longConverter, clazz, long.class).writeLong(value);
+    }
+
+    Object writeDouble(double value) {
+        return writeDouble(double.class, value);
+    }
+
+    Object writeDouble(Class<?> clazz, double value) {
+        return getPrimitiveConverter(doubleConverter, clazz, double.class).writeDouble(value);
+    }
+
+    /**
+     * @return The converter registered for clazz, otherwise the one for the primitive type it wraps
+     */
+    private static <P> P getPrimitiveConverter(Map<Class<?>, P> converters, Class<?> clazz, Class<?> primitive) {
+        P converter = converters.get(clazz);
+        if (converter == null) {
+            converter = converters.get(primitive);
+        }
+        if (converter == null) {
+            throw new RuntimeException("No converter for [" + primitive + "]");
+        }
+        return converter;
+    }
+
+    /**
+     * Write a value of any class with a converter, or an enum by name
+     * @return Converted object, or null if value is null
+     */
+    @SuppressWarnings("unchecked")
+    Object writeValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        Class<Object> clazz = (Class<Object>) value.getClass();
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        } else if (hasConverter(clazz)) {
+            return write(value, clazz);
+        } else {
+            throw new CutletRuntimeException("Converting value [" + value + "] of [" + clazz + "] not supported");
+        }
     }
 
     public boolean hasConverter(Class<?> clazz) {
         return classConverter.containsKey(clazz);
     }
 
+    /**
+     * @return The converter for clazz if it is a TextConverter, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    <T> TextConverter<T> getTextConverter(Class<T> clazz) {
+        Converter<?> converter = classConverter.get(clazz);
+        return converter instanceof TextConverter ? (TextConverter<T>) converter : null;
+    }
+
     @SuppressWarnings("unchecked")
-    private <T> Converter<T> getConverter(Class<T> clazz) {
+    <T> Converter<T> getConverter(Class<T> clazz) {
         Converter<T> converter = (Converter<T>) classConverter.get(clazz);
         if (converter == null) {
             throw new RuntimeException("No converter for [" + clazz.getCanonicalName() + "]");
@@ -96,15 +393,24 @@ public class ConverterMap {
         converterMap.register(String.class, new StringConverter());
         converterMap.register(Boolean.class, new BooleanConverter());
 
-        converterMap.register(Integer.class, new IntegerConverter());
-        converterMap.register(Long.class, new LongConverter());
-        converterMap.register(Double.class, new DoubleConverter());
+        IntegerConverter integerConverter = new IntegerConverter();
+        LongConverter longConverter = new LongConverter();
+        DoubleConverter doubleConverter = new DoubleConverter();
+        converterMap.register(Integer.class, integerConverter);
+        converterMap.register(Long.class, longConverter);
+        converterMap.register(Double.class, doubleConverter);
+        converterMap.register(integerConverter);
+        converterMap.register(longConverter);
+        converterMap.register(doubleConverter);
         converterMap.register(Float.class, new FloatConverter());
         converterMap.register(BigDecimal.class, new BigDecimalConverter());
         converterMap.register(BigInteger.class, new BigIntegerConverter());
 
         converterMap.register(LocalDate.class, new LocalDateConverter());
         converterMap.register(DateTime.class, new DateTimeConverter());
+        converterMap.register(java.time.LocalDate.class, new JavaLocalDateConverter());
+        converterMap.register(Instant.class, new InstantConverter());
+        converterMap.register(OffsetDateTime.class, new OffsetDateTimeConverter());
 
         converterMap.register(URL.class, new URLConverter());
 
@@ -9,9 +9,13 @@ import java.io.File;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Currency;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 interface Cutlet<C extends Cutlet<C>> {
@@ -22,6 +26,40 @@ interface Cutlet<C extends Cutlet<C>> {
      */
     C withConverterMap(ConverterMap converterMap);
 
+    /**
+     * Report xpath evaluations, conversions and writes of this Cutlet (and Cutlets obtained from it) to a listener,
+     * rather than that of its ConverterMap or the global one
+     * @param metrics Listener, or null to stop overriding
+     * @return The current Cutlet (to allow fluent style), or a new view of a frozen Cutlet
+     */
+    C withMetrics(CutletMetrics metrics);
+
+    /**
+     * Create a read-only copy of this Cutlet which can be queried by many threads at once. Methods that would modify
+     * the copy throw a CutletRuntimeException, and withConverterMap returns a new frozen view rather than modifying it
+     * @return Frozen copy of this Cutlet (or this Cutlet, if already frozen)
+     */
+    C freeze();
+
+    /**
+     * @return True if this Cutlet is read-only
+     */
+    boolean isFrozen();
+
+    /**
+     * Digest the content of this Cutlet, so that equal documents can be found without comparing them node by node.
+     * Formatting, the order of JSON keys and the order of XML attributes do not affect the fingerprint
+     * @return SHA-256 based fingerprint
+     */
+    Fingerprint fingerprint();
+
+    /**
+     * Save the parsed tree of this Cutlet to a binary file, which JSON.loadSnapshot or XML.loadSnapshot reload much
+     * faster than parsing text
+     * @param file Snapshot file to create or overwrite
+     */
+    void saveSnapshot(File file);
+
     // Write methods
 
     /**
@@ -40,19 +78,47 @@ interface Cutlet<C extends Cutlet<C>> {
     StringBuffer write(StringBuffer stringBuffer, WriteStyle style);
 
     /**
-     * Write to a OutputStream
+     * Write UTF-8 to a OutputStream, as write(WritableByteChannel, WriteStyle). Before 0.5 this used the platform
+     * default charset, which did not match the encoding declared by XML documents
      * @param outputStream The OutputStream to be written to
      * @param style Writing style
      */
     void write(OutputStream outputStream, WriteStyle style);
 
     /**
-     * Write to a File, creating it if it does not exist
+     * Write UTF-8 to a File, creating it if it does not exist, as write(Path, WriteStyle). Before 0.5 this used the
+     * platform default charset
      * @param file The File to be written to
      * @param style Writing style
      */
     void write(File file, WriteStyle style);
 
+    /**
+     * Write UTF-8 to a (blocking) channel. The document is serialized to a String, as by write(WriteStyle), and then
+     * encoded through a pooled direct buffer, which avoids only the byte array that String.getBytes would create. To
+     * stream output without holding the whole text, build it with JSON.writer or XML.writer instead of a Cutlet
+     * @param channel The channel to be written to, left open
+     * @param style Writing style
+     */
+    void write(WritableByteChannel channel, WriteStyle style);
+
+    /**
+     * Write UTF-8 into a buffer, from its position. The document is serialized to a String first, then encoded straight
+     * into the buffer
+     * @param buffer The buffer to be written to
+     * @param style Writing style
+     * @throws CutletRuntimeException If there is not enough room in the buffer
+     */
+    void write(ByteBuffer buffer, WriteStyle style);
+
+    /**
+     * Write UTF-8 to a file through a FileChannel, creating it if it does not exist. As for write(WritableByteChannel,
+     * WriteStyle), the whole document is serialized to a String first
+     * @param path The file to be written to
+     * @param style Writing style
+     */
+    void write(Path path, WriteStyle style);
+
     // Cutlet methods
 
     /**
@@ -69,6 +135,26 @@ interface Cutlet<C extends Cutlet<C>> {
      */
     List<C> getList(String xpath);
 
+    /**
+     * Group the elements of a list by the value of a key, in one pass over the list
+     * @param listXpath XPath of the list elements
+     * @param keyXpath XPath of the key, relative to each element. Elements without a key are skipped
+     * @param keyClass Class to convert keys to
+     * @return Elements by key, with keys in the order they were first seen and elements in document order
+     */
+    <K> Map<K, List<C>> groupBy(String listXpath, String keyXpath, Class<K> keyClass);
+
+    /**
+     * Map a key of each element of a list to a value of the same element, in one pass over the list
+     * @param listXpath XPath of the list elements
+     * @param keyXpath XPath of the key, relative to each element. Elements without a key are skipped
+     * @param valueXpath XPath of the value, relative to each element
+     * @param keyClass Class to convert keys to
+     * @param valueClass Class to convert values to
+     * @return Values by key, in document order. A CutletRuntimeException is thrown if two elements have the same key
+     */
+    <K, V> Map<K, V> toMap(String listXpath, String keyXpath, String valueXpath, Class<K> keyClass, Class<V> valueClass);
+
     /**
      * Get the names of all child nodes of this Cutlet
      * @return Set of child node names
@@ -95,6 +181,15 @@ interface Cutlet<C extends Cutlet<C>> {
      */
     void remove(String xpath);
 
+    /**
+     * Index the elements of a list by the value of a key, so that they can be looked up without evaluating a
+     * predicate xpath against every element. The index is rebuilt after the document changes
+     * @param listXpath XPath of the list elements, eg "person"
+     * @param keyXpath XPath of the key, relative to each element, eg "@id". Elements without a key are not indexed
+     * @return Index of the elements
+     */
+    CutletIndex<C> index(String listXpath, String keyXpath);
+
     /**
      * Creates a new Cutlet at the given xpath
      * @param xpath XPath
@@ -110,6 +205,28 @@ interface Cutlet<C extends Cutlet<C>> {
      */
     C withList(String xpath, List<C> cutlets);
 
+    /**
+     * Adds the given array of Cutlets at the xpath as withList does, but takes their nodes rather than copying them.
+     * As with withList, JSON sets the value at the xpath to an array of the nodes, and XML appends them to the element
+     * at the xpath. XML nodes are removed from their documents. JSON nodes stay in their documents, shared: both
+     * documents copy shared nodes before changing them, so neither sees later changes made to the other. Cutlets that
+     * are frozen are copied
+     * @param xpath XPath
+     * @param cutlets List of Cutlets to be moved
+     * @return The current Cutlet (to allow fluent style)
+     */
+    C moveList(String xpath, List<C> cutlets);
+
+    /**
+     * Attach the node of a Cutlet without copying it, as moveList does. For JSON the value at the xpath becomes the
+     * node, which stays in its own document too, and for XML the node is removed from its document and appended to
+     * the element at the xpath
+     * @param xpath XPath
+     * @param cutlet Cutlet to be attached
+     * @return The current Cutlet (to allow fluent style)
+     */
+    C attach(String xpath, C cutlet);
+
     // Value methods
 
     /**
@@ -154,6 +271,59 @@ interface Cutlet<C extends Cutlet<C>> {
      */
     <T> C withList(String xpath, Collection<T> values, Class<T> clazz);
 
+    // Aggregate methods
+
+    /**
+     * @param xpath XPath
+     * @return Number of nodes matching the xpath
+     */
+    int count(String xpath);
+
+    /**
+     * Sum the numeric values matching an xpath, in one pass without building a list. Null values are skipped, and a
+     * CutletRuntimeException is thrown for values that are not numbers
+     * @param xpath XPath
+     * @return Sum, or 0 if there are no values
+     */
+    double sum(String xpath);
+
+    /**
+     * @param xpath XPath
+     * @return Smallest numeric value matching the xpath, or NaN if there are none
+     */
+    double min(String xpath);
+
+    /**
+     * @param xpath XPath
+     * @return Largest numeric value matching the xpath, or NaN if there are none
+     */
+    double max(String xpath);
+
+    /**
+     * @param xpath XPath
+     * @return Mean of the numeric values matching the xpath, or NaN if there are none
+     */
+    double avg(String xpath);
+
+    /**
+     * Sum the numeric values matching an xpath exactly
+     * @param xpath XPath
+     * @return Sum, or 0 if there are no values
+     */
+    BigDecimal sumBigDecimal(String xpath);
+
+    /**
+     * @param xpath XPath
+     * @return Smallest numeric value matching the xpath, or null if there are none
+     */
+    BigDecimal minBigDecimal(String xpath);
+
+    /**
+     * @param xpath XPath
+     * @return Largest numeric value matching the xpath, or null if there are none
+     */
+    BigDecimal maxBigDecimal(String xpath);
+
     // String methods
 
     String getString(String xpath);
@@ -173,18 +343,60 @@ interface Cutlet<C extends Cutlet<C>> {
     List<Integer> getIntegerList(String xpath);
     C withInteger(String xpath, Integer value);
 
+    /**
+     * @return Value at xpath converted without boxing, see ConverterMap.register(PrimitiveConverter.OfInt)
+     * @throws CutletRuntimeException if there is no value
+     */
+    int getIntValue(String xpath);
+
+    /**
+     * @return Values matching xpath converted without boxing
+     * @throws CutletRuntimeException if any value is null
+     */
+    int[] getIntArray(String xpath);
+
+    C withIntValue(String xpath, int value);
+
     // Long methods
 
     Long getLong(String xpath);
     List<Long> getLongList(String xpath);
     C withLong(String xpath, Long value);
 
+    /**
+     * @return Value at xpath converted without boxing, see ConverterMap.register(PrimitiveConverter.OfLong)
+     * @throws CutletRuntimeException if there is no value
+     */
+    long getLongValue(String xpath);
+
+    /**
+     * @return Values matching xpath converted without boxing
+     * @throws CutletRuntimeException if any value is null
+     */
+    long[] getLongArray(String xpath);
+
+    C withLongValue(String xpath, long value);
+
     // Double methods
 
     Double getDouble(String xpath);
     List<Double> getDoubleList(String xpath);
     C withDouble(String xpath, Double value);
 
+    /**
+     * @return Value at xpath converted without boxing, see ConverterMap.register(PrimitiveConverter.OfDouble)
+     * @throws CutletRuntimeException if there is no value
+     */
+    double getDoubleValue(String xpath);
+
+    /**
+     * @return Values matching xpath converted without boxing
+     * @throws CutletRuntimeException if any value is null
+     */
+    double[] getDoubleArray(String xpath);
+
+    C withDoubleValue(String xpath, double value);
+
     // Float methods
 
     Float getFloat(String xpath);
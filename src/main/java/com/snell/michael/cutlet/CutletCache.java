@@ -0,0 +1,157 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of parsed files, for use with JSON.parse(File, CutletCache) and XML.parse(File, CutletCache). Entries are keyed
+ * by canonical path and reparsed when the size or modification time of the file changes. The least recently used
+ * entries are evicted once either the number of entries or the total size of their files exceeds its limit.
+ * Documents are held frozen: JSON is returned as a copy-on-write snapshot that can be modified freely, and XML frozen.
+ * Safe for use by many threads
+ */
+public final class CutletCache {
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries Maximum number of documents to hold
+     */
+    public CutletCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxEntries Maximum number of documents to hold
+     * @param maxBytes Maximum total size of the files of the documents held
+     */
+    public CutletCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new CutletRuntimeException("Cache limits must be positive, not [" + maxEntries + "] entries and [" + maxBytes + "] bytes");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The frozen document for a file, parsing it if it is not cached or has changed since it was
+     */
+    <C extends Cutlet<C>> C get(File file, String type, FileParser<C> parser) {
+        String key = type + ":" + getCanonicalPath(file);
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+                hitCount++;
+                @SuppressWarnings("unchecked")
+                C cutlet = (C) entry.cutlet;
+                return cutlet;
+            }
+            missCount++;
+        }
+
+        // Parsed outside the lock, so a slow file does not hold up other readers
+        C cutlet = parser.parse(file).freeze();
+
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(cutlet, length, lastModified));
+            if (previous != null) {
+                bytes -= previous.length;
+            }
+            bytes += length;
+            evict();
+        }
+        return cutlet;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && entries.size() > 1) {
+            Entry eldest = i.next().getValue();
+            i.remove();
+            bytes -= eldest.length;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Remove any documents parsed from a file
+     */
+    public synchronized void invalidate(File file) {
+        String path = getCanonicalPath(file);
+        Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, Entry> entry = i.next();
+            if (entry.getKey().endsWith(":" + path)) {
+                bytes -= entry.getValue().length;
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Total size of the files of the documents held
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CutletCache[entries=" + entries.size() + ", bytes=" + bytes + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception resolving file [" + file + "]", e);
+        }
+    }
+
+    private static final class Entry {
+        private final Object cutlet;
+        private final long length;
+        private final long lastModified;
+
+        private Entry(Object cutlet, long length, long lastModified) {
+            this.cutlet = cutlet;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
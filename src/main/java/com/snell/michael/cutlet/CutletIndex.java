@@ -0,0 +1,101 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash index over the elements of a list by the value of a key, created by Cutlet.index. Looking up a key replaces
+ * an xpath predicate such as person[@id='x'], which JXPath evaluates by scanning every element. Keys are compared as
+ * strings. The index is rebuilt on the next lookup after any change to the document made through its Cutlets. An index
+ * over a frozen Cutlet can be shared between threads
+ * @param <C> Cutlet type
+ */
+public final class CutletIndex<C extends Cutlet<C>> {
+    private final CutletJXPathContext<?> cutlet;
+    private final String listXpath;
+    private final String keyXpath;
+
+    // Replaced whole once built, so readers on other threads never see a partly built map
+    private volatile Entries<C> entries;
+
+    CutletIndex(CutletJXPathContext<?> cutlet, String listXpath, String keyXpath) {
+        this.cutlet = cutlet;
+        this.listXpath = listXpath;
+        this.keyXpath = keyXpath;
+    }
+
+    /**
+     * @return The first element whose key is key, or null if there is none
+     */
+    public C get(Object key) {
+        List<C> list = getEntries().get(key.toString());
+        return list == null ? null : list.get(0);
+    }
+
+    /**
+     * @return The elements whose key is key, in document order
+     */
+    public List<C> getAll(Object key) {
+        List<C> list = getEntries().get(key.toString());
+        return list == null ? Collections.<C>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    public boolean containsKey(Object key) {
+        return getEntries().containsKey(key.toString());
+    }
+
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(getEntries().keySet());
+    }
+
+    /**
+     * @return Number of distinct keys
+     */
+    public int size() {
+        return getEntries().size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, List<C>> getEntries() {
+        long count = cutlet.getModificationCount();
+        Entries<C> current = entries;
+        if (current == null || count != current.modificationCount) {
+            Map<String, List<C>> map = new HashMap<>();
+            for (Object element : cutlet.getList(listXpath)) {
+                Object key = ((CutletJXPathContext<?>) element).getValueOrNull(keyXpath);
+                if (key != null) {
+                    List<C> list = map.get(key.toString());
+                    if (list == null) {
+                        list = new ArrayList<>(1);
+                        map.put(key.toString(), list);
+                    }
+                    list.add((C) element);
+                }
+            }
+            current = new Entries<>(map, count);
+            entries = current;
+        }
+        return current.map;
+    }
+
+    @Override
+    public String toString() {
+        return "CutletIndex[" + listXpath + " by " + keyXpath + "]";
+    }
+
+    private static final class Entries<C> {
+        private final Map<String, List<C>> map;
+        private final long modificationCount;
+
+        private Entries(Map<String, List<C>> map, long modificationCount) {
+            this.map = map;
+            this.modificationCount = modificationCount;
+        }
+    }
+}
@@ -2,8 +2,9 @@
 
 package com.snell.michael.cutlet;
 
-import org.apache.commons.io.FileUtils;
+import com.snell.michael.cutlet.converters.Converter;
 import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.JXPathException;
 import org.apache.commons.jxpath.JXPathNotFoundException;
 import org.apache.commons.jxpath.Pointer;
 import org.joda.time.DateTime;
@@ -12,37 +13,225 @@ import org.joda.time.LocalDate;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.*;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static com.snell.michael.cutlet.CutletMetrics.NONE;
 import static com.snell.michael.cutlet.WriteStyle.PRETTY;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
 abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements Cutlet<J> {
-    protected final JXPathContext context;
-
     private static final MicrotypeRegistry MICROTYPE_REGISTRY = new MicrotypeRegistry();
 
+    /**
+     * Initial length of the arrays getIntArray and friends fill, grown by doubling
+     */
+    private static final int PRIMITIVE_ARRAY_CAPACITY = 16;
+
+    /**
+     * Returned by getChildValue when it cannot resolve an xpath itself
+     */
+    protected static final Object NO_VALUE = new Object();
+
+    private JXPathContext context;
+    private final Object frozenBean;
+
     private ConverterMap converterMap;
+    private CutletMetrics metrics;
 
     protected CutletJXPathContext(JXPathContext jxpathContext) {
         this.context = jxpathContext;
+        this.frozenBean = null;
         this.converterMap = ConverterMap.DEFAULT_CONVERTER_MAP;
     }
 
+    /**
+     * Create a frozen (read-only) Cutlet over the given bean
+     */
+    protected CutletJXPathContext(Object frozenBean, ConverterMap converterMap) {
+        this.context = null;
+        this.frozenBean = frozenBean;
+        this.converterMap = converterMap;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public J withConverterMap(ConverterMap converterMap) {
+        if (isFrozen()) {
+            return inherit(createFrozen(frozenBean, converterMap));
+        }
         this.converterMap = converterMap;
         return (J) this;
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public J withMetrics(CutletMetrics metrics) {
+        if (isFrozen()) {
+            J frozen = createFrozen(frozenBean, converterMap);
+            ((CutletJXPathContext<J>) frozen).metrics = metrics;
+            return frozen;
+        }
+        this.metrics = metrics;
+        return (J) this;
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return context == null;
+    }
+
+    /**
+     * JXPathContext is not thread-safe, so frozen Cutlets evaluate every call against a fresh context
+     * @return Context to evaluate xpaths against
+     */
+    protected JXPathContext context() {
+        return isFrozen() ? JXPathContext.newContext(frozenBean) : context;
+    }
+
+    /**
+     * Replace the context of a (non-frozen) Cutlet, eg after the node it points at has been copied
+     * @param jxpathContext New context
+     */
+    protected void setContext(JXPathContext jxpathContext) {
+        checkNotFrozen();
+        this.context = jxpathContext;
+    }
+
+    protected void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new CutletRuntimeException("Cannot modify frozen Cutlet");
+        }
+    }
+
+    /**
+     * Called before every modification, and may replace the context
+     * @param xpath XPath about to be modified
+     * @param removal True if nodes at xpath are about to be removed, false if they are about to be created or set
+     */
+    protected void prepareMutation(String xpath, boolean removal) {
+        checkNotFrozen();
+        markModified();
+    }
+
+    /**
+     * Count a modification of the document
+     */
+    protected abstract void markModified();
+
+    /**
+     * @return Number of modifications made to the document through any of its Cutlets
+     */
+    protected abstract long getModificationCount();
+
+    /**
+     * @return Pointer to the deepest node that exists on the way to xpath, or the context node if none does
+     */
+    protected static Pointer getDeepestExistingPointer(JXPathContext context, String xpath) {
+        String path = xpath;
+        int i;
+        while ((i = path.lastIndexOf('/')) > 0) {
+            path = path.substring(0, i);
+            try {
+                Iterator<?> pointers = context.iteratePointers(path);
+                if (pointers.hasNext()) {
+                    return (Pointer) pointers.next();
+                }
+            } catch (JXPathException e) {
+                // Not a valid xpath once truncated (eg inside a predicate) - keep going
+            }
+        }
+        return context.getContextPointer();
+    }
+
+    /**
+     * Parse files on a pool of threads, so that no more than parallelism files are being read at once
+     * @return The documents, in the order of the files
+     */
+    static <C extends Cutlet<C>> List<C> parseAll(Collection<File> files, int parallelism, FileParser<C> parser) {
+        final List<C> cutlets = new ArrayList<>(files.size());
+        parseEach(files, parallelism, parser, new Consumer<C>() {
+            @Override
+            public void accept(C cutlet) {
+                cutlets.add(cutlet);
+            }
+        });
+        return cutlets;
+    }
+
+    /**
+     * Parse files on a pool of threads and pass the documents to consumer in the order of the files, on the calling
+     * thread. No more than parallelism files are submitted ahead of the consumer, so only that many documents are held
+     * at once however many files there are
+     */
+    static <C extends Cutlet<C>> void parseEach(Collection<File> files, int parallelism, final FileParser<C> parser,
+                                                Consumer<? super C> consumer) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            Deque<Future<C>> window = new ArrayDeque<>(parallelism);
+            Iterator<File> i = files.iterator();
+            while (i.hasNext() || !window.isEmpty()) {
+                while (i.hasNext() && window.size() < parallelism) {
+                    final File file = i.next();
+                    window.add(executor.submit(new Callable<C>() {
+                        @Override
+                        public C call() {
+                            return parser.parse(file);
+                        }
+                    }));
+                }
+                consumer.accept(getParsed(window.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <C> C getParsed(Future<C> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CutletRuntimeException("Error parsing files", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CutletRuntimeException("Interrupted parsing files", e);
+        }
+    }
+
     // Write methods
 
     @Override
-    public abstract String write(WriteStyle style);
+    public String write(WriteStyle style) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        String text = serialize(style);
+        if (metrics != NONE) {
+            metrics.written(getFormat(), System.nanoTime() - start, text.length());
+        }
+        return text;
+    }
+
+    protected abstract String serialize(WriteStyle style);
 
     @Override
     public StringBuffer write(StringBuffer stringBuffer, WriteStyle style) {
@@ -52,7 +241,7 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
     @Override
     public void write(OutputStream outputStream, WriteStyle style) {
         try {
-            outputStream.write(write(style).getBytes());
+            BufferPool.write(write(style), Channels.newChannel(outputStream));
         } catch (IOException e) {
             throw new RuntimeException("Error writing to stream", e);
         }
@@ -60,10 +249,29 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     @Override
     public void write(File file, WriteStyle style) {
+        write(file.toPath(), style);
+    }
+
+    @Override
+    public void write(WritableByteChannel channel, WriteStyle style) {
         try {
-            FileUtils.write(file, write(style));
+            BufferPool.write(write(style), channel);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing to channel", e);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, WriteStyle style) {
+        BufferPool.write(write(style), buffer);
+    }
+
+    @Override
+    public void write(Path path, WriteStyle style) {
+        try (FileChannel channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            BufferPool.write(write(style), channel);
         } catch (IOException e) {
-            throw new RuntimeException("Error writing to file [" + file + "]", e);
+            throw new RuntimeException("Error writing to file [" + path + "]", e);
         }
     }
 
@@ -71,10 +279,13 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     @Override
     public J get(String xpath) {
+        JXPathContext context = context();
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
         Pointer pointer = context.getPointer(xpath);
+        evaluated(metrics, xpath, start, pointer == null ? 0 : 1);
         if (pointer != null) {
-            JXPathContext relativeContext = context.getRelativeContext(pointer);
-            return create(relativeContext);
+            return create(context, pointer);
         } else {
             throw new CutletRuntimeException("No node at [" + xpath + "] in [" + getContextBean(this) + "]");
         }
@@ -82,39 +293,155 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     @Override
     public boolean exists(String xpath) {
-        try {
-            Object value = context.getValue(xpath);
-            return value != null;
-        } catch (JXPathNotFoundException e) {
-            return false;
-        }
+        return getValueOrNull(xpath) != null;
     }
 
     @Override
     public boolean has(String xpath) {
+        Object value = getValueOrNull(xpath);
+        return value != null && !isBlank(value.toString());
+    }
+
+    Object getValueOrNull(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        Object value;
         try {
-            Object value = context.getValue(xpath);
-            return value != null && !isBlank(value.toString());
+            value = context().getValue(xpath);
         } catch (JXPathNotFoundException e) {
-            return false;
+            value = null;
         }
+        evaluated(metrics, xpath, start, value == null ? 0 : 1);
+        return value;
     }
 
     @Override
     public List<J> getList(String xpath) {
+        JXPathContext context = context();
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
         Iterator<?> i = context.iteratePointers(xpath);
 
         List<J> c = new ArrayList<>();
         while (i.hasNext()) {
             Pointer p = (Pointer) i.next();
-            c.add(create(context.getRelativeContext(p)));
+            c.add(create(context, p));
         }
 
+        evaluated(metrics, xpath, start, c.size());
         return c;
     }
 
+    @Override
+    public <K> Map<K, List<J>> groupBy(String listXpath, String keyXpath, Class<K> keyClass) {
+        JXPathContext context = context();
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        ValueReader<K> keyReader = new ValueReader<>(keyXpath, keyClass, metrics);
+
+        Map<K, List<J>> map = new LinkedHashMap<>();
+        int count = 0;
+        Iterator<?> i = context.iteratePointers(listXpath);
+        while (i.hasNext()) {
+            Pointer pointer = (Pointer) i.next();
+            count++;
+            Object key = getRelativeValue(context, pointer, keyXpath);
+            if (key != null) {
+                K k = keyReader.read(key);
+                List<J> list = map.get(k);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    map.put(k, list);
+                }
+                list.add(create(context, pointer));
+            }
+        }
+
+        evaluated(metrics, listXpath, start, count);
+        return map;
+    }
+
+    @Override
+    public <K, V> Map<K, V> toMap(String listXpath, String keyXpath, String valueXpath, Class<K> keyClass, Class<V> valueClass) {
+        JXPathContext context = context();
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        ValueReader<K> keyReader = new ValueReader<>(keyXpath, keyClass, metrics);
+        ValueReader<V> valueReader = new ValueReader<>(valueXpath, valueClass, metrics);
+
+        Map<K, V> map = new LinkedHashMap<>();
+        int count = 0;
+        Iterator<?> i = context.iteratePointers(listXpath);
+        while (i.hasNext()) {
+            Pointer pointer = (Pointer) i.next();
+            count++;
+            Object key = getRelativeValue(context, pointer, keyXpath);
+            if (key != null) {
+                K k = keyReader.read(key);
+                if (map.containsKey(k)) {
+                    throw new CutletRuntimeException("Duplicate key [" + k + "] at [" + keyXpath + "] in [" + listXpath + "]");
+                }
+                map.put(k, valueReader.read(getRelativeValue(context, pointer, valueXpath)));
+            }
+        }
+
+        evaluated(metrics, listXpath, start, count);
+        return map;
+    }
+
+    /**
+     * @return Value at xpath relative to the node at pointer, or null if there is none
+     */
+    private Object getRelativeValue(JXPathContext context, Pointer pointer, String xpath) {
+        Object value = getChildValue(pointer.getNode(), xpath);
+        if (value != NO_VALUE) {
+            return value;
+        }
+        try {
+            return context.getRelativeContext(pointer).getValue(xpath);
+        } catch (JXPathNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolve a simple xpath against a node directly, without JXPath. Used when the same xpath is evaluated
+     * against many nodes
+     * @return The value (or null if there is none), or NO_VALUE if the xpath must be evaluated by JXPath
+     */
+    protected Object getChildValue(Object node, String xpath) {
+        return NO_VALUE;
+    }
+
+    /**
+     * Converts values to one class, resolving how to do so only once
+     */
+    private final class ValueReader<T> {
+        private final String xpath;
+        private final Class<T> clazz;
+        private final Converter<T> converter;
+        private final CutletMetrics metrics;
+
+        private ValueReader(String xpath, Class<T> clazz, CutletMetrics metrics) {
+            this.xpath = xpath;
+            this.clazz = clazz;
+            this.converter = !clazz.isEnum() && converterMap.hasConverter(clazz) ? converterMap.getConverter(clazz) : null;
+            this.metrics = metrics;
+        }
+
+        private T read(Object value) {
+            return converter == null ? convertFromJSONValue(xpath, clazz, value) : ConverterMap.read(converter, value, clazz, metrics);
+        }
+    }
+
+    @Override
+    public CutletIndex<J> index(String listXpath, String keyXpath) {
+        return new CutletIndex<>(this, listXpath, keyXpath);
+    }
+
     @Override
     public J add(String xpath) {
+        prepareMutation(xpath, false);
         context.createPath(xpath);
         return get(xpath);
     }
@@ -124,6 +451,7 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     @Override
     public void remove(String xpath) {
+        prepareMutation(xpath, true);
         context.removeAll(xpath);
     }
 
@@ -140,7 +468,7 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
         if (clazz.isEnum()) {
             return convertToEnum(clazz, value);
         } else if (converterMap.hasConverter(clazz)){
-            return converterMap.read(value, clazz);
+            return converterMap.read(value, clazz, getMetrics());
         } else if (MICROTYPE_REGISTRY.isMicrotype(clazz)) {
             return convertToMicrotype(clazz, value);
         } else {
@@ -149,9 +477,15 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
     }
 
     private Object getPath(String xpath) {
+        JXPathContext context = context();
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
         try {
-            return context.getValue(xpath);
+            Object value = context.getValue(xpath);
+            evaluated(metrics, xpath, start, value == null ? 0 : 1);
+            return value;
         } catch (JXPathNotFoundException e) {
+            evaluated(metrics, xpath, start, 0);
             String p = "";
             for (String s : xpath.split("/")) {
                 p = p + (p.length() > 0 ? "/" : "") + s;
@@ -177,7 +511,10 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
     @SuppressWarnings("unchecked")
     private <T> T convertToMicrotype(Class<T> clazz, Object value) {
         Class<?> valueClass = MICROTYPE_REGISTRY.getMicrotypeValueClass(clazz);
-        Object convertedValue = converterMap.read(value, valueClass);
+        if (valueClass.isPrimitive()) {
+            return convertToPrimitiveMicrotype(clazz, valueClass, value);
+        }
+        Object convertedValue = converterMap.read(value, valueClass, getMetrics());
         try {
             return clazz.getConstructor(valueClass).newInstance(convertedValue);
         } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
@@ -187,6 +524,29 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private <T> T convertToPrimitiveMicrotype(Class<T> clazz, Class<?> valueClass, Object value) {
+        if (isNullValue(value)) {
+            return null;
+        }
+        MethodHandle constructor = MICROTYPE_REGISTRY.getConstructor(clazz);
+        CutletMetrics metrics = getMetrics();
+        try {
+            if (valueClass == int.class) {
+                return (T) constructor.invoke(converterMap.readInt(clazz, value, metrics));
+            } else if (valueClass == long.class) {
+                return (T) constructor.invoke(converterMap.readLong(clazz, value, metrics));
+            } else if (valueClass == double.class) {
+                return (T) constructor.invoke(converterMap.readDouble(clazz, value, metrics));
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException("Failed to instantiate microtype", t);
+        }
+        throw new RuntimeException("Microtypes wrapping [" + valueClass + "] not supported");
+    }
+
     @Override
     public <T> List<T> getList(String xpath, Class<T> clazz) {
         List<T> list = new ArrayList<>(0);
@@ -202,15 +562,40 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
     }
 
     private <T> void populateCollection(String xpath, Class<T> clazz, Collection<T> c) {
-        Iterator<?> i = context.iterate(xpath);
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        int count = 0;
+        Iterator<?> i = context().iterate(xpath);
         while (i.hasNext()) {
-            c.add(converterMap.read(i.next(), clazz));
+            c.add(converterMap.read(i.next(), clazz, metrics));
+            count++;
         }
+        evaluated(metrics, xpath, start, count);
+    }
+
+    private Object getPrimitive(String xpath) {
+        Object value = getPath(xpath);
+        if (isNullValue(value)) {
+            throw new CutletRuntimeException("No value at [" + xpath + "]");
+        }
+        return value;
+    }
+
+    /**
+     * @return The next value matching xpath, for the primitive arrays, which fill straight from the iteration
+     */
+    private Object nextPrimitive(Iterator<?> i, String xpath) {
+        Object value = i.next();
+        if (isNullValue(value)) {
+            throw new CutletRuntimeException("Null value at [" + xpath + "]");
+        }
+        return value;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public <T> J with(String xpath, T value) {
+        prepareMutation(xpath, false);
         Object convertedValue = null;
         if (value != null) {
             Class<T> clazz = (Class<T>) value.getClass();
@@ -223,6 +608,7 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     @SuppressWarnings("unchecked")
     private <T> J with(String xpath, T value, Class<T> clazz) {
+        prepareMutation(xpath, false);
         Object convertedValue = convertToJSONValue(xpath, value, clazz);
 
         context.createPathAndSetValue(xpath, convertedValue);
@@ -233,7 +619,7 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
         if (clazz.isEnum()) {
             return value.toString();
         } else if (converterMap.hasConverter(clazz)) {
-            return converterMap.write(value, clazz);
+            return converterMap.write(value, clazz, getMetrics());
         } else if (MICROTYPE_REGISTRY.isMicrotype(clazz)) {
             return convertMicrotypeToJSONValue(value, clazz);
         } else {
@@ -243,13 +629,30 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     @SuppressWarnings("unchecked")
     private <T> Object convertMicrotypeToJSONValue(T microtype, Class<T> clazz) {
+        Class<?> wrappedClass = MICROTYPE_REGISTRY.getMicrotypeValueClass(clazz);
+        if (wrappedClass == int.class || wrappedClass == long.class || wrappedClass == double.class) {
+            MethodHandle getter = MICROTYPE_REGISTRY.getGetter(clazz);
+            try {
+                if (wrappedClass == int.class) {
+                    return converterMap.writeInt(clazz, (int) getter.invoke(microtype));
+                } else if (wrappedClass == long.class) {
+                    return converterMap.writeLong(clazz, (long) getter.invoke(microtype));
+                } else {
+                    return converterMap.writeDouble(clazz, (double) getter.invoke(microtype));
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException("Unable to invoke getValue method on microtype", t);
+            }
+        }
         try {
             Object value = clazz.getMethod("getValue").invoke(microtype);
             if (value == null) {
                 return null;
             } else {
                 Class<Object> valueClass = (Class<Object>) value.getClass();
-                return converterMap.write(value, valueClass);
+                return converterMap.write(value, valueClass, getMetrics());
             }
         } catch (IllegalAccessException | InvocationTargetException e) {
             throw new RuntimeException("Unable to invoke getValue method on microtype");
@@ -261,14 +664,159 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
     @SuppressWarnings("unchecked")
     @Override
     public <T> J withList(String xpath, Collection<T> values, Class<T> clazz) {
+        prepareMutation(xpath, false);
         List<Object> converted = new ArrayList<>(values.size());
         for (T t : values) {
-            converted.add(converterMap.write(t, clazz));
+            converted.add(converterMap.write(t, clazz, getMetrics()));
         }
         context.createPathAndSetValue(xpath, converted);
         return (J) this;
     }
 
+    // Aggregate methods
+
+    @Override
+    public int count(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        int count = 0;
+        Iterator<?> i = context().iteratePointers(xpath);
+        while (i.hasNext()) {
+            i.next();
+            count++;
+        }
+        evaluated(metrics, xpath, start, count);
+        return count;
+    }
+
+    @Override
+    public double sum(String xpath) {
+        return aggregate(xpath).sum;
+    }
+
+    @Override
+    public double min(String xpath) {
+        DoubleAggregate aggregate = aggregate(xpath);
+        return aggregate.count == 0 ? Double.NaN : aggregate.min;
+    }
+
+    @Override
+    public double max(String xpath) {
+        DoubleAggregate aggregate = aggregate(xpath);
+        return aggregate.count == 0 ? Double.NaN : aggregate.max;
+    }
+
+    @Override
+    public double avg(String xpath) {
+        DoubleAggregate aggregate = aggregate(xpath);
+        return aggregate.count == 0 ? Double.NaN : aggregate.sum / aggregate.count;
+    }
+
+    private DoubleAggregate aggregate(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        DoubleAggregate aggregate = new DoubleAggregate();
+        Iterator<?> i = context().iterate(xpath);
+        while (i.hasNext()) {
+            Object value = i.next();
+            if (!isNullValue(value)) {
+                double d = value instanceof Number ? ((Number) value).doubleValue() : parseDouble(xpath, value);
+                aggregate.count++;
+                aggregate.sum += d;
+                aggregate.min = Math.min(aggregate.min, d);
+                aggregate.max = Math.max(aggregate.max, d);
+            }
+        }
+        evaluated(metrics, xpath, start, aggregate.count);
+        return aggregate;
+    }
+
+    @Override
+    public BigDecimal sumBigDecimal(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        BigDecimal sum = BigDecimal.ZERO;
+        int count = 0;
+        Iterator<?> i = context().iterate(xpath);
+        while (i.hasNext()) {
+            Object value = i.next();
+            if (!isNullValue(value)) {
+                sum = sum.add(toBigDecimal(xpath, value));
+                count++;
+            }
+        }
+        evaluated(metrics, xpath, start, count);
+        return sum;
+    }
+
+    @Override
+    public BigDecimal minBigDecimal(String xpath) {
+        return extremeBigDecimal(xpath, -1);
+    }
+
+    @Override
+    public BigDecimal maxBigDecimal(String xpath) {
+        return extremeBigDecimal(xpath, 1);
+    }
+
+    /**
+     * @param sign -1 for the smallest value, 1 for the largest
+     */
+    private BigDecimal extremeBigDecimal(String xpath, int sign) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        BigDecimal extreme = null;
+        int count = 0;
+        Iterator<?> i = context().iterate(xpath);
+        while (i.hasNext()) {
+            Object value = i.next();
+            if (!isNullValue(value)) {
+                BigDecimal b = toBigDecimal(xpath, value);
+                if (extreme == null || b.compareTo(extreme) == sign) {
+                    extreme = b;
+                }
+                count++;
+            }
+        }
+        evaluated(metrics, xpath, start, count);
+        return extreme;
+    }
+
+    /**
+     * @return True if value is a null in the document
+     */
+    protected boolean isNullValue(Object value) {
+        return value == null;
+    }
+
+    private static double parseDouble(String xpath, Object value) {
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new CutletRuntimeException("Value [" + value + "] at [" + xpath + "] is not a number", e);
+        }
+    }
+
+    private static BigDecimal toBigDecimal(String xpath, Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Integer || value instanceof Long) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new CutletRuntimeException("Value [" + value + "] at [" + xpath + "] is not a number", e);
+        }
+    }
+
+    private static final class DoubleAggregate {
+        private int count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+    }
+
     // String methods
 
     @Override
@@ -325,6 +873,36 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
         return with(xpath, value, Integer.class);
     }
 
+    @Override
+    public int getIntValue(String xpath) {
+        return converterMap.readInt(getPrimitive(xpath), getMetrics());
+    }
+
+    @Override
+    public int[] getIntArray(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        int[] array = new int[PRIMITIVE_ARRAY_CAPACITY];
+        int count = 0;
+        Iterator<?> i = context().iterate(xpath);
+        while (i.hasNext()) {
+            if (count == array.length) {
+                array = Arrays.copyOf(array, count * 2);
+            }
+            array[count++] = converterMap.readInt(nextPrimitive(i, xpath), metrics);
+        }
+        evaluated(metrics, xpath, start, count);
+        return count == array.length ? array : Arrays.copyOf(array, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public J withIntValue(String xpath, int value) {
+        prepareMutation(xpath, false);
+        context.createPathAndSetValue(xpath, converterMap.writeInt(value));
+        return (J) this;
+    }
+
     // Long methods
 
     @Override
@@ -342,6 +920,36 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
         return with(xpath, value, Long.class);
     }
 
+    @Override
+    public long getLongValue(String xpath) {
+        return converterMap.readLong(getPrimitive(xpath), getMetrics());
+    }
+
+    @Override
+    public long[] getLongArray(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        long[] array = new long[PRIMITIVE_ARRAY_CAPACITY];
+        int count = 0;
+        Iterator<?> i = context().iterate(xpath);
+        while (i.hasNext()) {
+            if (count == array.length) {
+                array = Arrays.copyOf(array, count * 2);
+            }
+            array[count++] = converterMap.readLong(nextPrimitive(i, xpath), metrics);
+        }
+        evaluated(metrics, xpath, start, count);
+        return count == array.length ? array : Arrays.copyOf(array, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public J withLongValue(String xpath, long value) {
+        prepareMutation(xpath, false);
+        context.createPathAndSetValue(xpath, converterMap.writeLong(value));
+        return (J) this;
+    }
+
     // Double methods
 
     @Override
@@ -359,6 +967,36 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
         return with(xpath, value, Double.class);
     }
 
+    @Override
+    public double getDoubleValue(String xpath) {
+        return converterMap.readDouble(getPrimitive(xpath), getMetrics());
+    }
+
+    @Override
+    public double[] getDoubleArray(String xpath) {
+        CutletMetrics metrics = getMetrics();
+        long start = start(metrics);
+        double[] array = new double[PRIMITIVE_ARRAY_CAPACITY];
+        int count = 0;
+        Iterator<?> i = context().iterate(xpath);
+        while (i.hasNext()) {
+            if (count == array.length) {
+                array = Arrays.copyOf(array, count * 2);
+            }
+            array[count++] = converterMap.readDouble(nextPrimitive(i, xpath), metrics);
+        }
+        evaluated(metrics, xpath, start, count);
+        return count == array.length ? array : Arrays.copyOf(array, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public J withDoubleValue(String xpath, double value) {
+        prepareMutation(xpath, false);
+        context.createPathAndSetValue(xpath, converterMap.writeDouble(value));
+        return (J) this;
+    }
+
     // Float methods
 
     @Override
@@ -463,12 +1101,72 @@ abstract class CutletJXPathContext<J extends CutletJXPathContext<J>> implements
 
     // Other
 
-    static Object getContextBean(Cutlet cutlet) {
-        return ((CutletJXPathContext) cutlet).context.getContextBean();
+    static Object getContextBean(Cutlet<?> cutlet) {
+        CutletJXPathContext<?> c = (CutletJXPathContext<?>) cutlet;
+        return c.isFrozen() ? c.frozenBean : c.context().getContextBean();
     }
 
+    protected ConverterMap getConverterMap() {
+        return converterMap;
+    }
+
+    /**
+     * @return The listener set on this Cutlet, otherwise that of its ConverterMap, otherwise the global listener
+     */
+    protected CutletMetrics getMetrics() {
+        return metrics == null ? converterMap.getMetrics() : metrics;
+    }
+
+    static long start(CutletMetrics metrics) {
+        return metrics == NONE ? 0 : System.nanoTime();
+    }
+
+    private static void evaluated(CutletMetrics metrics, String xpath, long start, int results) {
+        if (metrics != NONE) {
+            metrics.evaluated(xpath, System.nanoTime() - start, results);
+        }
+    }
+
+    /**
+     * Report a parse, counting the nodes of the document only if anyone is listening
+     */
+    static <C extends Cutlet<C>> C parsed(C cutlet, ParseOptions options, long start, long length) {
+        CutletMetrics metrics = options.getMetrics();
+        if (metrics != NONE) {
+            CutletJXPathContext<?> c = (CutletJXPathContext<?>) cutlet;
+            metrics.parsed(c.getFormat(), System.nanoTime() - start, length, c.countNodes());
+        }
+        return cutlet;
+    }
+
+    private J create(JXPathContext context, Pointer pointer) {
+        if (isFrozen()) {
+            return inherit(createFrozen(pointer.getNode(), converterMap));
+        } else {
+            return inherit(create(context.getRelativeContext(pointer)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private J inherit(J child) {
+        ((CutletJXPathContext<J>) child).metrics = metrics;
+        return child;
+    }
+
+    /**
+     * @return "json" or "xml"
+     */
+    protected abstract String getFormat();
+
+    /**
+     * @return Number of nodes in the document
+     */
+    protected abstract int countNodes();
+
     protected abstract J create(JXPathContext jxpathContext);
 
+    protected abstract J createFrozen(Object bean, ConverterMap converterMap);
+
     @Override
     public String toString() {
         return write(PRETTY);
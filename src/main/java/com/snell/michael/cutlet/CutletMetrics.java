@@ -0,0 +1,62 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+/**
+ * Listener for timings and sizes of the work done by Cutlets. Override the methods of interest; the rest do nothing.
+ * Metrics are taken from (in order of precedence) the document (Cutlet.withMetrics), its ConverterMap
+ * (ConverterMap.withMetrics) or the global listener. Parses report to ParseOptions.withMetrics or the global listener.
+ * While the listener in effect is NONE, no clocks are read and nothing is counted.
+ * Listeners may be called by many threads at once
+ */
+public abstract class CutletMetrics {
+    public static final CutletMetrics NONE = new CutletMetrics() {};
+
+    private static volatile CutletMetrics global = NONE;
+
+    /**
+     * Set the listener used where no document, ConverterMap or ParseOptions listener is set
+     * @param metrics Listener, or NONE to stop listening
+     */
+    public static void setGlobal(CutletMetrics metrics) {
+        global = metrics == null ? NONE : metrics;
+    }
+
+    public static CutletMetrics getGlobal() {
+        return global;
+    }
+
+    /**
+     * A document was parsed
+     * @param format "json" or "xml"
+     * @param nanos Time taken
+     * @param length Characters (for strings) or bytes (for files) parsed, or -1 if not known (for streams)
+     * @param nodes Number of nodes in the document, including the root
+     */
+    public void parsed(String format, long nanos, long length, int nodes) {}
+
+    /**
+     * An xpath was evaluated. Values read as a list, set, array or aggregate are converted as they are selected, so are
+     * reported to converted before this is called, and the time taken includes converting them
+     * @param xpath XPath
+     * @param nanos Time taken
+     * @param results Number of nodes or values selected
+     */
+    public void evaluated(String xpath, long nanos, int results) {}
+
+    /**
+     * A converter read or wrote a value
+     * @param clazz Class converted to or from
+     * @param nanos Time taken
+     * @param failed True if the converter threw an exception
+     */
+    public void converted(Class<?> clazz, long nanos, boolean failed) {}
+
+    /**
+     * A document was written as text
+     * @param format "json" or "xml"
+     * @param nanos Time taken
+     * @param length Characters written
+     */
+    public void written(String format, long nanos, int length) {}
+}
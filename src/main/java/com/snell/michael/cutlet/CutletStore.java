@@ -0,0 +1,301 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store of many documents held serialized in direct buffers, outside the heap, in the formats used by snapshots (CBOR
+ * for JSON, and the compact DOM walk for XML). Documents are decoded on demand into frozen read views, and the least
+ * recently used views are evicted once there are more than the limit, so only the working set is held as trees.
+ * Documents are appended to segments of a fixed size; the space of replaced and removed documents is reclaimed by
+ * compact. Safe for use by many threads
+ */
+public final class CutletStore {
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final byte JSON_TYPE = 'J';
+    private static final byte XML_TYPE = 'X';
+
+    private final int maxViews;
+    private final int segmentSize;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final LinkedHashMap<String, View> views = new LinkedHashMap<>(16, 0.75f, true);
+    private List<ByteBuffer> segments = new ArrayList<>();
+    private long bytes;
+    private long capacity;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxViews Maximum number of decoded documents to hold
+     */
+    public CutletStore(int maxViews) {
+        this(maxViews, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxViews Maximum number of decoded documents to hold
+     * @param segmentSize Size of each direct buffer documents are written to - documents larger than this get a buffer
+     * of their own
+     */
+    public CutletStore(int maxViews, int segmentSize) {
+        if (maxViews < 1 || segmentSize < 1) {
+            throw new CutletRuntimeException("Store limits must be positive, not [" + maxViews + "] views and [" + segmentSize + "] byte segments");
+        }
+        this.maxViews = maxViews;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Store a JSON document, replacing any document with the same key. Later changes to the document are not stored
+     */
+    public CutletStore put(String key, JSON json) {
+        Encoded encoded = new Encoded();
+        try {
+            BinaryFormat.CBOR.getCodec().write(CutletJXPathContext.getContextBean(json), encoded);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception encoding document [" + key + "]", e);
+        }
+        return put(key, JSON_TYPE, encoded);
+    }
+
+    /**
+     * Store an XML document, replacing any document with the same key. Later changes to the document are not stored
+     */
+    public CutletStore put(String key, XML xml) {
+        Encoded encoded = new Encoded();
+        try {
+            xml.writeTree(encoded);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception encoding document [" + key + "]", e);
+        }
+        return put(key, XML_TYPE, encoded);
+    }
+
+    private synchronized CutletStore put(String key, byte type, Encoded encoded) {
+        Entry entry = append(type, encoded.wrap());
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += entry.length;
+        views.remove(key);
+        return this;
+    }
+
+    private Entry append(byte type, ByteBuffer source) {
+        int length = source.remaining();
+        ByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.remaining() < length) {
+            segment = ByteBuffer.allocateDirect(Math.max(length, segmentSize));
+            segments.add(segment);
+            capacity += segment.capacity();
+        }
+        int offset = segment.position();
+        segment.put(source);
+        return new Entry(segments.size() - 1, offset, length, type);
+    }
+
+    /**
+     * @return Frozen view of a JSON document, or null if there is no document with the key. Use JSON.snapshot for a
+     * copy that can be modified
+     */
+    public JSON getJSON(String key) {
+        return (JSON) get(key, JSON_TYPE);
+    }
+
+    /**
+     * @return Frozen view of an XML document, or null if there is no document with the key
+     */
+    public XML getXML(String key) {
+        return (XML) get(key, XML_TYPE);
+    }
+
+    private Object get(String key, byte type) {
+        Entry entry;
+        ByteBuffer buffer;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            } else if (entry.type != type) {
+                throw new CutletRuntimeException("Document [" + key + "] is " + typeName(entry.type) + ", not " + typeName(type));
+            }
+            View view = views.get(key);
+            if (view != null && view.entry == entry) {
+                hitCount++;
+                return view.cutlet;
+            }
+            missCount++;
+            // Segments are never written below their position, so the range can be read once the lock is released
+            buffer = segments.get(entry.segment).duplicate();
+        }
+
+        // Decoded outside the lock, so a large document does not hold up other readers
+        buffer.limit(entry.offset + entry.length);
+        buffer.position(entry.offset);
+        Object cutlet = decode(key, type, buffer);
+
+        synchronized (this) {
+            if (entries.get(key) == entry) {
+                views.put(key, new View(entry, cutlet));
+                evict();
+            }
+        }
+        return cutlet;
+    }
+
+    private static Object decode(String key, byte type, ByteBuffer buffer) {
+        try {
+            return type == JSON_TYPE ? JSON.readFrozen(buffer) : XML.readFrozen(buffer);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new CutletRuntimeException("Error decoding document [" + key + "]", e);
+        }
+    }
+
+    private void evict() {
+        Iterator<View> i = views.values().iterator();
+        while (views.size() > maxViews) {
+            i.next();
+            i.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return True if there was a document with the key
+     */
+    public synchronized boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        bytes -= entry.length;
+        views.remove(key);
+        return true;
+    }
+
+    /**
+     * Copy the documents held into new segments, releasing the space of replaced and removed documents. Views already
+     * decoded are kept
+     */
+    public synchronized void compact() {
+        List<ByteBuffer> previous = segments;
+        segments = new ArrayList<>();
+        capacity = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            ByteBuffer source = previous.get(entry.segment).duplicate();
+            source.limit(entry.offset + entry.length);
+            source.position(entry.offset);
+            Entry moved = append(entry.type, source);
+            e.setValue(moved);
+            View view = views.get(e.getKey());
+            if (view != null && view.entry == entry) {
+                view.entry = moved;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        views.clear();
+        segments = new ArrayList<>();
+        bytes = 0;
+        capacity = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Number of decoded documents held
+     */
+    public synchronized int getViewCount() {
+        return views.size();
+    }
+
+    /**
+     * @return Total encoded size of the documents held
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Total size of the direct buffers allocated, including the space of replaced and removed documents
+     */
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CutletStore[entries=" + entries.size() + ", views=" + views.size() + ", bytes=" + bytes + ", capacity=" + capacity + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    private static String typeName(byte type) {
+        return type == JSON_TYPE ? "JSON" : "XML";
+    }
+
+    private static final class Entry {
+        private final int segment;
+        private final int offset;
+        private final int length;
+        private final byte type;
+
+        private Entry(int segment, int offset, int length, byte type) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.type = type;
+        }
+    }
+
+    private static final class View {
+        private Entry entry;
+        private final Object cutlet;
+
+        private View(Entry entry, Object cutlet) {
+            this.entry = entry;
+            this.cutlet = cutlet;
+        }
+    }
+
+    /**
+     * Encoded document, copied into a segment straight from the stream's own array
+     */
+    private static final class Encoded extends ByteArrayOutputStream {
+        private ByteBuffer wrap() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
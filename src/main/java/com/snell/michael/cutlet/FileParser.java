@@ -0,0 +1,12 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.io.File;
+
+/**
+ * Parses a file into a Cutlet, for code shared between JSON and XML
+ */
+interface FileParser<C extends Cutlet<C>> {
+    C parse(File file);
+}
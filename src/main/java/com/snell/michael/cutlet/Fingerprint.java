@@ -0,0 +1,82 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A 256 bit digest of the content of a Cutlet, independent of formatting and of the order of JSON keys and XML
+ * attributes
+ */
+public final class Fingerprint {
+    private static final String ALGORITHM = "SHA-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] bytes;
+
+    private Fingerprint(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return The 32 bytes of the digest
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Fingerprint && Arrays.equals(bytes, ((Fingerprint) obj).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * @return The digest as lower case hex
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("No " + ALGORITHM + " implementation available", e);
+        }
+    }
+
+    /**
+     * Add a tagged, length-prefixed string to a digest, so that adjacent values cannot run into each other
+     */
+    static void update(MessageDigest digest, char tag, String value) {
+        byte[] b = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) tag);
+        digest.update((byte) (b.length >>> 24));
+        digest.update((byte) (b.length >>> 16));
+        digest.update((byte) (b.length >>> 8));
+        digest.update((byte) b.length);
+        digest.update(b);
+    }
+
+    static void update(MessageDigest digest, Fingerprint fingerprint) {
+        digest.update(fingerprint.bytes);
+    }
+
+    static Fingerprint of(MessageDigest digest) {
+        return new Fingerprint(digest.digest());
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import org.apache.commons.jxpath.ri.compiler.NodeTest;
+import org.apache.commons.jxpath.ri.model.NodeIterator;
+import org.apache.commons.jxpath.ri.model.NodePointer;
+import org.apache.commons.jxpath.ri.model.dom.DOMNodeIterator;
+import org.apache.commons.jxpath.ri.model.dom.DOMNodePointer;
+import org.w3c.dom.Node;
+
+import java.util.Locale;
+
+/**
+ * Pointer into a frozen DOM, safe for many threads to read at once. DOMNodePointer reads the value of an element
+ * through its NodeList, and Xerces caches NodeList positions on the document, so concurrent reads of elements with more
+ * than one child corrupt each other. This pointer reads values by following sibling links instead, as JXPath already
+ * does when iterating children, and gives the same values
+ */
+final class FrozenDOMNodePointer extends DOMNodePointer {
+    private static final long serialVersionUID = 1L;
+
+    FrozenDOMNodePointer(Node node, Locale locale) {
+        super(node, locale);
+    }
+
+    private FrozenDOMNodePointer(NodePointer parent, Node node) {
+        super(parent, node);
+    }
+
+    @Override
+    public NodeIterator childIterator(NodeTest test, boolean reverse, NodePointer startWith) {
+        return new FrozenDOMNodeIterator(this, test, reverse, startWith);
+    }
+
+    @Override
+    public Object getValue() {
+        Node node = (Node) getNode();
+        if (!node.hasChildNodes()) {
+            return super.getValue();
+        }
+        StringBuilder sb = new StringBuilder();
+        appendValue(node, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the string value of the children of a node as DOMNodePointer does: text trimmed unless xml:space is
+     * preserve, and comments left out
+     */
+    private static void appendValue(Node node, StringBuilder sb) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.COMMENT_NODE:
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    String text = child.getNodeValue();
+                    if (text != null) {
+                        sb.append("preserve".equals(findEnclosingAttribute(child, "xml:space")) ? text : text.trim());
+                    }
+                    break;
+                default:
+                    appendValue(child, sb);
+            }
+        }
+    }
+
+    private static final class FrozenDOMNodeIterator extends DOMNodeIterator {
+        private final NodePointer parent;
+
+        private FrozenDOMNodeIterator(NodePointer parent, NodeTest test, boolean reverse, NodePointer startWith) {
+            super(parent, test, reverse, startWith);
+            this.parent = parent;
+        }
+
+        @Override
+        public NodePointer getNodePointer() {
+            NodePointer pointer = super.getNodePointer();
+            return pointer == null ? null : new FrozenDOMNodePointer(parent, (Node) pointer.getNode());
+        }
+    }
+}
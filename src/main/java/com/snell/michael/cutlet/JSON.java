@@ -2,21 +2,34 @@
 
 package com.snell.michael.cutlet;
 
+import com.snell.michael.cutlet.converters.RawNumber;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONSerializer;
+import net.sf.json.JsonConfig;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.jxpath.AbstractFactory;
 import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.JXPathException;
+import org.apache.commons.jxpath.JXPathIntrospector;
 import org.apache.commons.jxpath.Pointer;
+import org.apache.commons.jxpath.ri.model.NodePointer;
+import org.apache.commons.jxpath.ri.model.beans.CollectionPointer;
+import org.apache.commons.jxpath.ri.model.beans.PropertyPointer;
+import org.w3c.dom.Element;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static com.snell.michael.cutlet.WriteStyle.PRETTY;
@@ -24,25 +37,54 @@ import static java.util.regex.Pattern.DOTALL;
 
 public class JSON extends CutletJXPathContext<JSON> {
     private static final Pattern COMMENT_PATTERN = Pattern.compile("^/\\*.*?\\*/", DOTALL);
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z_][\\w-]*");
+
+    static {
+        // A leaf value, rather than a bean with properties
+        JXPathIntrospector.registerAtomicClass(RawNumber.class);
+    }
 
     private final JSON root;
 
+    // Containers that are not shared with any snapshot, only maintained on the root. Null if nothing is shared
+    private Set<Object> owned;
+
+    // Incremented on the root whenever it copies a node, so other Cutlets on the document can tell they are stale
+    private int version;
+
+    // Incremented on the root on every modification, so indexes can tell they are stale
+    private long modificationCount;
+
+    // Cached fingerprints of containers, only maintained on the root. Null until the first fingerprint is taken
+    private Map<Object, Fingerprint> fingerprints;
+
     private JSON(JSON root, JXPathContext jxpathContext) {
         super(jxpathContext);
 
         this.root = (root == null ? this : root);
+        this.version = this.root.version;
 
-        jxpathContext.setFactory(new AbstractFactory() {
-            @Override
-            public boolean createObject(JXPathContext context, Pointer pointer, Object parent, String name, int index) {
-                if (parent instanceof JSONObject) {
-                    ((JSONObject) parent).put(name, new JSONObject());
-                    return true;
-                } else {
-                    throw new RuntimeException("Parent class [" + parent.getClass() + "] not supported");
-                }
+        jxpathContext.setFactory(new Factory());
+    }
+
+    private JSON(JSON root, Object frozenBean, ConverterMap converterMap) {
+        super(frozenBean, converterMap);
+
+        this.root = (root == null ? this : root);
+    }
+
+    private class Factory extends AbstractFactory {
+        @Override
+        public boolean createObject(JXPathContext context, Pointer pointer, Object parent, String name, int index) {
+            if (parent instanceof JSONObject) {
+                JSONObject jsonObject = (JSONObject) parent;
+                jsonObject.put(name, new JSONObject());
+                root.markOwned(jsonObject.get(name));
+                return true;
+            } else {
+                throw new RuntimeException("Parent class [" + parent.getClass() + "] not supported");
             }
-        });
+        }
     }
 
     @Override
@@ -51,37 +93,568 @@ public class JSON extends CutletJXPathContext<JSON> {
     }
 
     @Override
-    public String write(WriteStyle style) {
-        return ((JSONObject) getContextBean(root)).toString(PRETTY.equals(style) ? 2 : 0);
+    protected JSON createFrozen(Object bean, ConverterMap converterMap) {
+        return new JSON(root, bean, converterMap);
+    }
+
+    /**
+     * Frozen JSON shares its tree with this document, which from then on copies nodes before changing them
+     */
+    @Override
+    public JSON freeze() {
+        if (isFrozen()) {
+            return this;
+        } else {
+            root.owned = newOwnedSet();
+            return new JSON(null, getContextBean(this), getConverterMap());
+        }
+    }
+
+    /**
+     * Take a snapshot of the whole document in constant time. The snapshot and this document share their tree, and
+     * changes to either copy only the nodes on the path to the change, so unchanged subtrees stay shared. Taking a
+     * snapshot marks the tree of a modifiable document as shared, so is a change to it, made on one thread at a time;
+     * snapshots of a frozen document (as held by CutletCache) can be taken by many threads at once
+     * @return Modifiable snapshot of the document
+     */
+    public JSON snapshot() {
+        if (!root.isFrozen()) {
+            root.owned = newOwnedSet();
+        }
+        JSON snapshot = new JSON(null, JXPathContext.newContext(getContextBean(root)));
+        snapshot.owned = newOwnedSet();
+        return snapshot.withConverterMap(getConverterMap());
+    }
+
+    private static Set<Object> newOwnedSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+
+    @Override
+    protected void prepareMutation(String xpath, boolean removal) {
+        super.prepareMutation(xpath, removal);
+
+        if (root.owned != null || root.fingerprints != null) {
+            JXPathContext context = context();
+            String contextPath = context.getContextPointer().asPath();
+
+            if (removal) {
+                List<Pointer> pointers = new ArrayList<>();
+                Iterator<?> i = context.iteratePointers(xpath);
+                while (i.hasNext()) {
+                    pointers.add((Pointer) i.next());
+                }
+                for (Pointer pointer : pointers) {
+                    root.copyPath(pointer, false);
+                }
+                // Only once all are copied, or a later copyPath would copy an array already evicted
+                for (Pointer pointer : pointers) {
+                    root.evictArray(pointer);
+                }
+            } else {
+                Iterator<?> i = context.iteratePointers(xpath);
+                if (i.hasNext()) {
+                    root.copyPath((Pointer) i.next(), false);
+                } else {
+                    root.copyPath(getDeepestExistingPointer(context, xpath), true);
+                }
+            }
+
+            if (this != root && version != root.version && !refresh()) {
+                throw new CutletRuntimeException("Cannot modify [" + contextPath + "], it has been removed from its document");
+            }
+        }
+    }
+
+    /**
+     * Looks up plain property names holding strings, numbers or booleans directly. Anything else, including missing
+     * and null properties, is left to JXPath so that the result is the same
+     */
+    @Override
+    protected Object getChildValue(Object node, String xpath) {
+        if (node instanceof JSONObject && NAME_PATTERN.matcher(xpath).matches()) {
+            Object value = JSONNodes.properties((JSONObject) node).get(xpath);
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                return value;
+            }
+        }
+        return NO_VALUE;
+    }
+
+    @Override
+    protected boolean isNullValue(Object value) {
+        return value == null || value instanceof JSONNull;
+    }
+
+    @Override
+    protected void markModified() {
+        root.modificationCount++;
+    }
+
+    @Override
+    protected long getModificationCount() {
+        return root.modificationCount;
+    }
+
+    @Override
+    protected JXPathContext context() {
+        if (this != root && version != root.version && !isFrozen()) {
+            refresh();
+        }
+        return super.context();
+    }
+
+    /**
+     * Point this Cutlet at the node now at its position in the document, which may have been copied
+     * @return False if there is no longer a node at that position
+     */
+    private boolean refresh() {
+        JXPathContext context = super.context();
+        List<Object> tokens = getTokens(context.getContextPointer());
+        String contextPath = tokens == null ? null : toXPath(tokens);
+        if (contextPath == null) {
+            contextPath = context.getContextPointer().asPath();
+        }
+        version = root.version;
+
+        JXPathContext rootContext = root.context();
+        Iterator<?> i = rootContext.iteratePointers(contextPath);
+        if (!i.hasNext()) {
+            return false;
+        }
+        Pointer pointer = (Pointer) i.next();
+        if (pointer.getNode() != context.getContextBean()) {
+            JXPathContext relativeContext = rootContext.getRelativeContext(pointer);
+            relativeContext.setFactory(new Factory());
+            setContext(relativeContext);
+        }
+        return true;
     }
 
+    /**
+     * Copy the shared containers on the path from the root to the node at pointer
+     * @param pointer Pointer to the node about to be changed
+     * @param includeNode True if the node itself is about to be changed, false if it is about to be removed or replaced
+     */
+    private void copyPath(Pointer pointer, boolean includeNode) {
+        List<Object> tokens = getTokens(pointer);
+        if (tokens == null) {
+            copyAll();
+        } else {
+            copyPath(tokens, includeNode);
+            if (!includeNode) {
+                evict(pointer.getNode());
+            }
+        }
+    }
+
+    /**
+     * JXPath removes an array element by setting the shortened array back on the object holding it, which json-lib
+     * copies, so the array and everything in it leave the document
+     * @param pointer Pointer to the node about to be removed
+     */
+    private void evictArray(Pointer pointer) {
+        List<Object> tokens = getTokens(pointer);
+        if (tokens != null && !tokens.isEmpty() && tokens.get(tokens.size() - 1) instanceof Integer) {
+            Object node = getContextBean(this);
+            for (Object token : tokens.subList(0, tokens.size() - 1)) {
+                node = JSONNodes.getChild(node, token);
+            }
+            evict(node);
+        }
+    }
+
+    /**
+     * Follow tokens (object keys and array indexes) from the root, copying shared containers on the way
+     * @param tokens Path from the root
+     * @param includeNode True to also copy the node at the end of the path
+     * @return The node at the end of the path, or null if there is none
+     */
+    Object copyPath(List<?> tokens, boolean includeNode) {
+        Object node = getContextBean(this);
+        forget(node);
+        Object ownedNode = own(node);
+        if (ownedNode != node) {
+            node = ownedNode;
+            bindRoot(node);
+        }
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Object child = JSONNodes.getChild(node, tokens.get(i));
+            if (child == null) {
+                return null;
+            }
+            if (includeNode || i < tokens.size() - 1) {
+                forget(child);
+                Object ownedChild = own(child);
+                if (ownedChild != child) {
+                    JSONNodes.setChild(node, tokens.get(i), ownedChild);
+                    child = ownedChild;
+                }
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * @param node Node in this document
+     * @return The node if it is not shared with a snapshot, otherwise a copy which the caller must put in its place
+     */
+    Object own(Object node) {
+        if (owned == null || !JSONNodes.isContainer(node) || owned.contains(node)) {
+            return node;
+        } else {
+            version++;
+            Object copy = JSONNodes.shallowCopy(node);
+            owned.add(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * Record that a newly created container is not shared
+     */
+    void markOwned(Object node) {
+        if (owned != null) {
+            owned.add(node);
+        }
+    }
+
+    /**
+     * Drop the cached fingerprint of a node whose descendants are about to change
+     */
+    private void forget(Object node) {
+        if (fingerprints != null) {
+            fingerprints.remove(node);
+        }
+    }
+
+    /**
+     * Drop the cached fingerprints and ownership of a node that is about to be removed from the document, and of its
+     * descendants, so that the document does not keep detached containers alive
+     */
+    void evict(Object node) {
+        evictFingerprints(node);
+        if (owned != null) {
+            JSONNodes.disown(node, owned);
+        }
+    }
+
+    /**
+     * Drop the cached fingerprints of a node that stays in the document but whose descendants are about to change
+     */
+    void evictFingerprints(Object node) {
+        if (fingerprints != null) {
+            JSONNodes.evict(node, fingerprints);
+        }
+    }
+
+    /**
+     * Fall back to a deep copy for paths that cannot be followed step by step (eg arrays nested directly in arrays)
+     */
+    private void copyAll() {
+        bindRoot(JSONNodes.deepCopy(getContextBean(this)));
+        owned = null;
+        fingerprints = null;
+    }
+
+    void bindRoot(Object bean) {
+        version++;
+        JXPathContext context = JXPathContext.newContext(bean);
+        context.setFactory(new Factory());
+        setContext(context);
+    }
+
+    /**
+     * Pointer.asPath cannot be used to find a node again, as JXPath does not resolve the paths it gives for array
+     * elements (eg /.[@name='a'][2] rather than /a[2])
+     * @param tokens Path from the root
+     * @return XPath from the root to the node at the end of tokens, or null if there is none that JXPath resolves
+     */
+    private static String toXPath(List<Object> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            Object token = tokens.get(i);
+            if (token instanceof Integer) {
+                // Only an element of an array named by the step before (so not of the root, or of a nested array)
+                if (i == 0 || !(tokens.get(i - 1) instanceof String) || !NAME_PATTERN.matcher((String) tokens.get(i - 1)).matches()) {
+                    return null;
+                }
+                sb.append('[').append((Integer) token + 1).append(']');
+            } else {
+                String key = token.toString();
+                if (NAME_PATTERN.matcher(key).matches()) {
+                    sb.append('/').append(key);
+                } else if (key.indexOf('\'') < 0) {
+                    sb.append("/.[@name='").append(key).append("']");
+                } else {
+                    return null;
+                }
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static List<Object> getTokens(Pointer pointer) {
+        LinkedList<Object> tokens = new LinkedList<>();
+        for (NodePointer p = (NodePointer) pointer; p != null; p = p.getImmediateParentPointer()) {
+            if (p instanceof PropertyPointer) {
+                if (p.getIndex() != NodePointer.WHOLE_COLLECTION && p.getBaseValue() instanceof JSONArray) {
+                    tokens.addFirst(p.getIndex());
+                }
+                tokens.addFirst(((PropertyPointer) p).getPropertyName());
+            } else if (p instanceof CollectionPointer && p.getIndex() != NodePointer.WHOLE_COLLECTION) {
+                return null;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Fingerprints of unchanged subtrees are cached on the document, so after a change only the nodes on the path to
+     * it are digested again
+     */
+    @Override
+    public Fingerprint fingerprint() {
+        return JSONNodes.fingerprint(getContextBean(this), root.getFingerprints());
+    }
+
+    private synchronized Map<Object, Fingerprint> getFingerprints() {
+        if (fingerprints == null) {
+            fingerprints = Collections.synchronizedMap(new IdentityHashMap<Object, Fingerprint>());
+        }
+        return fingerprints;
+    }
+
+    @Override
+    protected String serialize(WriteStyle style) {
+        return ((net.sf.json.JSON) getContextBean(root)).toString(PRETTY.equals(style) ? 2 : 0);
+    }
+
+    @Override
+    protected String getFormat() {
+        return "json";
+    }
+
+    @Override
+    protected int countNodes() {
+        return JSONNodes.count(getContextBean(this));
+    }
+
+    /**
+     * @return Keys of the object, which cannot be changed through the set as the object may be frozen or shared
+     */
     @SuppressWarnings("unchecked")
     @Override
     public Set<String> getChildren() {
-        return ((JSONObject) getContextBean(this)).keySet();
+        return Collections.unmodifiableSet(((JSONObject) getContextBean(this)).keySet());
     }
 
     @Override
     public JSON withList(String xpath, List<JSON> jsons) {
+        prepareMutation(xpath, false);
         Collection<Object> os = new ArrayList<>(jsons.size());
         for (JSON json : jsons) {
             os.add(getContextBean(json));
         }
-        context.createPathAndSetValue(xpath, os);
+        context().createPathAndSetValue(xpath, os);
 
         return this;
     }
 
+    @Override
+    public JSON moveList(String xpath, List<JSON> jsons) {
+        JSONArray array = new JSONArray();
+        List<Object> elements = JSONNodes.elements(array);
+        for (JSON json : jsons) {
+            elements.add(take(json));
+        }
+        root.markOwned(array);
+        return attachNode(xpath, array);
+    }
+
+    @Override
+    public JSON attach(String xpath, JSON json) {
+        return attachNode(xpath, take(json));
+    }
+
+    /**
+     * @return The node of a Cutlet, whose document from then on copies nodes before changing them (as after a
+     * snapshot), so that the node can be shared without copying it. Nodes the document already owned may be in the
+     * taken subtree, so ownership starts again rather than carrying on
+     */
+    private Object take(JSON json) {
+        Object node = getContextBean(json);
+        JSON source = json.root;
+        if (!source.isFrozen()) {
+            source.owned = newOwnedSet();
+        }
+        return node;
+    }
+
+    /**
+     * Set the value at xpath to a node without copying it
+     */
+    private JSON attachNode(String xpath, Object node) {
+        // Nodes from elsewhere (or from this document) are shared, so must be copied before this document changes them
+        root.owned = newOwnedSet();
+        prepareMutation(xpath, false);
+
+        JXPathContext context = context();
+        context.createPathAndSetValue(xpath, JSONNull.getInstance());
+        List<Object> tokens = getTokens(context.getPointer(xpath));
+        if (tokens == null || tokens.isEmpty()) {
+            // Not a path that can be followed step by step, so fall back to json-lib copying the node
+            context.createPathAndSetValue(xpath, node);
+        } else {
+            Object parent = root.copyPath(tokens.subList(0, tokens.size() - 1), true);
+            JSONNodes.setChild(parent, tokens.get(tokens.size() - 1), node);
+        }
+        return this;
+    }
+
+    /**
+     * Create a JSON Patch (RFC 6902) that turns one document into another. Subtrees shared between the documents (eg
+     * after a snapshot) are skipped without being compared. Whole documents are compared, even when given Cutlets
+     * obtained from get() on part of one
+     * @param source Document before changes
+     * @param target Document after changes
+     * @return JSON whose root is an array of patch operations
+     */
+    public static JSON diff(JSON source, JSON target) {
+        JSONArray operations = JSONPatch.diff(getContextBean(source.root), getContextBean(target.root));
+        return new JSON(null, JXPathContext.newContext(operations));
+    }
+
+    /**
+     * Apply a JSON Patch (RFC 6902) to this document. If any operation fails the document is left unchanged. Paths are
+     * from the root of the document, even when this Cutlet was obtained from get() on part of it
+     * @param patch JSON whose root is an array of patch operations
+     * @return The current Cutlet (to allow fluent style)
+     */
+    public JSON apply(JSON patch) {
+        checkNotFrozen();
+        Object operations = getContextBean(patch.root);
+        if (!(operations instanceof JSONArray)) {
+            throw new CutletRuntimeException("JSON Patch must be an array of operations");
+        }
+
+        JSON working = snapshot();
+        JSONPatch.apply(working, (JSONArray) operations);
+        root.bindRoot(getContextBean(working));
+        root.owned = working.owned;
+        root.fingerprints = null;
+        markModified();
+        return this;
+    }
+
+    /**
+     * Apply a JSON Merge Patch (RFC 7396) to this document. The patch is merged into the root of the document, even when
+     * this Cutlet was obtained from get() on part of it
+     * @param mergePatch Merge patch
+     * @return The current Cutlet (to allow fluent style)
+     */
+    public JSON merge(JSON mergePatch) {
+        checkNotFrozen();
+        JSONPatch.merge(root, getContextBean(mergePatch.root));
+        markModified();
+        return this;
+    }
+
+    /**
+     * Convert to XML directly, without going through a String - see {@link Transcode} for the mapping
+     * @param rootName Name of the root element, which holds the content of this Cutlet
+     */
+    public XML toXML(String rootName) {
+        Object bean = getContextBean(this);
+        if (!(bean instanceof JSONObject)) {
+            throw new CutletRuntimeException("Cannot convert [" + bean + "] to XML, it is not a JSON object");
+        }
+        XML xml = XML.create(rootName);
+        Transcode.toXML((JSONObject) bean, (Element) getContextBean(xml));
+        return xml;
+    }
+
+    /**
+     * Write in a binary format rather than as text - see {@link BinaryFormat}
+     */
+    public void writeBinary(OutputStream outputStream, BinaryFormat format) {
+        try {
+            format.getCodec().write(getContextBean(this), outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing to stream", e);
+        }
+    }
+
+    @Override
+    public void saveSnapshot(File file) {
+        Snapshots.saveJSON(file, getContextBean(this));
+    }
+
+    /**
+     * Load a snapshot saved by {@link #saveSnapshot(File)}
+     */
+    public static JSON loadSnapshot(File file) {
+        Object bean = Snapshots.loadJSON(file);
+        if (!JSONNodes.isContainer(bean)) {
+            throw new CutletRuntimeException("Invalid snapshot file [" + file + "]");
+        }
+        return create(bean);
+    }
+
+    /**
+     * @return Frozen JSON over a tree read from a buffer by CutletStore
+     */
+    static JSON readFrozen(ByteBuffer buffer) throws IOException {
+        return new JSON(null, Snapshots.readJSON(buffer), ConverterMap.DEFAULT_CONVERTER_MAP);
+    }
+
+    static JSON create(Object bean) {
+        return new JSON(null, JXPathContext.newContext(bean));
+    }
+
     /**
      * Parse a JSON string into a Cutlet
      */
     public static JSON parse(String string) {
+        return parse(string, new ParseOptions());
+    }
+
+    /**
+     * Parse a JSON string into a Cutlet
+     */
+    public static JSON parse(String string, ParseOptions options) {
+        long start = start(options.getMetrics());
+        int length = string.length();
+        ParseLimits.checkLength(length, options);
+        string = stripComments(string);
+        if (options.isLimitingStructure()) {
+            ParseLimits.checkJSON(string, options);
+        }
+        Object bean;
         try {
-            string = stripComments(string);
-            return new JSON(null, JXPathContext.newContext(JSONSerializer.toJSON(string)));
+            bean = toJSON(string);
         } catch (RuntimeException e) {
             throw new CutletRuntimeException("Could not parse [" + string + "] as JSON", e);
         }
+        if (options.isInterning()) {
+            JSONNodes.intern(bean, options, options.getSymbolTable());
+        }
+        return parsed(new JSON(null, JXPathContext.newContext(bean)), options, start, length);
+    }
+
+    /**
+     * As JSONSerializer.toJSON, but keeping numbers as RawNumbers
+     */
+    private static Object toJSON(String string) {
+        if (string.startsWith("{")) {
+            return JSONObject.fromObject(new RawNumberTokener(string), new JsonConfig());
+        } else if (string.startsWith("[")) {
+            return JSONArray.fromObject(new RawNumberTokener(string), new JsonConfig());
+        } else {
+            return JSONSerializer.toJSON(string);
+        }
     }
 
     private static String stripComments(String string) {
@@ -92,20 +665,59 @@ public class JSON extends CutletJXPathContext<JSON> {
      * Parse a JSON input stream into a Cutlet
      */
     public static JSON parse(InputStream inputStream) {
+        return parse(inputStream, new ParseOptions());
+    }
+
+    /**
+     * Parse a JSON input stream into a Cutlet
+     */
+    public static JSON parse(InputStream inputStream, ParseOptions options) {
         String string;
         try {
-            string = IOUtils.toString(inputStream);
+            string = IOUtils.toString(ParseLimits.limit(inputStream, options));
         } catch (IOException e) {
             throw new CutletRuntimeException("IO exception reading from input stream [" + inputStream + "]", e);
         }
 
-        return parse(string);
+        return parse(string, options);
+    }
+
+    /**
+     * Parse a binary encoded JSON input stream into a Cutlet. Containers may be nested no more than 1000 deep
+     */
+    public static JSON parseBinary(InputStream inputStream, BinaryFormat format) {
+        return parseBinary(inputStream, format, new ParseOptions());
+    }
+
+    /**
+     * Parse a binary encoded JSON input stream into a Cutlet, applying the maximum input size and nesting depth of the
+     * options (the depth never more than 1000)
+     */
+    public static JSON parseBinary(InputStream inputStream, BinaryFormat format, ParseOptions options) {
+        Object bean;
+        try {
+            bean = format.getCodec().read(ParseLimits.limit(inputStream, options), options.getMaxDepth());
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception reading " + format + " from input stream [" + inputStream + "]", e);
+        }
+        if (!JSONNodes.isContainer(bean)) {
+            throw new CutletRuntimeException("Could not parse " + format + " value [" + bean + "] as JSON, it is not an object or array");
+        }
+        return create(bean);
     }
 
     /**
      * Parse a JSON file into a Cutlet
      */
     public static JSON parse(File file) {
+        return parse(file, new ParseOptions());
+    }
+
+    /**
+     * Parse a JSON file into a Cutlet
+     */
+    public static JSON parse(File file, ParseOptions options) {
+        ParseLimits.checkLength(file.length(), options);
         String string;
         try {
             string = FileUtils.readFileToString(file);
@@ -113,7 +725,7 @@ public class JSON extends CutletJXPathContext<JSON> {
             throw new CutletRuntimeException("IO exception reading from file [" + file + "]", e);
         }
 
-        return parse(string);
+        return parse(string, options);
     }
 
     /**
@@ -123,6 +735,71 @@ public class JSON extends CutletJXPathContext<JSON> {
         return parse(new File(filename));
     }
 
+    /**
+     * Parse a JSON file into a Cutlet, or take it from a cache if the file has not changed since it was last parsed
+     * @return Copy-on-write snapshot of the cached document, which can be modified without affecting it
+     */
+    public static JSON parse(File file, CutletCache cache) {
+        return cache.get(file, "json", FILE_PARSER).snapshot();
+    }
+
+    /**
+     * Parse a JSON file into a Cutlet, or take it from a cache if the file has not changed since it was last parsed
+     */
+    public static JSON parseFile(String filename, CutletCache cache) {
+        return parse(new File(filename), cache);
+    }
+
+    /**
+     * Parse a JSON input stream into a Cutlet on an executor
+     */
+    public static CompletableFuture<JSON> parseAsync(final InputStream inputStream, Executor executor) {
+        return CompletableFuture.supplyAsync(new Supplier<JSON>() {
+            @Override
+            public JSON get() {
+                return parse(inputStream);
+            }
+        }, executor);
+    }
+
+    /**
+     * Parse many files at once, reading no more than parallelism of them at a time. All of the Cutlets are held until
+     * the last is parsed - use parseEach for more files than fit in memory
+     * @return Cutlets, in the order of the files
+     */
+    public static List<JSON> parseAll(Collection<File> files, int parallelism) {
+        return parseAll(files, parallelism, FILE_PARSER);
+    }
+
+    /**
+     * Parse many files at once, reading no more than parallelism of them ahead of consumer, which is called with each
+     * Cutlet in the order of the files on the calling thread
+     */
+    public static void parseEach(Collection<File> files, int parallelism, Consumer<? super JSON> consumer) {
+        parseEach(files, parallelism, FILE_PARSER, consumer);
+    }
+
+    private static final FileParser<JSON> FILE_PARSER = new FileParser<JSON>() {
+        @Override
+        public JSON parse(File file) {
+            return JSON.parse(file);
+        }
+    };
+
+    /**
+     * Create a builder for a document, which adds nodes directly rather than through xpaths
+     */
+    public static JSONBuilder builder() {
+        return new JSONBuilder();
+    }
+
+    /**
+     * Create a generator that writes a document to a stream as it is generated, without building it in memory
+     */
+    public static JSONGenerator writer(OutputStream outputStream) {
+        return new JSONGenerator(outputStream);
+    }
+
     /**
      * Create an empty JSONCutlet
      */
@@ -0,0 +1,312 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import com.snell.michael.cutlet.converters.TextConverter;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Writes compact JSON text as it is generated, without building a tree, so documents of any size can be written in
+ * constant memory. The calls are those of JSONBuilder, and values are converted with the ConverterMap (straight into
+ * the output for a TextConverter). JSON Cutlets can be written as values, eg one per row of a database cursor.
+ * Closing the generator ends any open objects and arrays, and closes the stream
+ */
+public final class JSONGenerator implements Closeable, Flushable {
+    private final Writer writer;
+    // Per open container: true for an object, false for an array
+    private final Deque<Boolean> containers = new ArrayDeque<>();
+    private ConverterMap converterMap = ConverterMap.DEFAULT_CONVERTER_MAP;
+    private final Escaper escaper = new Escaper();
+    private boolean first = true;
+    private boolean started;
+
+    JSONGenerator(OutputStream outputStream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    public JSONGenerator withConverterMap(ConverterMap converterMap) {
+        this.converterMap = converterMap;
+        return this;
+    }
+
+    /**
+     * Begin the root object, or an object in the current array
+     */
+    public JSONGenerator beginObject() {
+        return begin(null, true);
+    }
+
+    /**
+     * Begin an object as a field of the current object
+     */
+    public JSONGenerator beginObject(String name) {
+        return begin(name, true);
+    }
+
+    public JSONGenerator endObject() {
+        return end(true);
+    }
+
+    /**
+     * Begin the root array, or an array in the current array
+     */
+    public JSONGenerator beginArray() {
+        return begin(null, false);
+    }
+
+    /**
+     * Begin an array as a field of the current object
+     */
+    public JSONGenerator beginArray(String name) {
+        return begin(name, false);
+    }
+
+    public JSONGenerator endArray() {
+        return end(false);
+    }
+
+    /**
+     * Write a field of the current object
+     * @param value Value, converted with the ConverterMap, a JSON Cutlet, or null
+     */
+    public JSONGenerator field(String name, Object value) {
+        try {
+            separate(name);
+            writeValue(value);
+        } catch (IOException e) {
+            throw writeError(e);
+        }
+        return this;
+    }
+
+    /**
+     * Write an element of the current array
+     * @param value Value, converted with the ConverterMap, a JSON Cutlet, or null
+     */
+    public JSONGenerator element(Object value) {
+        return field(null, value);
+    }
+
+    /**
+     * Write an array field of the current object
+     * @param values Values, each converted with the ConverterMap
+     */
+    public JSONGenerator list(String name, Collection<?> values) {
+        beginArray(name);
+        for (Object value : values) {
+            element(value);
+        }
+        return endArray();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw writeError(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            while (!containers.isEmpty()) {
+                writer.write(containers.pop() ? '}' : ']');
+            }
+            writer.close();
+        } catch (IOException e) {
+            throw writeError(e);
+        }
+    }
+
+    private JSONGenerator begin(String name, boolean object) {
+        try {
+            separate(name);
+            writer.write(object ? '{' : '[');
+        } catch (IOException e) {
+            throw writeError(e);
+        }
+        containers.push(object);
+        first = true;
+        return this;
+    }
+
+    private JSONGenerator end(boolean object) {
+        if (containers.isEmpty() || containers.peek() != object) {
+            throw new CutletRuntimeException("Cannot end " + (object ? "object" : "array") + ", it has not been begun");
+        }
+        containers.pop();
+        first = false;
+        try {
+            writer.write(object ? '}' : ']');
+        } catch (IOException e) {
+            throw writeError(e);
+        }
+        return this;
+    }
+
+    /**
+     * Write the comma and name (if in an object) that come before a value
+     */
+    private void separate(String name) throws IOException {
+        if (containers.isEmpty()) {
+            if (started) {
+                throw new CutletRuntimeException("The root of the document has already been written");
+            } else if (name != null) {
+                throw new CutletRuntimeException("The root of a document cannot have a name [" + name + "]");
+            }
+            started = true;
+            return;
+        }
+        boolean object = containers.peek();
+        if (object && name == null) {
+            throw new CutletRuntimeException("Fields of an object must be named");
+        } else if (!object && name != null) {
+            throw new CutletRuntimeException("Elements of an array cannot be named [" + name + "]");
+        }
+        if (!first) {
+            writer.write(',');
+        }
+        first = false;
+        if (object) {
+            writer.write(JSONUtils.quote(name));
+            writer.write(':');
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value) throws IOException {
+        if (value instanceof JSON) {
+            writeNode(CutletJXPathContext.getContextBean((JSON) value));
+            return;
+        }
+        // Strings gain nothing from a TextConverter, and json-lib writes some of them unquoted
+        Class<Object> clazz = value == null || value instanceof String ? null : (Class<Object>) value.getClass();
+        TextConverter<Object> textConverter = clazz == null ? null : converterMap.getTextConverter(clazz);
+        if (textConverter == null) {
+            Object converted = converterMap.writeValue(value);
+            writeNode(converted == null ? JSONNull.getInstance() : converted);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            converterMap.write(textConverter, value, clazz, writer);
+        } else {
+            writer.write('"');
+            escaper.previous = 0;
+            converterMap.write(textConverter, value, clazz, escaper);
+            writer.write('"');
+        }
+    }
+
+    private void writeNode(Object node) throws IOException {
+        if (node instanceof JSONObject && !((JSONObject) node).isNullObject()) {
+            writer.write('{');
+            boolean firstProperty = true;
+            for (Map.Entry<Object, Object> entry : JSONNodes.properties((JSONObject) node).entrySet()) {
+                if (!firstProperty) {
+                    writer.write(',');
+                }
+                firstProperty = false;
+                writer.write(JSONUtils.quote(entry.getKey().toString()));
+                writer.write(':');
+                writeNode(entry.getValue());
+            }
+            writer.write('}');
+        } else if (node instanceof JSONArray) {
+            writer.write('[');
+            boolean firstElement = true;
+            for (Object element : JSONNodes.elements((JSONArray) node)) {
+                if (!firstElement) {
+                    writer.write(',');
+                }
+                firstElement = false;
+                writeNode(element);
+            }
+            writer.write(']');
+        } else {
+            writer.write(JSONUtils.valueToString(node));
+        }
+    }
+
+    /**
+     * Escapes characters as JSONUtils.quote does, as they are written
+     */
+    private final class Escaper implements Appendable {
+        private char previous;
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            switch (c) {
+                case '"':
+                case '\\':
+                    writer.write('\\');
+                    writer.write(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        writer.write('\\');
+                    }
+                    writer.write(c);
+                    break;
+                case '\b':
+                    writer.write("\\b");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\f':
+                    writer.write("\\f");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                default:
+                    if (c < ' ') {
+                        String hex = Integer.toHexString(c);
+                        writer.write("\\u0000", 0, 6 - hex.length());
+                        writer.write(hex);
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+            previous = c;
+            return this;
+        }
+    }
+
+    private static CutletRuntimeException writeError(IOException e) {
+        return new CutletRuntimeException("IO exception writing JSON", e);
+    }
+}
@@ -0,0 +1,308 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Direct access to the storage behind json-lib nodes. JSONObject.put and JSONArray.add deep copy any JSON value they
+ * are given, which makes it impossible to share a subtree between two documents through the public API. The fields are
+ * those of json-lib 2.4, which the pom requires exactly, and are looked up when the class loads so that another version
+ * or a security manager denying access fails at once rather than on first use
+ */
+final class JSONNodes {
+    private static final Field PROPERTIES = getField(JSONObject.class, "properties");
+    private static final Field ELEMENTS = getField(JSONArray.class, "elements");
+
+    private JSONNodes() {}
+
+    static boolean isContainer(Object node) {
+        return node instanceof JSONObject || node instanceof JSONArray;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<Object, Object> properties(JSONObject jsonObject) {
+        return (Map<Object, Object>) getValue(PROPERTIES, jsonObject);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Object> elements(JSONArray jsonArray) {
+        return (List<Object>) getValue(ELEMENTS, jsonArray);
+    }
+
+    /**
+     * @param node Container
+     * @param token Key (for an object) or index, as an Integer or String (for an array)
+     * @return The child, or null if there is none
+     */
+    static Object getChild(Object node, Object token) {
+        if (node instanceof JSONObject) {
+            return properties((JSONObject) node).get(token.toString());
+        } else if (node instanceof JSONArray) {
+            List<Object> elements = elements((JSONArray) node);
+            int index = getIndex(token);
+            return (index >= 0 && index < elements.size()) ? elements.get(index) : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Replace the child of a container without copying it
+     */
+    static void setChild(Object node, Object token, Object child) {
+        if (node instanceof JSONObject) {
+            properties((JSONObject) node).put(token.toString(), child);
+        } else {
+            elements((JSONArray) node).set(getIndex(token), child);
+        }
+    }
+
+    /**
+     * @param token Integer, or String of decimal digits without leading zeros
+     * @return The index, or -1 if the token is not an index
+     */
+    static int getIndex(Object token) {
+        if (token instanceof Integer) {
+            return (Integer) token;
+        }
+        String s = token.toString();
+        if (s.isEmpty() || s.length() > 9 || (s.length() > 1 && s.charAt(0) == '0')) {
+            return -1;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(s);
+    }
+
+    /**
+     * Copy a container without copying its children
+     * @param node JSONObject or JSONArray
+     * @return New container holding the same children
+     */
+    static Object shallowCopy(Object node) {
+        if (node instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) node;
+            if (jsonObject.isNullObject()) {
+                return new JSONObject(true);
+            }
+            JSONObject copy = new JSONObject();
+            properties(copy).putAll(properties(jsonObject));
+            return copy;
+        } else if (node instanceof JSONArray) {
+            JSONArray copy = new JSONArray();
+            elements(copy).addAll(elements((JSONArray) node));
+            return copy;
+        } else {
+            throw new CutletRuntimeException("Cannot copy [" + node + "], it is not a JSON container");
+        }
+    }
+
+    /**
+     * Copy a node and all its descendants, without json-lib reinterpreting any values
+     */
+    static Object deepCopy(Object node) {
+        if (node instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) node;
+            if (jsonObject.isNullObject()) {
+                return new JSONObject(true);
+            }
+            JSONObject copy = new JSONObject();
+            Map<Object, Object> properties = properties(copy);
+            for (Map.Entry<Object, Object> entry : properties(jsonObject).entrySet()) {
+                properties.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+            return copy;
+        } else if (node instanceof JSONArray) {
+            JSONArray copy = new JSONArray();
+            List<Object> elements = elements(copy);
+            for (Object element : elements((JSONArray) node)) {
+                elements.add(deepCopy(element));
+            }
+            return copy;
+        } else {
+            return node;
+        }
+    }
+
+    /**
+     * @return Number of nodes in a tree, including its root
+     */
+    static int count(Object node) {
+        int count = 1;
+        if (node instanceof JSONObject) {
+            for (Object child : properties((JSONObject) node).values()) {
+                count += count(child);
+            }
+        } else if (node instanceof JSONArray) {
+            for (Object element : elements((JSONArray) node)) {
+                count += count(element);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Replace keys and short string values with their canonical instances, in place
+     */
+    static void intern(Object node, ParseOptions options, SymbolTable symbolTable) {
+        if (node instanceof JSONObject) {
+            Map<Object, Object> properties = properties((JSONObject) node);
+            if (options.isInternKeys() && !properties.isEmpty()) {
+                // Entries of a ListOrderedMap are views onto it, so keys and values are copied out before clearing
+                Object[] keys = properties.keySet().toArray();
+                Object[] values = properties.values().toArray();
+                properties.clear();
+                for (int i = 0; i < keys.length; i++) {
+                    properties.put(symbolTable.intern(keys[i].toString()), values[i]);
+                }
+            }
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                Object value = entry.getValue();
+                if (isContainer(value)) {
+                    intern(value, options, symbolTable);
+                } else if (isInternable(value, options)) {
+                    entry.setValue(symbolTable.intern((String) value));
+                }
+            }
+        } else if (node instanceof JSONArray) {
+            List<Object> elements = elements((JSONArray) node);
+            for (int i = 0; i < elements.size(); i++) {
+                Object element = elements.get(i);
+                if (isContainer(element)) {
+                    intern(element, options, symbolTable);
+                } else if (isInternable(element, options)) {
+                    elements.set(i, symbolTable.intern((String) element));
+                }
+            }
+        }
+    }
+
+    private static boolean isInternable(Object value, ParseOptions options) {
+        return value instanceof String && ((String) value).length() <= options.getInternValueMaxLength();
+    }
+
+    /**
+     * Fingerprint a node. Containers are digested from the fingerprints of their children, and cached
+     * @param cache Fingerprints of containers, by identity
+     */
+    static Fingerprint fingerprint(Object node, Map<Object, Fingerprint> cache) {
+        Fingerprint fingerprint = cache.get(node);
+        if (fingerprint == null) {
+            MessageDigest digest = Fingerprint.newDigest();
+            if (node instanceof JSONObject && !((JSONObject) node).isNullObject()) {
+                // Keys sorted, as their order is not significant
+                Map<Object, Object> properties = properties((JSONObject) node);
+                Object[] keys = properties.keySet().toArray();
+                Arrays.sort(keys);
+                digest.update((byte) '{');
+                for (Object key : keys) {
+                    Fingerprint.update(digest, 'k', key.toString());
+                    updateValue(digest, properties.get(key), cache);
+                }
+            } else if (node instanceof JSONArray) {
+                digest.update((byte) '[');
+                for (Object element : elements((JSONArray) node)) {
+                    updateValue(digest, element, cache);
+                }
+            } else {
+                updateValue(digest, node, cache);
+            }
+            fingerprint = Fingerprint.of(digest);
+            if (isContainer(node)) {
+                cache.put(node, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void updateValue(MessageDigest digest, Object value, Map<Object, Fingerprint> cache) {
+        if (value instanceof JSONObject && !((JSONObject) value).isNullObject() || value instanceof JSONArray) {
+            Fingerprint.update(digest, fingerprint(value, cache));
+        } else if (value == null || value instanceof JSONNull || value instanceof JSONObject) {
+            digest.update((byte) 'n');
+        } else if (value instanceof Number) {
+            // So that eg 1E7 and 10000000 are the same, without expanding huge exponents into plain form
+            String number;
+            try {
+                number = new BigDecimal(value.toString()).stripTrailingZeros().toString();
+            } catch (NumberFormatException e) {
+                number = value.toString();
+            }
+            Fingerprint.update(digest, 'd', number);
+        } else if (value instanceof Boolean) {
+            Fingerprint.update(digest, 'b', value.toString());
+        } else {
+            Fingerprint.update(digest, 's', value.toString());
+        }
+    }
+
+    /**
+     * Remove the cached fingerprints of a node and its descendants
+     */
+    static void evict(Object node, Map<Object, Fingerprint> cache) {
+        if (isContainer(node) && cache.remove(node) != null) {
+            if (node instanceof JSONObject) {
+                for (Object child : properties((JSONObject) node).values()) {
+                    evict(child, cache);
+                }
+            } else {
+                for (Object child : elements((JSONArray) node)) {
+                    evict(child, cache);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a node that is about to be removed from the document, and its descendants, from the set of containers the
+     * document owns. Descendants of a container that is not owned are not owned either, so only owned containers are
+     * walked
+     */
+    static void disown(Object node, Set<Object> owned) {
+        if (isContainer(node) && owned.remove(node)) {
+            if (node instanceof JSONObject) {
+                for (Object child : properties((JSONObject) node).values()) {
+                    disown(child, owned);
+                }
+            } else {
+                for (Object child : elements((JSONArray) node)) {
+                    disown(child, owned);
+                }
+            }
+        }
+    }
+
+    private static Field getField(Class<?> clazz, String name) {
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException("Unsupported json-lib version, no field [" + name + "] in [" + clazz + "]", e);
+        } catch (SecurityException e) {
+            throw new RuntimeException("Cutlet needs ReflectPermission suppressAccessChecks to read field [" + name + "] of [" + clazz + "]", e);
+        }
+    }
+
+    private static Object getValue(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to access [" + field + "]", e);
+        }
+    }
+}
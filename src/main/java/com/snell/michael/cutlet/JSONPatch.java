@@ -0,0 +1,386 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import com.snell.michael.cutlet.converters.RawNumber;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * JSON Patch (RFC 6902) and JSON Merge Patch (RFC 7396) over json-lib trees
+ */
+final class JSONPatch {
+    // Subtree hashes, so equal subtrees can be skipped without walking them more than once
+    private final Map<Object, Integer> hashes = new IdentityHashMap<>();
+    private final JSONArray operations = new JSONArray();
+
+    private JSONPatch() {}
+
+    /**
+     * Create a patch that turns source into target
+     * @return Array of patch operations
+     */
+    static JSONArray diff(Object source, Object target) {
+        JSONPatch patch = new JSONPatch();
+        patch.diff("", source, target);
+        return patch.operations;
+    }
+
+    private void diff(String path, Object source, Object target) {
+        if (source == target) {
+            return;
+        }
+        if (source instanceof JSONObject && target instanceof JSONObject && !isNull(source) && !isNull(target)) {
+            diffObjects(path, JSONNodes.properties((JSONObject) source), JSONNodes.properties((JSONObject) target));
+        } else if (source instanceof JSONArray && target instanceof JSONArray) {
+            diffArrays(path, JSONNodes.elements((JSONArray) source), JSONNodes.elements((JSONArray) target));
+        } else if (!isEqual(source, target)) {
+            addOperation("replace", path, target);
+        }
+    }
+
+    private void diffObjects(String path, Map<Object, Object> source, Map<Object, Object> target) {
+        for (Map.Entry<Object, Object> entry : source.entrySet()) {
+            String childPath = path + "/" + escape(entry.getKey().toString());
+            if (target.containsKey(entry.getKey())) {
+                diff(childPath, entry.getValue(), target.get(entry.getKey()));
+            } else {
+                addOperation("remove", childPath, null);
+            }
+        }
+        for (Map.Entry<Object, Object> entry : target.entrySet()) {
+            if (!source.containsKey(entry.getKey())) {
+                addOperation("add", path + "/" + escape(entry.getKey().toString()), entry.getValue());
+            }
+        }
+    }
+
+    private void diffArrays(String path, List<Object> source, List<Object> target) {
+        // Skip the common prefix and suffix, so an insertion or removal in the middle is a single operation
+        int start = 0;
+        while (start < source.size() && start < target.size() && isEqual(source.get(start), target.get(start))) {
+            start++;
+        }
+        int sourceEnd = source.size();
+        int targetEnd = target.size();
+        while (sourceEnd > start && targetEnd > start && isEqual(source.get(sourceEnd - 1), target.get(targetEnd - 1))) {
+            sourceEnd--;
+            targetEnd--;
+        }
+
+        int common = Math.min(sourceEnd - start, targetEnd - start);
+        for (int i = start; i < start + common; i++) {
+            diff(path + "/" + i, source.get(i), target.get(i));
+        }
+        for (int i = sourceEnd - 1; i >= start + common; i--) {
+            addOperation("remove", path + "/" + i, null);
+        }
+        for (int i = start + common; i < targetEnd; i++) {
+            addOperation("add", path + "/" + i, target.get(i));
+        }
+    }
+
+    private void addOperation(String op, String path, Object value) {
+        JSONObject operation = new JSONObject();
+        Map<Object, Object> properties = JSONNodes.properties(operation);
+        properties.put("op", op);
+        properties.put("path", path);
+        if (!"remove".equals(op)) {
+            properties.put("value", JSONNodes.deepCopy(value));
+        }
+        JSONNodes.elements(operations).add(operation);
+    }
+
+    private boolean isEqual(Object a, Object b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null || hash(a) != hash(b)) {
+            return false;
+        } else if (a instanceof JSONObject && b instanceof JSONObject) {
+            Map<Object, Object> pa = JSONNodes.properties((JSONObject) a);
+            Map<Object, Object> pb = JSONNodes.properties((JSONObject) b);
+            if (pa.size() != pb.size() || isNull(a) != isNull(b)) {
+                return false;
+            }
+            for (Map.Entry<Object, Object> entry : pa.entrySet()) {
+                if (!pb.containsKey(entry.getKey()) || !isEqual(entry.getValue(), pb.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a instanceof JSONArray && b instanceof JSONArray) {
+            List<Object> ea = JSONNodes.elements((JSONArray) a);
+            List<Object> eb = JSONNodes.elements((JSONArray) b);
+            if (ea.size() != eb.size()) {
+                return false;
+            }
+            for (int i = 0; i < ea.size(); i++) {
+                if (!isEqual(ea.get(i), eb.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a instanceof Number && b instanceof Number) {
+            BigDecimal da = toBigDecimal((Number) a);
+            BigDecimal db = toBigDecimal((Number) b);
+            return da == null || db == null ? a.equals(b) : da.compareTo(db) == 0;
+        } else {
+            return a.equals(b);
+        }
+    }
+
+    /**
+     * Numbers are compared by value, as the same number may be a RawNumber when parsed and an Integer when set
+     * @return Value of a number, or null for an infinite or NaN double
+     */
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        } else if (number instanceof RawNumber) {
+            return ((RawNumber) number).bigDecimalValue();
+        } else if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return BigDecimal.valueOf(number.longValue());
+        } else if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        } else if (Double.isInfinite(number.doubleValue()) || Double.isNaN(number.doubleValue())) {
+            return null;
+        } else {
+            // Float and Double, by their shortest decimal form
+            return new BigDecimal(number.toString());
+        }
+    }
+
+    private int hash(Object node) {
+        if (node instanceof Number) {
+            BigDecimal value = toBigDecimal((Number) node);
+            return value == null ? node.hashCode() : value.stripTrailingZeros().hashCode();
+        } else if (!JSONNodes.isContainer(node)) {
+            return node == null ? 0 : node.hashCode();
+        }
+        Integer hash = hashes.get(node);
+        if (hash == null) {
+            int h = 0;
+            if (node instanceof JSONObject) {
+                // Order independent, as key order is not significant
+                for (Map.Entry<Object, Object> entry : JSONNodes.properties((JSONObject) node).entrySet()) {
+                    h += entry.getKey().hashCode() ^ hash(entry.getValue());
+                }
+            } else {
+                h = 1;
+                for (Object element : JSONNodes.elements((JSONArray) node)) {
+                    h = 31 * h + hash(element);
+                }
+            }
+            hash = h;
+            hashes.put(node, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Apply patch operations to a document. The document should be a snapshot that is discarded on failure, as
+     * operations before a failing one will already have been applied
+     */
+    static void apply(JSON document, JSONArray operations) {
+        for (Object o : JSONNodes.elements(operations)) {
+            if (!(o instanceof JSONObject)) {
+                throw new CutletRuntimeException("Patch operation [" + o + "] is not an object");
+            }
+            JSONObject operation = (JSONObject) o;
+            String op = getMember(operation, "op").toString();
+            List<String> path = parsePointer(getMember(operation, "path").toString());
+            switch (op) {
+                case "add":
+                    add(document, path, JSONNodes.deepCopy(getMember(operation, "value")));
+                    break;
+                case "remove":
+                    remove(document, path);
+                    break;
+                case "replace":
+                    replace(document, path, JSONNodes.deepCopy(getMember(operation, "value")));
+                    break;
+                case "move": {
+                    List<String> from = parsePointer(getMember(operation, "from").toString());
+                    if (path.size() > from.size() && path.subList(0, from.size()).equals(from)) {
+                        throw new CutletRuntimeException("Cannot move [" + toPointer(from) + "] into itself");
+                    }
+                    add(document, path, remove(document, from));
+                    break;
+                }
+                case "copy": {
+                    List<String> from = parsePointer(getMember(operation, "from").toString());
+                    add(document, path, JSONNodes.deepCopy(get(document, from)));
+                    break;
+                }
+                case "test":
+                    if (!new JSONPatch().isEqual(get(document, path), getMember(operation, "value"))) {
+                        throw new CutletRuntimeException("Test failed, value at [" + toPointer(path) + "] is not [" + getMember(operation, "value") + "]");
+                    }
+                    break;
+                default:
+                    throw new CutletRuntimeException("Unknown patch operation [" + op + "]");
+            }
+        }
+    }
+
+    private static Object get(JSON document, List<String> path) {
+        Object node = CutletJXPathContext.getContextBean(document);
+        for (String token : path) {
+            node = JSONNodes.getChild(node, token);
+            if (node == null) {
+                throw new CutletRuntimeException("No value at [" + toPointer(path) + "]");
+            }
+        }
+        return node;
+    }
+
+    private static void add(JSON document, List<String> path, Object value) {
+        if (path.isEmpty()) {
+            document.bindRoot(value);
+            return;
+        }
+        Object parent = getParent(document, path);
+        String token = path.get(path.size() - 1);
+        if (parent instanceof JSONObject && !isNull(parent)) {
+            JSONNodes.properties((JSONObject) parent).put(token, value);
+        } else if (parent instanceof JSONArray) {
+            List<Object> elements = JSONNodes.elements((JSONArray) parent);
+            int index = "-".equals(token) ? elements.size() : JSONNodes.getIndex(token);
+            if (index < 0 || index > elements.size()) {
+                throw new CutletRuntimeException("Invalid array index at [" + toPointer(path) + "]");
+            }
+            elements.add(index, value);
+        } else {
+            throw new CutletRuntimeException("Cannot add [" + toPointer(path) + "], parent is not an object or array");
+        }
+    }
+
+    private static void replace(JSON document, List<String> path, Object value) {
+        if (path.isEmpty()) {
+            document.bindRoot(value);
+            return;
+        }
+        Object parent = getParent(document, path);
+        String token = path.get(path.size() - 1);
+        if (JSONNodes.getChild(parent, token) == null) {
+            throw new CutletRuntimeException("No value at [" + toPointer(path) + "]");
+        }
+        JSONNodes.setChild(parent, token, value);
+    }
+
+    private static Object remove(JSON document, List<String> path) {
+        if (path.isEmpty()) {
+            Object value = CutletJXPathContext.getContextBean(document);
+            document.bindRoot(new JSONObject());
+            return value;
+        }
+        Object parent = getParent(document, path);
+        String token = path.get(path.size() - 1);
+        Object value = JSONNodes.getChild(parent, token);
+        if (value == null) {
+            throw new CutletRuntimeException("No value at [" + toPointer(path) + "]");
+        }
+        if (parent instanceof JSONObject) {
+            JSONNodes.properties((JSONObject) parent).remove(token);
+        } else {
+            JSONNodes.elements((JSONArray) parent).remove(JSONNodes.getIndex(token));
+        }
+        document.evict(value);
+        return value;
+    }
+
+    private static Object getParent(JSON document, List<String> path) {
+        Object parent = document.copyPath(path.subList(0, path.size() - 1), true);
+        if (parent == null) {
+            throw new CutletRuntimeException("No parent for [" + toPointer(path) + "]");
+        }
+        return parent;
+    }
+
+    private static Object getMember(JSONObject operation, String name) {
+        Object value = JSONNodes.properties(operation).get(name);
+        if (value == null) {
+            throw new CutletRuntimeException("Patch operation [" + operation + "] has no [" + name + "]");
+        }
+        return value;
+    }
+
+    /**
+     * Apply a merge patch to a document
+     */
+    static void merge(JSON document, Object patch) {
+        if (patch instanceof JSONObject && !isNull(patch)) {
+            Object target = document.copyPath(Collections.emptyList(), true);
+            if (!(target instanceof JSONObject) || isNull(target)) {
+                document.evict(target);
+                target = new JSONObject();
+                document.bindRoot(target);
+                document.markOwned(target);
+            }
+            merge(document, (JSONObject) target, (JSONObject) patch);
+        } else {
+            document.evict(CutletJXPathContext.getContextBean(document));
+            document.bindRoot(JSONNodes.deepCopy(patch));
+        }
+    }
+
+    private static void merge(JSON document, JSONObject target, JSONObject patch) {
+        Map<Object, Object> properties = JSONNodes.properties(target);
+        for (Map.Entry<Object, Object> entry : JSONNodes.properties(patch).entrySet()) {
+            Object value = entry.getValue();
+            if (isNull(value)) {
+                document.evict(properties.remove(entry.getKey()));
+            } else if (value instanceof JSONObject) {
+                Object child = properties.get(entry.getKey());
+                JSONObject merged;
+                if (child instanceof JSONObject && !isNull(child)) {
+                    document.evictFingerprints(child);
+                    merged = (JSONObject) document.own(child);
+                } else {
+                    merged = new JSONObject();
+                    document.markOwned(merged);
+                }
+                properties.put(entry.getKey(), merged);
+                merge(document, merged, (JSONObject) value);
+            } else {
+                document.evict(properties.put(entry.getKey(), JSONNodes.deepCopy(value)));
+            }
+        }
+    }
+
+    private static boolean isNull(Object node) {
+        return node == JSONNull.getInstance() || (node instanceof JSONObject && ((JSONObject) node).isNullObject());
+    }
+
+    // JSON Pointer (RFC 6901)
+
+    static List<String> parsePointer(String pointer) {
+        if (pointer.isEmpty()) {
+            return Collections.emptyList();
+        } else if (!pointer.startsWith("/")) {
+            throw new CutletRuntimeException("Invalid JSON pointer [" + pointer + "]");
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : pointer.substring(1).split("/", -1)) {
+            tokens.add(token.replace("~1", "/").replace("~0", "~"));
+        }
+        return tokens;
+    }
+
+    private static String toPointer(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens) {
+            sb.append('/').append(escape(token));
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+}
@@ -0,0 +1,226 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * MessagePack. There is no standard representation of big numbers, so BigDecimals and integers that do not fit in 64
+ * bits are written as strings, which the number converters read back without loss
+ */
+final class MessagePackCodec extends BinaryCodec {
+    private static final BigInteger UNSIGNED_LONG_MAX = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    // Encoding
+
+    @Override
+    protected void writeObjectStart(DataOutputStream out, int size) throws IOException {
+        writeSize(out, size, 0x80, 0xde, 0xdf);
+    }
+
+    @Override
+    protected void writeArrayStart(DataOutputStream out, int size) throws IOException {
+        writeSize(out, size, 0x90, 0xdc, 0xdd);
+    }
+
+    private static void writeSize(DataOutputStream out, int size, int fix, int size16, int size32) throws IOException {
+        if (size < 16) {
+            out.write(fix | size);
+        } else if (size < 0x10000) {
+            out.write(size16);
+            out.writeShort(size);
+        } else {
+            out.write(size32);
+            out.writeInt(size);
+        }
+    }
+
+    @Override
+    protected void writeNull(DataOutputStream out) throws IOException {
+        out.write(0xc0);
+    }
+
+    @Override
+    protected void writeBoolean(DataOutputStream out, boolean value) throws IOException {
+        out.write(value ? 0xc3 : 0xc2);
+    }
+
+    @Override
+    protected void writeLong(DataOutputStream out, long value) throws IOException {
+        if (value >= 0) {
+            if (value < 0x80) {
+                out.write((int) value);
+            } else if (value < 0x100) {
+                out.write(0xcc);
+                out.write((int) value);
+            } else if (value < 0x10000) {
+                out.write(0xcd);
+                out.writeShort((int) value);
+            } else if (value < 0x100000000L) {
+                out.write(0xce);
+                out.writeInt((int) value);
+            } else {
+                out.write(0xcf);
+                out.writeLong(value);
+            }
+        } else {
+            if (value >= -32) {
+                out.write((int) value & 0xff);
+            } else if (value >= Byte.MIN_VALUE) {
+                out.write(0xd0);
+                out.write((int) value);
+            } else if (value >= Short.MIN_VALUE) {
+                out.write(0xd1);
+                out.writeShort((int) value);
+            } else if (value >= Integer.MIN_VALUE) {
+                out.write(0xd2);
+                out.writeInt((int) value);
+            } else {
+                out.write(0xd3);
+                out.writeLong(value);
+            }
+        }
+    }
+
+    @Override
+    protected void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+        if (value.signum() > 0 && value.compareTo(UNSIGNED_LONG_MAX) <= 0) {
+            out.write(0xcf);
+            out.writeLong(value.longValue());
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    @Override
+    protected void writeBigDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        writeString(out, value.toString());
+    }
+
+    @Override
+    protected void writeDouble(DataOutputStream out, double value) throws IOException {
+        if ((float) value == value) {
+            out.write(0xca);
+            out.writeFloat((float) value);
+        } else {
+            out.write(0xcb);
+            out.writeDouble(value);
+        }
+    }
+
+    @Override
+    protected void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = toUTF8(value);
+        if (bytes.length < 32) {
+            out.write(0xa0 | bytes.length);
+        } else if (bytes.length < 0x100) {
+            out.write(0xd9);
+            out.write(bytes.length);
+        } else if (bytes.length < 0x10000) {
+            out.write(0xda);
+            out.writeShort(bytes.length);
+        } else {
+            out.write(0xdb);
+            out.writeInt(bytes.length);
+        }
+        out.write(bytes);
+    }
+
+    // Decoding
+
+    @Override
+    protected Object readDocument(DataInputStream in) throws IOException {
+        return readValue(in);
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        int b = in.readUnsignedByte();
+        if (b < 0x80) {
+            return b;
+        } else if (b < 0x90) {
+            return readMap(in, b & 0x0f);
+        } else if (b < 0xa0) {
+            return readArray(in, b & 0x0f);
+        } else if (b < 0xc0) {
+            return readUTF8(in, b & 0x1f);
+        } else if (b >= 0xe0) {
+            return (int) (byte) b;
+        }
+        switch (b) {
+            case 0xc0:
+                return JSONNull.getInstance();
+            case 0xc2:
+                return Boolean.FALSE;
+            case 0xc3:
+                return Boolean.TRUE;
+            case 0xca:
+                return Double.valueOf(Float.toString(in.readFloat()));
+            case 0xcb:
+                return in.readDouble();
+            case 0xcc:
+                return in.readUnsignedByte();
+            case 0xcd:
+                return in.readUnsignedShort();
+            case 0xce:
+                return toNumber(in.readInt() & 0xffffffffL);
+            case 0xcf:
+                return toUnsignedNumber(in.readLong());
+            case 0xd0:
+                return (int) in.readByte();
+            case 0xd1:
+                return (int) in.readShort();
+            case 0xd2:
+                return in.readInt();
+            case 0xd3:
+                return toNumber(in.readLong());
+            case 0xd9:
+                return readUTF8(in, in.readUnsignedByte());
+            case 0xda:
+                return readUTF8(in, in.readUnsignedShort());
+            case 0xdb:
+                return readUTF8(in, in.readInt() & 0xffffffffL);
+            case 0xdc:
+                return readArray(in, in.readUnsignedShort());
+            case 0xdd:
+                return readArray(in, in.readInt() & 0xffffffffL);
+            case 0xde:
+                return readMap(in, in.readUnsignedShort());
+            case 0xdf:
+                return readMap(in, in.readInt() & 0xffffffffL);
+            case 0xc4:
+            case 0xc5:
+            case 0xc6:
+                throw error(in, "Binary values cannot be represented in JSON");
+            default:
+                throw error(in, "Unsupported type [0x" + Integer.toHexString(b) + "]");
+        }
+    }
+
+    private JSONArray readArray(DataInputStream in, long size) throws IOException {
+        JSONArray jsonArray = new JSONArray();
+        enter(in);
+        for (long i = 0; i < size; i++) {
+            add(jsonArray, readValue(in));
+        }
+        exit(in);
+        return jsonArray;
+    }
+
+    private JSONObject readMap(DataInputStream in, long size) throws IOException {
+        JSONObject jsonObject = new JSONObject();
+        enter(in);
+        for (long i = 0; i < size; i++) {
+            put(jsonObject, String.valueOf(readValue(in)), readValue(in));
+        }
+        exit(in);
+        return jsonObject;
+    }
+}
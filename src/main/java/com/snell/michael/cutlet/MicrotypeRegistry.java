@@ -1,11 +1,16 @@
 package com.snell.michael.cutlet;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MicrotypeRegistry {
     private final Map<Class<?>, Class<?>> microtypeToValueCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, MethodHandle> constructorCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, MethodHandle> getterCache = new ConcurrentHashMap<>();
 
     public Class<?> getMicrotypeValueClass(Class<?> microtypeClass) {
         if (microtypeToValueCache.containsKey(microtypeClass)) {
@@ -29,4 +34,39 @@ public class MicrotypeRegistry {
     public boolean isMicrotype(Class<?> clazz) {
         return getMicrotypeValueClass(clazz) != null;
     }
+
+    /**
+     * @return Handle for the constructor of a microtype taking its value class, used for microtypes wrapping a
+     * primitive so the value is passed without boxing
+     */
+    MethodHandle getConstructor(Class<?> microtypeClass) {
+        MethodHandle constructor = constructorCache.get(microtypeClass);
+        if (constructor == null) {
+            Class<?> valueClass = getMicrotypeValueClass(microtypeClass);
+            try {
+                constructor = MethodHandles.publicLookup().findConstructor(microtypeClass, MethodType.methodType(void.class, valueClass));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new RuntimeException("Microtype has no accessible constructor taking wrapped value", e);
+            }
+            constructorCache.put(microtypeClass, constructor);
+        }
+        return constructor;
+    }
+
+    /**
+     * @return Handle for the getValue method of a microtype
+     */
+    MethodHandle getGetter(Class<?> microtypeClass) {
+        MethodHandle getter = getterCache.get(microtypeClass);
+        if (getter == null) {
+            Class<?> valueClass = getMicrotypeValueClass(microtypeClass);
+            try {
+                getter = MethodHandles.publicLookup().findVirtual(microtypeClass, "getValue", MethodType.methodType(valueClass));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new RuntimeException("No getValue method on microtype", e);
+            }
+            getterCache.put(microtypeClass, getter);
+        }
+        return getter;
+    }
 }
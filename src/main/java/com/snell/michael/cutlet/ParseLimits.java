@@ -0,0 +1,220 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ls.LSParserFilter;
+import org.w3c.dom.traversal.NodeFilter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Enforcement of the limits set on ParseOptions, failing as soon as a limit is passed rather than after the whole
+ * document has been built
+ */
+final class ParseLimits {
+    private ParseLimits() {}
+
+    static CutletRuntimeException exceeded(String limit, long value, long max) {
+        return new CutletRuntimeException("Parse limit exceeded: " + limit + " [" + value + "] greater than maximum [" + max + "]");
+    }
+
+    /**
+     * Check the length of input that is already in memory
+     */
+    static void checkLength(long length, ParseOptions options) {
+        if (length > options.getMaxBytes()) {
+            throw exceeded("input size", length, options.getMaxBytes());
+        }
+    }
+
+    /**
+     * @return Stream that fails once more than the maximum number of bytes has been read from it
+     */
+    static InputStream limit(InputStream inputStream, ParseOptions options) {
+        return options.getMaxBytes() == Long.MAX_VALUE ? inputStream : new LimitedInputStream(inputStream, options.getMaxBytes());
+    }
+
+    /**
+     * Scan JSON text for nesting depth, node count and string length, without recursion, so that json-lib (which
+     * recurses once per level of nesting) is never given a document that exceeds them
+     */
+    static void checkJSON(String text, ParseOptions options) {
+        int maxDepth = options.getMaxDepth();
+        int maxNodes = options.getMaxNodes();
+        int maxStringLength = options.getMaxStringLength();
+        int depth = 0;
+        int nodes = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '{' || c == '[') {
+                if (++depth > maxDepth) {
+                    throw exceeded("nesting depth", depth, maxDepth);
+                }
+                nodes++;
+                i++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                i++;
+            } else if (c == ',' || c == ':' || Character.isWhitespace(c)) {
+                i++;
+            } else {
+                // String (double or single quoted, as json-lib accepts both) or bare token
+                int start = i;
+                if (c == '"' || c == '\'') {
+                    i++;
+                    while (i < length && text.charAt(i) != c) {
+                        i += text.charAt(i) == '\\' ? 2 : 1;
+                    }
+                    i++;
+                } else {
+                    while (i < length && !isJSONDelimiter(text.charAt(i))) {
+                        i++;
+                    }
+                }
+                if (i - start > maxStringLength) {
+                    throw exceeded("string length", i - start, maxStringLength);
+                }
+                if (!isJSONKey(text, i)) {
+                    nodes++;
+                }
+            }
+            if (nodes > maxNodes) {
+                throw exceeded("node count", nodes, maxNodes);
+            }
+        }
+    }
+
+    private static boolean isJSONDelimiter(char c) {
+        return c == '{' || c == '}' || c == '[' || c == ']' || c == ',' || c == ':' || Character.isWhitespace(c);
+    }
+
+    private static boolean isJSONKey(String text, int end) {
+        int i = end;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i < text.length() && text.charAt(i) == ':';
+    }
+
+    /**
+     * Filter that fails the parse as soon as an element, attribute or text node exceeds a limit. The document element
+     * is not passed to filters, so is checked by finish once the parse is complete
+     */
+    static final class XMLFilter implements LSParserFilter {
+        private final ParseOptions options;
+        // Depth of the document element, which the filter is not called for
+        private int depth = 1;
+        private int nodes = 1;
+
+        XMLFilter(ParseOptions options) {
+            this.options = options;
+        }
+
+        @Override
+        public short startElement(Element element) {
+            if (++depth > options.getMaxDepth()) {
+                throw exceeded("nesting depth", depth, options.getMaxDepth());
+            }
+            checkAttributes(element, options);
+            count(1 + element.getAttributes().getLength());
+            return FILTER_ACCEPT;
+        }
+
+        @Override
+        public short acceptNode(Node node) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                depth--;
+            } else {
+                String value = node.getNodeValue();
+                if (value != null && value.length() > options.getMaxStringLength()) {
+                    throw exceeded("string length", value.length(), options.getMaxStringLength());
+                }
+                count(1);
+            }
+            return FILTER_ACCEPT;
+        }
+
+        @Override
+        public int getWhatToShow() {
+            return NodeFilter.SHOW_ELEMENT | NodeFilter.SHOW_TEXT | NodeFilter.SHOW_CDATA_SECTION | NodeFilter.SHOW_COMMENT | NodeFilter.SHOW_PROCESSING_INSTRUCTION;
+        }
+
+        void finish(Element documentElement) {
+            checkAttributes(documentElement, options);
+            count(documentElement.getAttributes().getLength());
+        }
+
+        private void count(int n) {
+            nodes += n;
+            if (nodes > options.getMaxNodes()) {
+                throw exceeded("node count", nodes, options.getMaxNodes());
+            }
+        }
+    }
+
+    private static void checkAttributes(Element element, ParseOptions options) {
+        int attributes = element.getAttributes().getLength();
+        if (attributes > options.getMaxAttributes()) {
+            throw exceeded("attribute count", attributes, options.getMaxAttributes());
+        }
+        for (int i = 0; i < attributes; i++) {
+            String value = element.getAttributes().item(i).getNodeValue();
+            if (value.length() > options.getMaxStringLength()) {
+                throw exceeded("string length", value.length(), options.getMaxStringLength());
+            }
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long bytes;
+
+        private LimitedInputStream(InputStream inputStream, long maxBytes) {
+            super(inputStream);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int n = super.read(bytes, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) {
+            bytes += n;
+            if (bytes > maxBytes) {
+                throw exceeded("input size", bytes, maxBytes);
+            }
+        }
+    }
+}
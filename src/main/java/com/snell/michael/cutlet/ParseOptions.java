@@ -0,0 +1,144 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+/**
+ * Options for JSON.parse and XML.parse
+ */
+public class ParseOptions {
+    private static final int DEFAULT_SYMBOL_TABLE_SIZE = 4096;
+
+    private boolean internKeys;
+    private int internValueMaxLength;
+    private SymbolTable symbolTable;
+    private CutletMetrics metrics;
+    private long maxBytes = Long.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxNodes = Integer.MAX_VALUE;
+    private int maxStringLength = Integer.MAX_VALUE;
+    private int maxAttributes = Integer.MAX_VALUE;
+
+    /**
+     * Share one instance of each distinct JSON key. XML element and attribute names are always shared, by the parser
+     */
+    public ParseOptions withInternedKeys() {
+        this.internKeys = true;
+        return this;
+    }
+
+    /**
+     * Share one instance of each distinct string value (JSON strings, XML text and attribute values) no longer than
+     * maxLength
+     */
+    public ParseOptions withInternedValues(int maxLength) {
+        this.internValueMaxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * Intern into a table shared with other parses, rather than a new table for each parse
+     */
+    public ParseOptions withSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        return this;
+    }
+
+    /**
+     * Report the parse to a listener, rather than the global one
+     */
+    public ParseOptions withMetrics(CutletMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Fail, without reading further, input longer than maxBytes bytes (or characters, when parsing a String)
+     */
+    public ParseOptions withMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Fail on objects, arrays or elements nested more than maxDepth deep. The root is at depth 1
+     */
+    public ParseOptions withMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Fail on documents of more than maxNodes nodes: JSON objects, arrays and values, or XML elements, attributes,
+     * text and other nodes
+     */
+    public ParseOptions withMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     * Fail on JSON keys, strings or numbers, or XML text or attribute values, longer than maxStringLength characters
+     */
+    public ParseOptions withMaxStringLength(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+        return this;
+    }
+
+    /**
+     * Fail on XML elements with more than maxAttributes attributes
+     */
+    public ParseOptions withMaxAttributes(int maxAttributes) {
+        this.maxAttributes = maxAttributes;
+        return this;
+    }
+
+    boolean isInterning() {
+        return internKeys || internValueMaxLength > 0;
+    }
+
+    boolean isInternKeys() {
+        return internKeys;
+    }
+
+    int getInternValueMaxLength() {
+        return internValueMaxLength;
+    }
+
+    /**
+     * @return The shared symbol table, or a new one for a single parse
+     */
+    SymbolTable getSymbolTable() {
+        return symbolTable == null ? new SymbolTable(DEFAULT_SYMBOL_TABLE_SIZE) : symbolTable;
+    }
+
+    CutletMetrics getMetrics() {
+        return metrics == null ? CutletMetrics.getGlobal() : metrics;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    int getMaxNodes() {
+        return maxNodes;
+    }
+
+    int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    int getMaxAttributes() {
+        return maxAttributes;
+    }
+
+    /**
+     * @return True if any limit other than the input size is set
+     */
+    boolean isLimitingStructure() {
+        return maxDepth != Integer.MAX_VALUE || maxNodes != Integer.MAX_VALUE || maxStringLength != Integer.MAX_VALUE || maxAttributes != Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,48 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import com.snell.michael.cutlet.converters.RawNumber;
+import net.sf.json.JsonConfig;
+import net.sf.json.util.JSONTokener;
+
+/**
+ * Tokener that keeps numbers as the text they were written as, instead of the Integer or Double json-lib would create
+ * (rounding decimals through a float on the way). Anything other than a plain JSON number, such as the hex and octal
+ * literals json-lib accepts, is left to json-lib
+ */
+final class RawNumberTokener extends JSONTokener {
+    private static final String DELIMITERS = ",:]}/\\\"[{;=#";
+
+    RawNumberTokener(String s) {
+        super(s);
+    }
+
+    @Override
+    public Object nextValue(JsonConfig jsonConfig) {
+        char c = nextClean();
+        if (c != 0) {
+            back();
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            StringBuilder text = new StringBuilder();
+            while (isNumberChar(c = next())) {
+                text.append(c);
+            }
+            if (c != 0) {
+                back();
+            }
+            if ((c <= ' ' || DELIMITERS.indexOf(c) >= 0) && RawNumber.isValid(text)) {
+                return RawNumber.valueOf(text.toString());
+            }
+            for (int i = 0; i < text.length(); i++) {
+                back();
+            }
+        }
+        return super.nextValue(jsonConfig);
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+}
@@ -0,0 +1,397 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Smile (the binary JSON format of the Jackson project). Written without shared name or value references, so every
+ * document is self contained; documents that use them (Jackson's default for names) can still be read
+ */
+final class SmileCodec extends BinaryCodec {
+    private static final int FLAG_SHARED_NAMES = 0x01;
+    private static final int FLAG_SHARED_VALUES = 0x02;
+    private static final int MAX_SHARED = 1024;
+
+    private static final int EMPTY_STRING = 0x20;
+    private static final int NULL = 0x21;
+    private static final int FALSE = 0x22;
+    private static final int TRUE = 0x23;
+    private static final int INT_32 = 0x24;
+    private static final int INT_64 = 0x25;
+    private static final int BIG_INTEGER = 0x26;
+    private static final int FLOAT_32 = 0x28;
+    private static final int FLOAT_64 = 0x29;
+    private static final int BIG_DECIMAL = 0x2a;
+    private static final int LONG_NAME = 0x34;
+    private static final int LONG_ASCII = 0xe0;
+    private static final int LONG_UNICODE = 0xe4;
+    private static final int START_ARRAY = 0xf8;
+    private static final int END_ARRAY = 0xf9;
+    private static final int START_OBJECT = 0xfa;
+    private static final int END_OBJECT = 0xfb;
+    private static final int END_STRING = 0xfc;
+
+    // Encoding
+
+    @Override
+    protected void writeHeader(DataOutputStream out) throws IOException {
+        out.write(':');
+        out.write(')');
+        out.write('\n');
+        out.write(0);
+    }
+
+    @Override
+    protected void writeObjectStart(DataOutputStream out, int size) throws IOException {
+        out.write(START_OBJECT);
+    }
+
+    @Override
+    protected void writeObjectEnd(DataOutputStream out) throws IOException {
+        out.write(END_OBJECT);
+    }
+
+    @Override
+    protected void writeKey(DataOutputStream out, String key) throws IOException {
+        byte[] bytes = toUTF8(key);
+        if (bytes.length == 0) {
+            out.write(EMPTY_STRING);
+        } else if (bytes.length == key.length() && bytes.length <= 64) {
+            out.write(0x80 + bytes.length - 1);
+            out.write(bytes);
+        } else if (bytes.length != key.length() && bytes.length <= 57) {
+            out.write(0xc0 + bytes.length - 2);
+            out.write(bytes);
+        } else {
+            out.write(LONG_NAME);
+            out.write(bytes);
+            out.write(END_STRING);
+        }
+    }
+
+    @Override
+    protected void writeArrayStart(DataOutputStream out, int size) throws IOException {
+        out.write(START_ARRAY);
+    }
+
+    @Override
+    protected void writeArrayEnd(DataOutputStream out) throws IOException {
+        out.write(END_ARRAY);
+    }
+
+    @Override
+    protected void writeNull(DataOutputStream out) throws IOException {
+        out.write(NULL);
+    }
+
+    @Override
+    protected void writeBoolean(DataOutputStream out, boolean value) throws IOException {
+        out.write(value ? TRUE : FALSE);
+    }
+
+    @Override
+    protected void writeLong(DataOutputStream out, long value) throws IOException {
+        if (value >= -16 && value <= 15) {
+            out.write(0xc0 + (int) zigzag(value));
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            out.write(INT_32);
+            writeVInt(out, zigzag(value));
+        } else {
+            out.write(INT_64);
+            writeVInt(out, zigzag(value));
+        }
+    }
+
+    @Override
+    protected void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+        out.write(BIG_INTEGER);
+        write7BitBinary(out, value.toByteArray());
+    }
+
+    @Override
+    protected void writeBigDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.write(BIG_DECIMAL);
+        writeVInt(out, zigzag(value.scale()));
+        write7BitBinary(out, value.unscaledValue().toByteArray());
+    }
+
+    @Override
+    protected void writeDouble(DataOutputStream out, double value) throws IOException {
+        long bits = Double.doubleToLongBits(value);
+        out.write(FLOAT_64);
+        out.write((int) (bits >>> 63));
+        for (int shift = 56; shift >= 0; shift -= 7) {
+            out.write((int) (bits >>> shift) & 0x7f);
+        }
+    }
+
+    @Override
+    protected void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = toUTF8(value);
+        boolean ascii = bytes.length == value.length();
+        if (bytes.length == 0) {
+            out.write(EMPTY_STRING);
+            return;
+        } else if (ascii && bytes.length <= 32) {
+            out.write(0x40 + bytes.length - 1);
+        } else if (ascii && bytes.length <= 64) {
+            out.write(0x60 + bytes.length - 33);
+        } else if (!ascii && bytes.length <= 33) {
+            out.write(0x80 + bytes.length - 2);
+        } else if (!ascii && bytes.length <= 65) {
+            out.write(0xa0 + bytes.length - 34);
+        } else {
+            out.write(ascii ? LONG_ASCII : LONG_UNICODE);
+            out.write(bytes);
+            out.write(END_STRING);
+            return;
+        }
+        out.write(bytes);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Big-endian groups of 7 bits, except the last which holds 6 bits and has its high bit set
+     */
+    private static void writeVInt(DataOutputStream out, long value) throws IOException {
+        int groups = 0;
+        for (long remaining = value >>> 6; remaining != 0; remaining >>>= 7) {
+            groups++;
+        }
+        for (int i = groups; i > 0; i--) {
+            out.write((int) (value >>> (6 + 7 * (i - 1))) & 0x7f);
+        }
+        out.write(0x80 | (int) (value & 0x3f));
+    }
+
+    /**
+     * Length, then the bytes as a stream of 7 bit groups - the last group holds only the bits left over
+     */
+    private static void write7BitBinary(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVInt(out, bytes.length);
+        int i = 0;
+        for (; i + 7 <= bytes.length; i += 7) {
+            long chunk = 0;
+            for (int j = 0; j < 7; j++) {
+                chunk = (chunk << 8) | (bytes[i + j] & 0xff);
+            }
+            for (int shift = 49; shift >= 0; shift -= 7) {
+                out.write((int) (chunk >>> shift) & 0x7f);
+            }
+        }
+        int remaining = bytes.length - i;
+        if (remaining > 0) {
+            long chunk = 0;
+            for (int j = 0; j < remaining; j++) {
+                chunk = (chunk << 8) | (bytes[i + j] & 0xff);
+            }
+            for (int k = 1; k <= remaining; k++) {
+                out.write((int) (chunk >>> (8 * remaining - 7 * k)) & 0x7f);
+            }
+            out.write((int) chunk & ((1 << remaining) - 1));
+        }
+    }
+
+    // Decoding
+
+    @Override
+    protected Object readDocument(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() != ':' || in.readUnsignedByte() != ')' || in.readUnsignedByte() != '\n') {
+            throw error(in, "Missing Smile header");
+        }
+        int flags = in.readUnsignedByte();
+        if ((flags & 0xf0) != 0) {
+            throw error(in, "Unsupported Smile version [" + (flags >>> 4) + "]");
+        }
+        return new Reader(in, flags).readValue(in.readUnsignedByte());
+    }
+
+    /**
+     * Holds the back reference tables of one document
+     */
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> names;
+        private final List<String> values;
+
+        private Reader(DataInputStream in, int flags) {
+            this.in = in;
+            this.names = (flags & FLAG_SHARED_NAMES) != 0 ? new ArrayList<String>() : null;
+            this.values = (flags & FLAG_SHARED_VALUES) != 0 ? new ArrayList<String>() : null;
+        }
+
+        private Object readValue(int token) throws IOException {
+            if (token >= 0x01 && token <= 0x1f) {
+                return getShared(values, token - 1);
+            } else if (token >= 0x40 && token <= 0x5f) {
+                return share(values, readUTF8(in, (token & 0x1f) + 1));
+            } else if (token >= 0x60 && token <= 0x7f) {
+                return share(values, readUTF8(in, (token & 0x1f) + 33));
+            } else if (token >= 0x80 && token <= 0x9f) {
+                return share(values, readUTF8(in, (token & 0x1f) + 2));
+            } else if (token >= 0xa0 && token <= 0xbf) {
+                return share(values, readUTF8(in, (token & 0x1f) + 34));
+            } else if (token >= 0xc0 && token <= 0xdf) {
+                return toNumber(unzigzag(token & 0x1f));
+            } else if (token >= 0xec && token <= 0xef) {
+                return getShared(values, ((token & 0x03) << 8) | in.readUnsignedByte());
+            }
+            switch (token) {
+                case EMPTY_STRING:
+                    return "";
+                case NULL:
+                    return JSONNull.getInstance();
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INT_32:
+                case INT_64:
+                    return toNumber(unzigzag(readVInt()));
+                case BIG_INTEGER:
+                    return toNumber(new BigInteger(read7BitBinary()));
+                case FLOAT_32:
+                    long floatBits = 0;
+                    for (int i = 0; i < 5; i++) {
+                        floatBits = (floatBits << 7) | in.readUnsignedByte();
+                    }
+                    return Double.valueOf(Float.toString(Float.intBitsToFloat((int) floatBits)));
+                case FLOAT_64:
+                    long doubleBits = 0;
+                    for (int i = 0; i < 10; i++) {
+                        doubleBits = (doubleBits << 7) | in.readUnsignedByte();
+                    }
+                    return Double.longBitsToDouble(doubleBits);
+                case BIG_DECIMAL:
+                    int scale = (int) unzigzag(readVInt());
+                    return new BigDecimal(new BigInteger(read7BitBinary()), scale);
+                case LONG_ASCII:
+                case LONG_UNICODE:
+                    return readTerminated();
+                case START_ARRAY:
+                    JSONArray jsonArray = new JSONArray();
+                    enter(in);
+                    int element;
+                    while ((element = in.readUnsignedByte()) != END_ARRAY) {
+                        add(jsonArray, readValue(element));
+                    }
+                    exit(in);
+                    return jsonArray;
+                case START_OBJECT:
+                    JSONObject jsonObject = new JSONObject();
+                    enter(in);
+                    int key;
+                    while ((key = in.readUnsignedByte()) != END_OBJECT) {
+                        put(jsonObject, readName(key), readValue(in.readUnsignedByte()));
+                    }
+                    exit(in);
+                    return jsonObject;
+                default:
+                    throw error(in, "Unsupported Smile token [0x" + Integer.toHexString(token) + "]");
+            }
+        }
+
+        private String readName(int token) throws IOException {
+            if (token == EMPTY_STRING) {
+                return "";
+            } else if (token >= 0x30 && token <= 0x33) {
+                return getShared(names, ((token & 0x03) << 8) | in.readUnsignedByte());
+            } else if (token == LONG_NAME) {
+                return share(names, readTerminated());
+            } else if (token >= 0x40 && token <= 0x7f) {
+                return getShared(names, token & 0x3f);
+            } else if (token >= 0x80 && token <= 0xbf) {
+                return share(names, readUTF8(in, (token & 0x3f) + 1));
+            } else if (token >= 0xc0 && token <= 0xf7) {
+                return share(names, readUTF8(in, token - 0xc0 + 2));
+            } else {
+                throw error(in, "Unsupported Smile name token [0x" + Integer.toHexString(token) + "]");
+            }
+        }
+
+        private static String share(List<String> shared, String value) {
+            if (shared != null) {
+                if (shared.size() == MAX_SHARED) {
+                    shared.clear();
+                }
+                shared.add(value);
+            }
+            return value;
+        }
+
+        private String getShared(List<String> shared, int index) {
+            if (shared == null || index >= shared.size()) {
+                throw error(in, "Invalid back reference [" + index + "]");
+            }
+            return shared.get(index);
+        }
+
+        private String readTerminated() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.readUnsignedByte()) != END_STRING) {
+                bytes.write(b);
+            }
+            return bytes.toString("UTF-8");
+        }
+
+        private long readVInt() throws IOException {
+            long value = 0;
+            int b;
+            while (((b = in.readUnsignedByte()) & 0x80) == 0) {
+                value = (value << 7) | b;
+            }
+            return (value << 6) | (b & 0x3f);
+        }
+
+        private byte[] read7BitBinary() throws IOException {
+            long length = readVInt();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw error(in, "Invalid length [" + length + "]");
+            }
+            // The length is only declared, so memory is taken as the bytes arrive and truncated input fails early
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(length, 1024));
+            long i = 0;
+            for (; i + 7 <= length; i += 7) {
+                long chunk = 0;
+                for (int j = 0; j < 8; j++) {
+                    chunk = (chunk << 7) | in.readUnsignedByte();
+                }
+                for (int j = 6; j >= 0; j--) {
+                    bytes.write((int) (chunk >>> (8 * j)));
+                }
+            }
+            int remaining = (int) (length - i);
+            if (remaining > 0) {
+                long chunk = 0;
+                for (int j = 0; j < remaining; j++) {
+                    chunk = (chunk << 7) | in.readUnsignedByte();
+                }
+                chunk = (chunk << remaining) | in.readUnsignedByte();
+                for (int j = remaining - 1; j >= 0; j--) {
+                    bytes.write((int) (chunk >>> (8 * j)));
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Files holding an already parsed document, so it can be reloaded without tokenizing text. A snapshot is a header
+ * (magic, version and document type) then the tree: CBOR for JSON, and for XML a pre-order walk of the DOM in which
+ * each distinct name and namespace is written once and then referred to by index. Files are memory-mapped when loaded.
+ * The trees are also written without a header by CutletStore
+ */
+final class Snapshots {
+    private static final byte[] MAGIC = {'C', 'U', 'T', 'L', 'E', 'T'};
+    private static final int VERSION = 1;
+    private static final byte JSON_TYPE = 'J';
+    private static final byte XML_TYPE = 'X';
+
+    private static final int END = 0;
+    private static final int ELEMENT = 1;
+    private static final int TEXT = 2;
+    private static final int CDATA = 3;
+    private static final int COMMENT = 4;
+    private static final int PROCESSING_INSTRUCTION = 5;
+
+    private Snapshots() {}
+
+    static void saveJSON(File file, Object bean) {
+        try (OutputStream out = openHeader(file, JSON_TYPE)) {
+            BinaryFormat.CBOR.getCodec().write(bean, out);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception writing snapshot to file [" + file + "]", e);
+        }
+    }
+
+    static Object loadJSON(File file) {
+        ByteBuffer buffer = map(file, JSON_TYPE);
+        try {
+            return readJSON(buffer);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception reading snapshot from file [" + file + "]", e);
+        }
+    }
+
+    /**
+     * Read a JSON tree written by the CBOR codec, without the snapshot header
+     */
+    static Object readJSON(ByteBuffer buffer) throws IOException {
+        return BinaryFormat.CBOR.getCodec().read(new ByteBufferInputStream(buffer));
+    }
+
+    static void saveXML(File file, Element element) {
+        try (OutputStream out = openHeader(file, XML_TYPE)) {
+            writeXML(element, out);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception writing snapshot to file [" + file + "]", e);
+        }
+    }
+
+    /**
+     * Write the tree of an element, without the snapshot header
+     */
+    static void writeXML(Element element, OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        new XMLWriter(dataOut).write(element);
+        dataOut.flush();
+    }
+
+    static Document loadXML(File file, DOMImplementation implementation) {
+        ByteBuffer buffer = map(file, XML_TYPE);
+        try {
+            return readXML(buffer, implementation);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new CutletRuntimeException("Invalid snapshot file [" + file + "]", e);
+        }
+    }
+
+    /**
+     * Read a tree written by writeXML into a new document
+     */
+    static Document readXML(ByteBuffer buffer, DOMImplementation implementation) {
+        return new XMLReader(buffer, implementation).read();
+    }
+
+    private static OutputStream openHeader(File file, byte type) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(type);
+        return out;
+    }
+
+    private static ByteBuffer map(File file, byte type) {
+        ByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception reading snapshot from file [" + file + "]", e);
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.remaining() >= MAGIC.length + 2) {
+            buffer.get(magic);
+        }
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new CutletRuntimeException("File [" + file + "] is not a Cutlet snapshot");
+        }
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new CutletRuntimeException("Unsupported snapshot version [" + version + "] in file [" + file + "]");
+        }
+        byte actualType = buffer.get();
+        if (actualType != type) {
+            throw new CutletRuntimeException("File [" + file + "] is a snapshot of " + (actualType == JSON_TYPE ? "JSON" : "XML") + ", not " + (type == JSON_TYPE ? "JSON" : "XML"));
+        }
+        return buffer;
+    }
+
+    private static final class XMLWriter {
+        private final DataOutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+
+        private XMLWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void write(Node node) throws IOException {
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    out.write(ELEMENT);
+                    writeName(node.getNamespaceURI());
+                    writeName(node.getNodeName());
+                    NamedNodeMap attributes = node.getAttributes();
+                    writeLength(attributes.getLength());
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        Attr attr = (Attr) attributes.item(i);
+                        writeName(attr.getNamespaceURI());
+                        writeName(attr.getName());
+                        writeString(attr.getValue());
+                    }
+                    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        write(child);
+                    }
+                    out.write(END);
+                    break;
+                case Node.TEXT_NODE:
+                    out.write(TEXT);
+                    writeString(node.getNodeValue());
+                    break;
+                case Node.CDATA_SECTION_NODE:
+                    out.write(CDATA);
+                    writeString(node.getNodeValue());
+                    break;
+                case Node.COMMENT_NODE:
+                    out.write(COMMENT);
+                    writeString(node.getNodeValue());
+                    break;
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    out.write(PROCESSING_INSTRUCTION);
+                    writeString(node.getNodeName());
+                    writeString(node.getNodeValue());
+                    break;
+                default:
+                    // Entity references are expanded by the parser, and other node types cannot appear in an element
+                    break;
+            }
+        }
+
+        /**
+         * 0 for null, 1 followed by the string for a name not seen before, otherwise its index + 2
+         */
+        private void writeName(String name) throws IOException {
+            if (name == null) {
+                writeLength(0);
+            } else {
+                Integer index = names.get(name);
+                if (index == null) {
+                    names.put(name, names.size());
+                    writeLength(1);
+                    writeString(name);
+                } else {
+                    writeLength(index + 2);
+                }
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeLength(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeLength(int length) throws IOException {
+            int value = length;
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    private static final class XMLReader {
+        private final ByteBuffer buffer;
+        private final DOMImplementation implementation;
+        private final List<String> names = new ArrayList<>();
+        private Document document;
+
+        private XMLReader(ByteBuffer buffer, DOMImplementation implementation) {
+            this.buffer = buffer;
+            this.implementation = implementation;
+        }
+
+        private Document read() {
+            if (buffer.get() != ELEMENT) {
+                throw new IllegalArgumentException("Snapshot does not start with an element");
+            }
+            document = implementation.createDocument(null, null, null);
+            document.appendChild(readElement());
+            return document;
+        }
+
+        private Element readElement() {
+            String namespace = readName();
+            String name = readName();
+            Element element = namespace == null ? document.createElement(name) : document.createElementNS(namespace, name);
+            int attributes = readLength();
+            for (int i = 0; i < attributes; i++) {
+                String attributeNamespace = readName();
+                String attributeName = readName();
+                String value = readString();
+                if (attributeNamespace == null) {
+                    element.setAttribute(attributeName, value);
+                } else {
+                    element.setAttributeNS(attributeNamespace, attributeName, value);
+                }
+            }
+            int type;
+            while ((type = buffer.get()) != END) {
+                switch (type) {
+                    case ELEMENT:
+                        element.appendChild(readElement());
+                        break;
+                    case TEXT:
+                        element.appendChild(document.createTextNode(readString()));
+                        break;
+                    case CDATA:
+                        element.appendChild(document.createCDATASection(readString()));
+                        break;
+                    case COMMENT:
+                        element.appendChild(document.createComment(readString()));
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        String target = readString();
+                        element.appendChild(document.createProcessingInstruction(target, readString()));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown node type [" + type + "]");
+                }
+            }
+            return element;
+        }
+
+        private String readName() {
+            int index = readLength();
+            if (index == 0) {
+                return null;
+            } else if (index == 1) {
+                String name = readString();
+                names.add(name);
+                return name;
+            } else {
+                return names.get(index - 2);
+            }
+        }
+
+        private String readString() {
+            int length = readLength();
+            if (buffer.hasArray()) {
+                String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return s;
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        private int readLength() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * Reads a (memory-mapped) buffer without copying it
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
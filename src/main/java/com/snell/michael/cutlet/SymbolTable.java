@@ -0,0 +1,43 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded table of canonical strings, so that equal keys and values in parsed documents share one instance. Once full,
+ * new strings are returned as they are rather than added. Safe to share between threads and parses
+ */
+public final class SymbolTable {
+    private final int maxSize;
+    private final ConcurrentMap<String, String> symbols = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize Maximum number of distinct strings to hold
+     */
+    public SymbolTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The canonical instance equal to value, or value itself if there is none and the table is full
+     */
+    public String intern(String value) {
+        String symbol = symbols.get(value);
+        if (symbol == null) {
+            if (symbols.size() >= maxSize) {
+                return value;
+            }
+            symbol = symbols.putIfAbsent(value, value);
+            if (symbol == null) {
+                symbol = value;
+            }
+        }
+        return symbol;
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+}
@@ -0,0 +1,643 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Conversion between XML and JSON without going through xpaths or intermediate Strings. The mapping is:
+ * <ul>
+ * <li>The root element becomes the top level JSON object, so the same xpaths select the same values in both</li>
+ * <li>An element with only text becomes a string, and an empty element an empty string</li>
+ * <li>Other elements become objects, with attributes as "@name" keys and any text as a "#text" key</li>
+ * <li>Sibling elements with the same name become an array</li>
+ * </ul>
+ * JSON numbers, booleans and nulls become text (nulls as empty elements), so types do not survive a round trip.
+ * Comments and processing instructions are dropped, as is whitespace between elements. JSON keys that are not XML
+ * names cannot be converted. XML read as a stream may not have a DTD, so no external entities are ever resolved
+ */
+public final class Transcode {
+    private static final String ATTRIBUTE_PREFIX = "@";
+    private static final String TEXT_KEY = "#text";
+
+    private Transcode() {}
+
+    /**
+     * Convert XML to JSON as it is read, without building either document. Repeated elements must be consecutive. The
+     * first element of each run of siblings is held in memory, as converted JSON, until the next sibling shows whether
+     * it starts an array. That includes everything inside it, so for the usual shape of a root holding a single large
+     * element (eg &lt;root&gt;&lt;items&gt;&lt;item/&gt;...&lt;/items&gt;&lt;/root&gt;) memory grows with the
+     * document - use {@link #xmlToJson(InputStream, OutputStream, Set)} to bound it
+     * @param inputStream XML
+     * @param outputStream Compact UTF-8 encoded JSON, left open
+     */
+    public static void xmlToJson(InputStream inputStream, OutputStream outputStream) {
+        xmlToJson(inputStream, outputStream, null);
+    }
+
+    /**
+     * Convert XML to JSON as it is read, without building either document or holding back any element, so memory is
+     * bounded by the depth of the document rather than its size. Elements with a name in arrayNames are always
+     * written as arrays, even when there is only one, and all others as single values. Repeated elements must be
+     * consecutive, and an element not in arrayNames must not be repeated
+     * @param inputStream XML
+     * @param outputStream Compact UTF-8 encoded JSON, left open
+     * @param arrayNames Names (with any prefix) of the elements to write as arrays, or null to decide from the
+     * document, holding back the first element of each run as {@link #xmlToJson(InputStream, OutputStream)} does
+     */
+    public static void xmlToJson(InputStream inputStream, OutputStream outputStream, Set<String> arrayNames) {
+        XMLStreamReader reader = null;
+        try {
+            reader = createInputFactory().createXMLStreamReader(inputStream);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            new XMLStreamToJSON(reader, arrayNames).transcode(writer);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new CutletRuntimeException("Could not parse XML input stream [" + inputStream + "]", e);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception writing to output stream [" + outputStream + "]", e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Input may come from anywhere, so must not be able to read local files or make requests through entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Convert JSON to XML as it is read, without building either document in memory. Attribute ("@name") keys must come
+     * before the other keys of their object
+     * @param inputStream JSON, whose top level value is an object
+     * @param outputStream UTF-8 encoded XML, left open
+     * @param rootName Name of the root element
+     */
+    public static void jsonToXml(InputStream inputStream, OutputStream outputStream, String rootName) {
+        XMLStreamWriter writer = null;
+        try {
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8");
+            Reader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            new JSONStreamToXML(reader, writer).transcode(toName(rootName));
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new CutletRuntimeException("Could not write XML to output stream [" + outputStream + "]", e);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception reading from input stream [" + inputStream + "]", e);
+        } finally {
+            close(writer);
+        }
+    }
+
+    // Document conversion
+
+    static JSONObject toJSON(Element element) {
+        Object value = toJSONValue(element);
+        if (value instanceof JSONObject) {
+            return (JSONObject) value;
+        } else {
+            JSONObject jsonObject = new JSONObject();
+            if (!value.toString().isEmpty()) {
+                JSONNodes.properties(jsonObject).put(TEXT_KEY, value);
+            }
+            return jsonObject;
+        }
+    }
+
+    private static Object toJSONValue(Element element) {
+        NamedNodeMap attributes = element.getAttributes();
+        boolean hasElementChildren = false;
+        StringBuilder text = new StringBuilder();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                hasElementChildren = true;
+            } else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            }
+        }
+
+        if (!hasElementChildren && attributes.getLength() == 0) {
+            return text.toString();
+        }
+
+        JSONObject jsonObject = new JSONObject();
+        Map<Object, Object> properties = JSONNodes.properties(jsonObject);
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            properties.put(ATTRIBUTE_PREFIX + attr.getName(), attr.getValue());
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                String name = child.getNodeName();
+                Object value = toJSONValue((Element) child);
+                Object existing = properties.get(name);
+                if (existing == null) {
+                    properties.put(name, value);
+                } else if (existing instanceof JSONArray) {
+                    JSONNodes.elements((JSONArray) existing).add(value);
+                } else {
+                    JSONArray jsonArray = new JSONArray();
+                    JSONNodes.elements(jsonArray).add(existing);
+                    JSONNodes.elements(jsonArray).add(value);
+                    properties.put(name, jsonArray);
+                }
+            }
+        }
+        if (isText(text, hasElementChildren)) {
+            properties.put(TEXT_KEY, text.toString());
+        }
+        return jsonObject;
+    }
+
+    static void toXML(JSONObject jsonObject, Element element) {
+        Document document = element.getOwnerDocument();
+        for (Map.Entry<Object, Object> entry : JSONNodes.properties(jsonObject).entrySet()) {
+            String key = entry.getKey().toString();
+            Object value = entry.getValue();
+            if (key.startsWith(ATTRIBUTE_PREFIX)) {
+                setAttribute(element, toName(key.substring(ATTRIBUTE_PREFIX.length())), toText(key, value));
+            } else if (key.equals(TEXT_KEY)) {
+                element.appendChild(document.createTextNode(toText(key, value)));
+            } else if (value instanceof JSONArray) {
+                for (Object item : JSONNodes.elements((JSONArray) value)) {
+                    if (item instanceof JSONArray) {
+                        throw new CutletRuntimeException("Cannot convert [" + key + "] to XML, it contains nested arrays");
+                    }
+                    element.appendChild(toXML(document, key, item));
+                }
+            } else {
+                element.appendChild(toXML(document, key, value));
+            }
+        }
+    }
+
+    private static Element toXML(Document document, String name, Object value) {
+        Element element;
+        try {
+            element = document.createElement(toName(name));
+        } catch (DOMException e) {
+            throw new CutletRuntimeException("Cannot convert [" + name + "] to XML, it is not a valid element name", e);
+        }
+        if (value instanceof JSONObject) {
+            if (!((JSONObject) value).isNullObject()) {
+                toXML((JSONObject) value, element);
+            }
+        } else if (value != null && !(value instanceof JSONNull)) {
+            String text = value.toString();
+            if (!text.isEmpty()) {
+                element.appendChild(document.createTextNode(text));
+            }
+        }
+        return element;
+    }
+
+    private static void setAttribute(Element element, String name, String value) {
+        try {
+            element.setAttribute(name, value);
+        } catch (DOMException e) {
+            throw new CutletRuntimeException("Cannot convert [" + ATTRIBUTE_PREFIX + name + "] to XML, it is not a valid attribute name", e);
+        }
+    }
+
+    /**
+     * @return The key, to use as an element or attribute name
+     * @throws CutletRuntimeException If it is not an XML name, so would give malformed XML
+     */
+    private static String toName(String key) {
+        if (!isName(key)) {
+            throw new CutletRuntimeException("Cannot convert [" + key + "] to XML, it is not a valid element or attribute name");
+        }
+        return key;
+    }
+
+    /**
+     * @return True if the text matches the Name production of XML 1.0
+     */
+    private static boolean isName(String text) {
+        if (text.isEmpty() || !isNameStartChar(text.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!isNameStartChar(c) && !isNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameStartChar(char c) {
+        return c == ':' || c == '_' || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+            || (c >= 0xC0 && c <= 0xD6) || (c >= 0xD8 && c <= 0xF6) || (c >= 0xF8 && c <= 0x2FF)
+            || (c >= 0x370 && c <= 0x37D) || (c >= 0x37F && c <= 0x1FFF) || (c >= 0x200C && c <= 0x200D)
+            || (c >= 0x2070 && c <= 0x218F) || (c >= 0x2C00 && c <= 0x2FEF) || (c >= 0x3001 && c <= 0xD7FF)
+            || (c >= 0xF900 && c <= 0xFDCF) || (c >= 0xFDF0 && c <= 0xFFFD)
+            // Supplementary characters up to U+EFFFF
+            || Character.isSurrogate(c);
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '-' || c == '.' || (c >= '0' && c <= '9') || c == 0xB7 || (c >= 0x300 && c <= 0x36F)
+            || (c >= 0x203F && c <= 0x2040);
+    }
+
+    private static String toText(String key, Object value) {
+        if (JSONNodes.isContainer(value) && !(value instanceof JSONObject && ((JSONObject) value).isNullObject())) {
+            throw new CutletRuntimeException("Cannot convert [" + key + "] to XML, it must be a string, number or boolean");
+        }
+        return (value == null || value instanceof JSONNull || value instanceof JSONObject) ? "" : value.toString();
+    }
+
+    private static boolean isText(CharSequence text, boolean hasElementChildren) {
+        return text.length() > 0 && !(hasElementChildren && text.toString().trim().isEmpty());
+    }
+
+    // Stream conversion
+
+    private static final class XMLStreamToJSON {
+        private final XMLStreamReader reader;
+        private final Set<String> arrayNames;
+
+        private XMLStreamToJSON(XMLStreamReader reader, Set<String> arrayNames) {
+            this.reader = reader;
+            this.arrayNames = arrayNames;
+        }
+
+        private void transcode(Appendable out) throws XMLStreamException, IOException {
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // Skip prolog
+            }
+            element(out, true);
+        }
+
+        /**
+         * Write the value of the element the reader is on, leaving the reader on its end tag
+         */
+        private void element(Appendable out, boolean root) throws XMLStreamException, IOException {
+            boolean open = false;
+            if (root || reader.getNamespaceCount() > 0 || reader.getAttributeCount() > 0) {
+                out.append('{');
+                open = true;
+            }
+            boolean first = true;
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                first = key(out, first, ATTRIBUTE_PREFIX + (prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix));
+                out.append(JSONUtils.quote(reader.getNamespaceURI(i)));
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                first = key(out, first, ATTRIBUTE_PREFIX + getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)));
+                out.append(JSONUtils.quote(reader.getAttributeValue(i)));
+            }
+
+            StringBuilder text = new StringBuilder();
+            Set<String> names = new HashSet<>();
+            String runName = null;
+            StringBuilder pending = null;
+            boolean hasElementChildren = false;
+
+            int event;
+            while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    hasElementChildren = true;
+                    if (!open) {
+                        out.append('{');
+                        open = true;
+                    }
+                    String name = getName(reader.getPrefix(), reader.getLocalName());
+                    if (arrayNames != null) {
+                        // Hinted, so nothing is held back
+                        if (name.equals(runName)) {
+                            out.append(',');
+                        } else {
+                            first = endRun(out, first, runName, null);
+                            if (!names.add(name)) {
+                                throw new CutletRuntimeException("Cannot stream [" + name + "] as JSON, " + (arrayNames.contains(name) ? "its elements are not consecutive" : "it is repeated but not one of the array names"));
+                            }
+                            first = key(out, first, name);
+                            if (arrayNames.contains(name)) {
+                                out.append('[');
+                                runName = name;
+                            } else {
+                                runName = null;
+                            }
+                        }
+                        element(out, false);
+                    } else if (name.equals(runName)) {
+                        if (pending != null) {
+                            first = key(out, first, name);
+                            out.append('[').append(pending);
+                            pending = null;
+                        }
+                        out.append(',');
+                        element(out, false);
+                    } else {
+                        first = endRun(out, first, runName, pending);
+                        if (!names.add(name)) {
+                            throw new CutletRuntimeException("Cannot stream [" + name + "] as JSON, its elements are not consecutive - use XML.parse(...).toJSON() instead");
+                        }
+                        runName = name;
+                        pending = new StringBuilder();
+                        element(pending, false);
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            }
+            first = endRun(out, first, runName, pending);
+
+            if (open) {
+                if (isText(text, hasElementChildren)) {
+                    key(out, first, TEXT_KEY);
+                    out.append(JSONUtils.quote(text.toString()));
+                }
+                out.append('}');
+            } else {
+                out.append(JSONUtils.quote(text.toString()));
+            }
+        }
+
+        private static boolean endRun(Appendable out, boolean first, String runName, StringBuilder pending) throws IOException {
+            if (runName == null) {
+                return first;
+            } else if (pending == null) {
+                out.append(']');
+                return false;
+            } else {
+                key(out, first, runName);
+                out.append(pending);
+                return false;
+            }
+        }
+
+        private static boolean key(Appendable out, boolean first, String key) throws IOException {
+            if (!first) {
+                out.append(',');
+            }
+            out.append(JSONUtils.quote(key)).append(':');
+            return false;
+        }
+
+        private static String getName(String prefix, String localName) {
+            return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+        }
+    }
+
+    /**
+     * Recursive descent over JSON text, writing XML events as values are read
+     */
+    private static final class JSONStreamToXML {
+        private final Reader reader;
+        private final XMLStreamWriter writer;
+        private int next = -2;
+
+        private JSONStreamToXML(Reader reader, XMLStreamWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        private void transcode(String rootName) throws IOException, XMLStreamException {
+            writer.writeStartDocument("UTF-8", "1.0");
+            if (skipWhitespace() != '{') {
+                throw error("Top level value must be an object");
+            }
+            writer.writeStartElement(rootName);
+            object();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            if (skipWhitespace() != -1) {
+                throw error("Unexpected content after top level value");
+            }
+        }
+
+        /**
+         * Write the content of an object into the current element, with the reader on its opening brace
+         */
+        private void object() throws IOException, XMLStreamException {
+            read();
+            boolean content = false;
+            if (skipWhitespace() == '}') {
+                read();
+                return;
+            }
+            while (true) {
+                if (skipWhitespace() != '"') {
+                    throw error("Expected a key");
+                }
+                String key = string();
+                if (skipWhitespace() != ':') {
+                    throw error("Expected ':' after [" + key + "]");
+                }
+                read();
+                int c = skipWhitespace();
+                if (key.startsWith(ATTRIBUTE_PREFIX)) {
+                    if (content) {
+                        throw error("Attribute [" + key + "] must come before the other keys of its object");
+                    }
+                    if (c == '{' || c == '[') {
+                        throw error("Attribute [" + key + "] must be a string, number or boolean");
+                    }
+                    writer.writeAttribute(toName(key.substring(ATTRIBUTE_PREFIX.length())), primitive());
+                } else if (key.equals(TEXT_KEY)) {
+                    content = true;
+                    writer.writeCharacters(primitive());
+                } else if (c == '[') {
+                    content = true;
+                    array(key);
+                } else {
+                    content = true;
+                    value(key);
+                }
+                c = skipWhitespace();
+                read();
+                if (c == '}') {
+                    return;
+                } else if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private void array(String name) throws IOException, XMLStreamException {
+            read();
+            if (skipWhitespace() == ']') {
+                read();
+                return;
+            }
+            while (true) {
+                if (skipWhitespace() == '[') {
+                    throw error("Cannot convert [" + name + "] to XML, it contains nested arrays");
+                }
+                value(name);
+                int c = skipWhitespace();
+                read();
+                if (c == ']') {
+                    return;
+                } else if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+
+        private void value(String name) throws IOException, XMLStreamException {
+            writer.writeStartElement(toName(name));
+            if (skipWhitespace() == '{') {
+                object();
+            } else {
+                String text = primitive();
+                if (!text.isEmpty()) {
+                    writer.writeCharacters(text);
+                }
+            }
+            writer.writeEndElement();
+        }
+
+        /**
+         * @return Text of a string, number or boolean, or empty for null
+         */
+        private String primitive() throws IOException {
+            int c = skipWhitespace();
+            if (c == '"') {
+                return string();
+            }
+            StringBuilder sb = new StringBuilder();
+            while (c != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                sb.append((char) read());
+                c = peek();
+            }
+            String literal = sb.toString();
+            if (literal.equals("null")) {
+                return "";
+            } else if (literal.equals("true") || literal.equals("false") || isNumber(literal)) {
+                return literal;
+            } else {
+                throw error("Unexpected value [" + literal + "]");
+            }
+        }
+
+        private String string() throws IOException {
+            read();
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = read()) != '"') {
+                if (c == -1) {
+                    throw error("Unterminated string");
+                } else if (c == '\\') {
+                    c = read();
+                    switch (c) {
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                hex[i] = (char) read();
+                            }
+                            try {
+                                sb.append((char) Integer.parseInt(new String(hex), 16));
+                            } catch (NumberFormatException e) {
+                                throw error("Invalid unicode escape [" + new String(hex) + "]");
+                            }
+                            break;
+                        case -1: throw error("Unterminated string");
+                        default: sb.append((char) c);
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private static boolean isNumber(String literal) {
+            try {
+                new BigDecimal(literal);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c = peek();
+            while (c != -1 && Character.isWhitespace(c)) {
+                read();
+                c = peek();
+            }
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (next == -2) {
+                next = reader.read();
+            }
+            return next;
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            next = -2;
+            return c;
+        }
+
+        private CutletRuntimeException error(String message) {
+            return new CutletRuntimeException("Could not transcode JSON to XML: " + message);
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Ignore - the underlying stream is owned by the caller
+            }
+        }
+    }
+
+    private static void close(XMLStreamWriter writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (XMLStreamException e) {
+                // Ignore - the underlying stream is owned by the caller
+            }
+        }
+    }
+}
@@ -5,10 +5,14 @@ package com.snell.michael.cutlet;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.jxpath.AbstractFactory;
 import org.apache.commons.jxpath.Pointer;
+import org.apache.commons.jxpath.ri.JXPathContextReferenceImpl;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.ls.*;
 
@@ -16,9 +20,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static com.snell.michael.cutlet.WriteStyle.COMPACT;
@@ -26,9 +43,21 @@ import static java.lang.Boolean.TRUE;
 
 public class XML extends CutletJXPathContext<XML> {
     private static final Pattern NEWLINE_LEADING_WHITESPACE_PATTERN = Pattern.compile("\\n\\s*");
-
-    private static DOMImplementationLS DOM_IMPLEMENTATION;
-    private static LSParser PARSER;
+    private static final String FINGERPRINT_KEY = "com.snell.michael.cutlet.fingerprint";
+    private static final String MODIFICATION_COUNT_KEY = "com.snell.michael.cutlet.modificationCount";
+    // Set on a document once any of its elements has a cached fingerprint, so mutations of others skip forgetting them
+    private static final String FINGERPRINTED_KEY = "com.snell.michael.cutlet.fingerprinted";
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    private static volatile DOMImplementationLS DOM_IMPLEMENTATION;
+    // LSParser is not thread-safe, so each thread has its own
+    private static final ThreadLocal<LSParser> PARSER = new ThreadLocal<LSParser>() {
+        @Override
+        protected LSParser initialValue() {
+            createParser();
+            return DOM_IMPLEMENTATION.createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS, null);
+        }
+    };
 
     private final Document document;
 
@@ -36,7 +65,7 @@ public class XML extends CutletJXPathContext<XML> {
         super(jxpathContext);
         this.document = document;
 
-        context.setFactory(new AbstractFactory() {
+        jxpathContext.setFactory(new AbstractFactory() {
             @Override
             public boolean createObject(org.apache.commons.jxpath.JXPathContext context, Pointer pointer, Object parent, String name, int index) {
                 if (parent instanceof Element) {
@@ -49,18 +78,67 @@ public class XML extends CutletJXPathContext<XML> {
         });
     }
 
+    private XML(Object frozenBean, Document document, ConverterMap converterMap) {
+        super(frozenBean, converterMap);
+        this.document = document;
+    }
+
     @Override
     protected XML create(org.apache.commons.jxpath.JXPathContext jxpathContext) {
         return new XML(jxpathContext, document);
     }
 
+    @Override
+    protected XML createFrozen(Object bean, ConverterMap converterMap) {
+        return new XML(bean, document, converterMap);
+    }
+
+    @Override
+    public XML freeze() {
+        if (isFrozen()) {
+            return this;
+        } else {
+            Document frozen = document.getImplementation().createDocument(null, null, null);
+            Element element = (Element) frozen.importNode((Node) getContextBean(this), true);
+            frozen.appendChild(element);
+            createAttributeMaps(element);
+            return new XML(element, frozen, getConverterMap());
+        }
+    }
+
+    /**
+     * Xerces creates the attribute map of an element when it is first asked for, so maps are created before the frozen
+     * document is shared rather than by racing readers
+     */
+    private static void createAttributeMaps(Element element) {
+        element.getAttributes();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                createAttributeMaps((Element) child);
+            }
+        }
+    }
+
+    /**
+     * JXPathContext is not thread-safe, so frozen XML evaluates every call against a fresh context. Its pointers read
+     * values by following sibling links rather than through NodeLists, whose positions Xerces caches on the document
+     * @return Context to evaluate xpaths against
+     */
+    @Override
+    protected org.apache.commons.jxpath.JXPathContext context() {
+        if (isFrozen()) {
+            Node node = (Node) getContextBean(this);
+            return new JXPathContextReferenceImpl(null, node, new FrozenDOMNodePointer(node, Locale.getDefault()));
+        } else {
+            return super.context();
+        }
+    }
+
     @Override
     public Set<String> getChildren() {
         Element element = (Element) getContextBean(this);
-        NodeList nodeList = element.getChildNodes();
         Set<String> s = new LinkedHashSet<>();
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
             if (node.getLocalName() != null) {
                 s.add(node.getLocalName());
             }
@@ -68,9 +146,142 @@ public class XML extends CutletJXPathContext<XML> {
         return s;
     }
 
+    /**
+     * Convert to JSON directly, without going through a String - see {@link Transcode} for the mapping
+     */
+    public JSON toJSON() {
+        return JSON.create(Transcode.toJSON((Element) getContextBean(this)));
+    }
+
+    /**
+     * Fingerprints of elements are cached as DOM user data, and dropped from the changed element up to the root
+     * whenever the document is modified through a Cutlet. Comments, processing instructions and whitespace between
+     * elements are not part of the fingerprint
+     */
+    @Override
+    public Fingerprint fingerprint() {
+        synchronized (document) {
+            Element element = (Element) getContextBean(this);
+            element.getOwnerDocument().setUserData(FINGERPRINTED_KEY, Boolean.TRUE, null);
+            return fingerprint(element);
+        }
+    }
+
+    private static Fingerprint fingerprint(Element element) {
+        Fingerprint fingerprint = (Fingerprint) element.getUserData(FINGERPRINT_KEY);
+        if (fingerprint == null) {
+            MessageDigest digest = Fingerprint.newDigest();
+            updateName(digest, 'e', element);
+
+            // Attributes sorted, as their order is not significant
+            NamedNodeMap attributes = element.getAttributes();
+            SortedMap<String, Attr> sorted = new TreeMap<>();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                if (!XMLNS_NAMESPACE.equals(attr.getNamespaceURI())) {
+                    sorted.put(attr.getNamespaceURI() + " " + getName(attr), attr);
+                }
+            }
+            for (Attr attr : sorted.values()) {
+                updateName(digest, 'a', attr);
+                Fingerprint.update(digest, 'v', attr.getValue());
+            }
+
+            boolean hasElementChildren = false;
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                hasElementChildren |= child instanceof Element;
+            }
+            StringBuilder text = new StringBuilder();
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                short type = child.getNodeType();
+                if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                    text.append(child.getNodeValue());
+                } else if (child instanceof Element) {
+                    updateText(digest, text, hasElementChildren);
+                    Fingerprint.update(digest, fingerprint((Element) child));
+                }
+            }
+            updateText(digest, text, hasElementChildren);
+
+            fingerprint = Fingerprint.of(digest);
+            element.setUserData(FINGERPRINT_KEY, fingerprint, null);
+        }
+        return fingerprint;
+    }
+
+    private static void updateName(MessageDigest digest, char tag, Node node) {
+        Fingerprint.update(digest, tag, getName(node));
+        Fingerprint.update(digest, 'u', String.valueOf(node.getNamespaceURI()));
+    }
+
+    private static String getName(Node node) {
+        return node.getLocalName() == null ? node.getNodeName() : node.getLocalName();
+    }
+
+    private static void updateText(MessageDigest digest, StringBuilder text, boolean hasElementChildren) {
+        if (text.length() > 0 && !(hasElementChildren && text.toString().trim().isEmpty())) {
+            Fingerprint.update(digest, 't', text.toString());
+        }
+        text.setLength(0);
+    }
+
+    @Override
+    protected void prepareMutation(String xpath, boolean removal) {
+        super.prepareMutation(xpath, removal);
+        if (!isFingerprinted(document)) {
+            return;
+        }
+
+        org.apache.commons.jxpath.JXPathContext context = context();
+        Iterator<?> i = context.iteratePointers(xpath);
+        if (removal) {
+            while (i.hasNext()) {
+                Node node = (Node) ((Pointer) i.next()).getNode();
+                forgetFingerprints(node instanceof Attr ? ((Attr) node).getOwnerElement() : node.getParentNode());
+            }
+        } else {
+            Pointer pointer = i.hasNext() ? (Pointer) i.next() : getDeepestExistingPointer(context, xpath);
+            Object node = pointer.getNode();
+            if (node instanceof Node) {
+                forgetFingerprints((Node) node);
+            }
+        }
+    }
+
+    private static boolean isFingerprinted(Document document) {
+        return document.getUserData(FINGERPRINTED_KEY) != null;
+    }
+
+    @Override
+    protected void markModified() {
+        document.setUserData(MODIFICATION_COUNT_KEY, getModificationCount() + 1, null);
+    }
+
+    @Override
+    protected long getModificationCount() {
+        Object count = document.getUserData(MODIFICATION_COUNT_KEY);
+        return count == null ? 0 : (Long) count;
+    }
+
+    /**
+     * Drop the cached fingerprints of the element containing a node that is about to change, and of its ancestors. A
+     * cached element always has cached descendants, so the first element without one ends the walk
+     */
+    private static void forgetFingerprints(Node node) {
+        Node n = node instanceof Attr ? ((Attr) node).getOwnerElement() : node;
+        while (n != null && !(n instanceof Element)) {
+            n = n.getParentNode();
+        }
+        while (n instanceof Element && n.getUserData(FINGERPRINT_KEY) != null) {
+            n.setUserData(FINGERPRINT_KEY, null, null);
+            n = n.getParentNode();
+        }
+    }
+
     @Override
     public XML withList(String xpath, List<XML> xmls) {
-        Pointer p = context.createPath(xpath);
+        prepareMutation(xpath, false);
+        Pointer p = context().createPath(xpath);
         Element e = (Element) p.getNode();
         for (XML xml : xmls) {
             Node n = (Node) getContextBean(xml);
@@ -81,6 +292,49 @@ public class XML extends CutletJXPathContext<XML> {
         return this;
     }
 
+    @Override
+    public XML moveList(String xpath, List<XML> xmls) {
+        prepareMutation(xpath, false);
+        Pointer p = context().createPath(xpath);
+        Element e = (Element) p.getNode();
+        for (XML xml : xmls) {
+            e.appendChild(take(xml));
+        }
+
+        return this;
+    }
+
+    @Override
+    public XML attach(String xpath, XML xml) {
+        return moveList(xpath, Collections.singletonList(xml));
+    }
+
+    /**
+     * @return The node of a Cutlet, adopted into this document (so removed from its own), or a copy if it is frozen
+     */
+    private Node take(XML xml) {
+        Node n = (Node) getContextBean(xml);
+        if (xml.isFrozen()) {
+            return document.importNode(n, true);
+        }
+        forgetFingerprints(n.getParentNode());
+        if (n.getOwnerDocument() == document) {
+            return n;
+        }
+        xml.markModified();
+        if (isFingerprinted(n.getOwnerDocument())) {
+            // Adopted nodes keep their cached fingerprints
+            document.setUserData(FINGERPRINTED_KEY, Boolean.TRUE, null);
+        }
+        Node adopted = document.adoptNode(n);
+        if (adopted == null) {
+            // A document from another DOM implementation, so the node can only be copied
+            adopted = document.importNode(n, true);
+            n.getParentNode().removeChild(n);
+        }
+        return adopted;
+    }
+
     @Override
     public int hashCode() {
         return write(COMPACT).hashCode();
@@ -95,54 +349,106 @@ public class XML extends CutletJXPathContext<XML> {
         }
     }
 
-    private static synchronized void createParser() {
+    private static void createParser() {
         if (DOM_IMPLEMENTATION == null) {
-            try {
-                DOM_IMPLEMENTATION = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("XML 3.0");
-                PARSER = DOM_IMPLEMENTATION.createLSParser(DOMImplementationLS.MODE_SYNCHRONOUS, null);
-            } catch (Exception e) {
-                throw new RuntimeException("Error instantiating XML implementation/parser", e);
+            synchronized (XML.class) {
+                if (DOM_IMPLEMENTATION == null) {
+                    try {
+                        // Traversal selects the implementation the parser builds documents with, so that nodes can be
+                        // adopted between parsed and created documents
+                        DOM_IMPLEMENTATION = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("XML 3.0 Traversal");
+                    } catch (Exception e) {
+                        throw new RuntimeException("Error instantiating XML implementation/parser", e);
+                    }
+                }
             }
         }
     }
 
-    private static Document parseToDocument(String text) {
+    private static Document parseToDocument(String text, ParseOptions options) {
+        ParseLimits.checkLength(text.length(), options);
         createParser();
         LSInput lsi = (DOM_IMPLEMENTATION).createLSInput();
         lsi.setStringData(text);
-        return PARSER.parse(lsi);
+        return parseToDocument(lsi, options);
     }
 
-    private static Document parseToDocument(InputStream inputStream) {
+    private static Document parseToDocument(InputStream inputStream, ParseOptions options) {
         createParser();
         LSInput lsi = (DOM_IMPLEMENTATION).createLSInput();
-        lsi.setByteStream(inputStream);
-        return PARSER.parse(lsi);
+        lsi.setByteStream(ParseLimits.limit(inputStream, options));
+        return parseToDocument(lsi, options);
+    }
+
+    private static Document parseToDocument(LSInput lsi, ParseOptions options) {
+        LSParser parser = PARSER.get();
+        ParseLimits.XMLFilter filter = options.isLimitingStructure() ? new ParseLimits.XMLFilter(options) : null;
+        parser.setFilter(filter);
+        try {
+            Document document = parser.parse(lsi);
+            if (filter != null) {
+                filter.finish(document.getDocumentElement());
+            }
+            return document;
+        } catch (LSException e) {
+            // Limits are enforced by throwing from the filter or stream, which the parser wraps
+            if (e.getCause() instanceof CutletRuntimeException) {
+                throw (CutletRuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            parser.setFilter(null);
+        }
     }
 
     /**
      * Parse a XML string into a Cutlet class
      */
     public static XML parse(String xml) {
-        Document document = parseToDocument(xml);
-        return getFromDocument(document);
+        return parse(xml, new ParseOptions());
+    }
+
+    /**
+     * Parse a XML string into a Cutlet class
+     */
+    public static XML parse(String xml, ParseOptions options) {
+        long start = start(options.getMetrics());
+        return parsed(getFromDocument(applyOptions(parseToDocument(xml, options), options)), options, start, xml.length());
     }
 
     /**
      * Parse a XML input stream into a Cutlet class
      */
     public static XML parse(InputStream inputStream) {
-        Document document = parseToDocument(inputStream);
-        return getFromDocument(document);
+        return parse(inputStream, new ParseOptions());
+    }
+
+    /**
+     * Parse a XML input stream into a Cutlet class
+     */
+    public static XML parse(InputStream inputStream, ParseOptions options) {
+        return parse(inputStream, options, -1);
+    }
+
+    private static XML parse(InputStream inputStream, ParseOptions options, long length) {
+        long start = start(options.getMetrics());
+        return parsed(getFromDocument(applyOptions(parseToDocument(inputStream, options), options)), options, start, length);
     }
 
     /**
      * Parse a XML file into a Cutlet class
      */
     public static XML parse(File file) {
-        try {
-            Document document = parseToDocument(FileUtils.openInputStream(file));
-            return getFromDocument(document);
+        return parse(file, new ParseOptions());
+    }
+
+    /**
+     * Parse a XML file into a Cutlet class
+     */
+    public static XML parse(File file, ParseOptions options) {
+        ParseLimits.checkLength(file.length(), options);
+        try (InputStream inputStream = FileUtils.openInputStream(file)) {
+            return parse(inputStream, options, file.length());
         } catch (IOException e) {
             throw new RuntimeException("IO exception reading from file [" + file + "]");
         }
@@ -155,6 +461,119 @@ public class XML extends CutletJXPathContext<XML> {
         return parse(new File(filename));
     }
 
+    /**
+     * Parse a XML file into a Cutlet class, or take it from a cache if the file has not changed since it was last parsed
+     * @return Frozen document, shared with other users of the cache
+     */
+    public static XML parse(File file, CutletCache cache) {
+        return cache.get(file, "xml", FILE_PARSER);
+    }
+
+    /**
+     * Parse a XML file into a Cutlet class, or take it from a cache if the file has not changed since it was last parsed
+     * @return Frozen document, shared with other users of the cache
+     */
+    public static XML parseFile(String filename, CutletCache cache) {
+        return parse(new File(filename), cache);
+    }
+
+    /**
+     * Parse a XML input stream into a Cutlet class on an executor
+     */
+    public static CompletableFuture<XML> parseAsync(final InputStream inputStream, Executor executor) {
+        return CompletableFuture.supplyAsync(new Supplier<XML>() {
+            @Override
+            public XML get() {
+                return parse(inputStream);
+            }
+        }, executor);
+    }
+
+    /**
+     * Parse many files at once, reading no more than parallelism of them at a time. All of the Cutlets are held until
+     * the last is parsed - use parseEach for more files than fit in memory
+     * @return Cutlets, in the order of the files
+     */
+    public static List<XML> parseAll(Collection<File> files, int parallelism) {
+        return parseAll(files, parallelism, FILE_PARSER);
+    }
+
+    /**
+     * Parse many files at once, reading no more than parallelism of them ahead of consumer, which is called with each
+     * Cutlet in the order of the files on the calling thread
+     */
+    public static void parseEach(Collection<File> files, int parallelism, Consumer<? super XML> consumer) {
+        parseEach(files, parallelism, FILE_PARSER, consumer);
+    }
+
+    private static final FileParser<XML> FILE_PARSER = new FileParser<XML>() {
+        @Override
+        public XML parse(File file) {
+            return XML.parse(file);
+        }
+    };
+
+    @Override
+    public void saveSnapshot(File file) {
+        synchronized (document) {
+            Snapshots.saveXML(file, (Element) getContextBean(this));
+        }
+    }
+
+    /**
+     * Write the tree in the format of snapshots, as CutletStore does, without copying it first
+     */
+    void writeTree(OutputStream out) throws IOException {
+        synchronized (document) {
+            Snapshots.writeXML((Element) getContextBean(this), out);
+        }
+    }
+
+    /**
+     * Load a snapshot saved by {@link #saveSnapshot(File)}, building the DOM directly rather than parsing text
+     */
+    public static XML loadSnapshot(File file) {
+        createParser();
+        return getFromDocument(Snapshots.loadXML(file, (DOMImplementation) DOM_IMPLEMENTATION));
+    }
+
+    /**
+     * @return Frozen XML over a tree read from a buffer by CutletStore
+     */
+    static XML readFrozen(ByteBuffer buffer) {
+        createParser();
+        Document document = Snapshots.readXML(buffer, (DOMImplementation) DOM_IMPLEMENTATION);
+        return new XML(document.getDocumentElement(), document, ConverterMap.DEFAULT_CONVERTER_MAP);
+    }
+
+    private static Document applyOptions(Document document, ParseOptions options) {
+        if (options.getInternValueMaxLength() > 0) {
+            internValues(document.getDocumentElement(), options.getInternValueMaxLength(), options.getSymbolTable());
+        }
+        return document;
+    }
+
+    /**
+     * Element and attribute names already come from the symbol table of the parser, so only values are interned
+     */
+    private static void internValues(Element element, int maxLength, SymbolTable symbolTable) {
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            String value = attr.getValue();
+            if (value.length() <= maxLength) {
+                attr.setValue(symbolTable.intern(value));
+            }
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                internValues((Element) child, maxLength, symbolTable);
+            } else if (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().length() <= maxLength) {
+                child.setNodeValue(symbolTable.intern(child.getNodeValue()));
+            }
+        }
+    }
+
     private static XML getFromDocument(Document document) {
         org.apache.commons.jxpath.JXPathContext context = org.apache.commons.jxpath.JXPathContext.newContext(document);
         Pointer pointer = context.getPointer(document.getDocumentElement().getNodeName());
@@ -167,11 +586,38 @@ public class XML extends CutletJXPathContext<XML> {
      * The root node of the XML document must be specified, and is not required in further queries
      */
     public static XML create(String rootNode) {
-        Document document = parseToDocument("<" + rootNode + "/>");
-        org.apache.commons.jxpath.JXPathContext context = org.apache.commons.jxpath.JXPathContext.newContext(document);
+        return getFromDocument(createDocument(rootNode));
+    }
 
-        Pointer pointer = context.getPointer(rootNode);
-        return new XML(context.getRelativeContext(pointer), document);
+    static XML create(Document document) {
+        return getFromDocument(document);
+    }
+
+    /**
+     * Create a builder for a document, which adds nodes directly rather than through xpaths
+     * @param rootNode Name of the root element, which the builder starts in
+     */
+    public static XMLBuilder builder(String rootNode) {
+        return new XMLBuilder(createDocument(rootNode));
+    }
+
+    /**
+     * Create a generator that writes a document to a stream as it is generated, without building it in memory
+     * @param rootNode Name of the root element, which the generator starts in
+     */
+    public static XMLGenerator writer(OutputStream outputStream, String rootNode) {
+        return new XMLGenerator(outputStream, rootNode);
+    }
+
+    private static Document createDocument(String rootNode) {
+        createParser();
+        try {
+            Document document = ((DOMImplementation) DOM_IMPLEMENTATION).createDocument(null, null, null);
+            document.appendChild(document.createElement(rootNode));
+            return document;
+        } catch (DOMException e) {
+            throw new CutletRuntimeException("Invalid root node name [" + rootNode + "]", e);
+        }
     }
 
     private static String serializeXML(Document document, WriteStyle style) {
@@ -202,7 +648,32 @@ public class XML extends CutletJXPathContext<XML> {
      * Output a XMLCutlet as UTF-8 encoded XML text
      */
     @Override
-    public String write(WriteStyle style) {
+    protected String serialize(WriteStyle style) {
         return serializeXML(document, style);
     }
+
+    @Override
+    protected String getFormat() {
+        return "xml";
+    }
+
+    @Override
+    protected int countNodes() {
+        return countNodes((Node) getContextBean(this));
+    }
+
+    /**
+     * @return Number of elements, attributes and other nodes in a subtree, including its root
+     */
+    private static int countNodes(Node node) {
+        int count = 1;
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            count += attributes.getLength();
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import com.snell.michael.cutlet.converters.TextConverter;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes compact XML text as it is generated, without building a tree, so documents of any size can be written in
+ * constant memory. The calls are those of XMLBuilder, and values are converted with the ConverterMap. XML Cutlets
+ * can be written as elements, eg one per row of a database cursor. Closing the generator ends any open elements and
+ * the document, and closes the stream
+ */
+public final class XMLGenerator implements Closeable, Flushable {
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final OutputStream outputStream;
+    private final XMLStreamWriter writer;
+    private final StringBuilder textBuffer = new StringBuilder();
+    private ConverterMap converterMap = ConverterMap.DEFAULT_CONVERTER_MAP;
+    private int depth;
+    private char[] chars = new char[64];
+
+    XMLGenerator(OutputStream outputStream, String rootNode) {
+        this.outputStream = outputStream;
+        try {
+            writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement(rootNode);
+        } catch (XMLStreamException e) {
+            throw writeError(e);
+        }
+        depth = 1;
+    }
+
+    public XMLGenerator withConverterMap(ConverterMap converterMap) {
+        this.converterMap = converterMap;
+        return this;
+    }
+
+    /**
+     * Begin a child element of the current element, which becomes the current element
+     */
+    public XMLGenerator begin(String name) {
+        try {
+            writer.writeStartElement(name);
+        } catch (XMLStreamException e) {
+            throw writeError(e);
+        }
+        depth++;
+        return this;
+    }
+
+    /**
+     * End the current element, so that its parent becomes the current element
+     */
+    public XMLGenerator end() {
+        if (depth <= 1) {
+            throw new CutletRuntimeException("Cannot end the root element, close the generator instead");
+        }
+        try {
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw writeError(e);
+        }
+        depth--;
+        return this;
+    }
+
+    /**
+     * Write an attribute of the current element, which must not yet have any content
+     * @param value Value, converted with the ConverterMap. Null values are not written
+     */
+    public XMLGenerator attribute(String name, Object value) {
+        String text = toText(value);
+        if (text != null) {
+            try {
+                writer.writeAttribute(name, text);
+            } catch (XMLStreamException | IllegalStateException e) {
+                throw new CutletRuntimeException("Cannot write attribute [" + name + "], the element already has content", e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write text in the current element
+     * @param value Value, converted with the ConverterMap. Null values are not written
+     */
+    @SuppressWarnings("unchecked")
+    public XMLGenerator text(Object value) {
+        Class<Object> clazz = value == null || value instanceof String ? null : (Class<Object>) value.getClass();
+        TextConverter<Object> textConverter = clazz == null ? null : converterMap.getTextConverter(clazz);
+        try {
+            if (textConverter != null) {
+                textBuffer.setLength(0);
+                converterMap.write(textConverter, value, clazz, textBuffer);
+                writeCharacters(textBuffer);
+            } else {
+                String text = toText(value);
+                if (text != null) {
+                    writer.writeCharacters(text);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw writeError(e);
+        } catch (IOException e) {
+            throw new CutletRuntimeException("IO exception converting [" + value + "]", e);
+        }
+        return this;
+    }
+
+    /**
+     * Write text through a reused array, rather than as a String
+     */
+    private void writeCharacters(StringBuilder text) throws XMLStreamException {
+        if (chars.length < text.length()) {
+            chars = new char[Math.max(text.length(), chars.length * 2)];
+        }
+        text.getChars(0, text.length(), chars, 0);
+        writer.writeCharacters(chars, 0, text.length());
+    }
+
+    /**
+     * Write a child element holding only text in the current element
+     * @param value Value, converted with the ConverterMap. If null the element is empty
+     */
+    public XMLGenerator element(String name, Object value) {
+        return begin(name).text(value).end();
+    }
+
+    /**
+     * Write a copy of the element of a Cutlet in the current element
+     */
+    public XMLGenerator element(XML xml) {
+        try {
+            writeNode((Node) CutletJXPathContext.getContextBean(xml));
+        } catch (XMLStreamException e) {
+            throw writeError(e);
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw writeError(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.writeEndDocument();
+            writer.close();
+            outputStream.close();
+        } catch (XMLStreamException | IOException e) {
+            throw new CutletRuntimeException("Exception closing XML", e);
+        }
+    }
+
+    private void writeNode(Node node) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                writer.writeStartElement(node.getNodeName());
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Attr attr = (Attr) attributes.item(i);
+                    writer.writeAttribute(attr.getName(), attr.getValue());
+                }
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    writeNode(child);
+                }
+                writer.writeEndElement();
+                break;
+            case Node.TEXT_NODE:
+                writer.writeCharacters(node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writer.writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writer.writeComment(node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String toText(Object value) {
+        Object converted = converterMap.writeValue(value);
+        return converted == null ? null : converted.toString();
+    }
+
+    private static CutletRuntimeException writeError(XMLStreamException e) {
+        return new CutletRuntimeException("Exception writing XML", e);
+    }
+}
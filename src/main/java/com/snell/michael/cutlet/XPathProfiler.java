@@ -0,0 +1,167 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Records, for each distinct xpath, how often it was evaluated, how long it took and how many results it selected.
+ * Install with CutletMetrics.setGlobal(profiler) (or withMetrics on a document or ConverterMap), run the code of
+ * interest, then read getEntries or report(), which rank xpaths by total evaluation time.
+ * Each xpath is also classified as simple (a path of plain child names, optionally ending in an attribute, that
+ * could be resolved by direct child lookups) or as needing the general JXPath engine (predicates, axes, functions,
+ * wildcards, etc)
+ */
+public class XPathProfiler extends CutletMetrics {
+    private static final Pattern SIMPLE_XPATH = Pattern.compile("[A-Za-z_][\\w.-]*(/[A-Za-z_][\\w.-]*)*(/@[A-Za-z_][\\w.-]*)?|@[A-Za-z_][\\w.-]*");
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public void evaluated(String xpath, long nanos, int results) {
+        Entry entry = entries.get(xpath);
+        if (entry == null) {
+            Entry newEntry = new Entry(xpath);
+            entry = entries.putIfAbsent(xpath, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        entry.record(nanos, results);
+    }
+
+    /**
+     * @return Statistics for each xpath evaluated, with the greatest total evaluation time first
+     */
+    public List<Entry> getEntries() {
+        List<Entry> list = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            list.add(entry.copy());
+        }
+        Collections.sort(list, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                int c = Long.compare(b.totalNanos, a.totalNanos);
+                return c != 0 ? c : a.xpath.compareTo(b.xpath);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * @return Table of the statistics for each xpath, with the greatest total evaluation time first
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%10s %12s %10s %10s %12s  %-7s %s%n", "calls", "total ms", "mean us", "max us", "mean results", "engine", "xpath"));
+        for (Entry entry : getEntries()) {
+            sb.append(String.format("%10d %12.3f %10.1f %10.1f %12.1f  %-7s %s%n",
+                    entry.count,
+                    entry.totalNanos / 1e6,
+                    entry.getMeanNanos() / 1e3,
+                    entry.maxNanos / 1e3,
+                    entry.getMeanResults(),
+                    entry.simple ? "simple" : "general",
+                    entry.xpath));
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        entries.clear();
+    }
+
+    /**
+     * @return True if xpath is only child names (and possibly a final attribute) separated by '/'
+     */
+    public static boolean isSimple(String xpath) {
+        return SIMPLE_XPATH.matcher(xpath).matches();
+    }
+
+    /**
+     * Statistics for one xpath
+     */
+    public static final class Entry {
+        private final String xpath;
+        private final boolean simple;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long totalResults;
+        private int maxResults;
+
+        private Entry(String xpath) {
+            this.xpath = xpath;
+            this.simple = XPathProfiler.isSimple(xpath);
+        }
+
+        private synchronized void record(long nanos, int results) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            totalResults += results;
+            maxResults = Math.max(maxResults, results);
+        }
+
+        private synchronized Entry copy() {
+            Entry copy = new Entry(xpath);
+            copy.count = count;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.totalResults = totalResults;
+            copy.maxResults = maxResults;
+            return copy;
+        }
+
+        public String getXPath() {
+            return xpath;
+        }
+
+        /**
+         * @return True if the xpath could have been resolved by direct child lookups, false if it needed the
+         * general JXPath engine
+         */
+        public boolean isSimple() {
+            return simple;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        public long getTotalResults() {
+            return totalResults;
+        }
+
+        public int getMaxResults() {
+            return maxResults;
+        }
+
+        public double getMeanResults() {
+            return count == 0 ? 0 : (double) totalResults / count;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry[xpath=" + xpath + ", count=" + count + ", totalNanos=" + totalNanos + ", maxNanos=" + maxNanos + ", totalResults=" + totalResults + ", simple=" + simple + "]";
+        }
+    }
+}
@@ -3,20 +3,60 @@
 package com.snell.michael.cutlet.converters;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
-public class DateTimeConverter extends NullConverter<DateTime> {
+import java.io.IOException;
+
+public class DateTimeConverter extends NullConverter<DateTime> implements TextConverter<DateTime> {
     private static final DateTimeFormatter DATE_TIME_PARSER = ISODateTimeFormat.dateTimeParser().withOffsetParsed();
     private static final DateTimeFormatter DATE_TIME_FORMATTER = ISODateTimeFormat.dateTime();
 
     @Override
     public DateTime readNotNull(Object object) {
-        return DATE_TIME_PARSER.parseDateTime(object.toString());
+        String s = object.toString();
+        return read(s, 0, s.length());
+    }
+
+    @Override
+    public DateTime read(CharSequence text, int start, int end) {
+        ISO8601.Parsed parsed = ISO8601.parseDateTime(text, start, end);
+        if (parsed == null) {
+            return DATE_TIME_PARSER.parseDateTime(text.subSequence(start, end).toString());
+        }
+        DateTimeZone zone = DateTimeZone.forOffsetMillis(parsed.offsetSeconds * 1000);
+        return new DateTime(parsed.year, parsed.month, parsed.day, parsed.hour, parsed.minute, parsed.second, parsed.getMillis(), zone);
     }
 
     @Override
     public Object writeNotNull(DateTime dateTime) {
-        return DATE_TIME_FORMATTER.print(dateTime);
+        StringBuilder sb = new StringBuilder(29);
+        return print(dateTime, sb) ? sb.toString() : DATE_TIME_FORMATTER.print(dateTime);
+    }
+
+    @Override
+    public void write(DateTime dateTime, Appendable appendable) throws IOException {
+        StringBuilder sb = appendable instanceof StringBuilder ? (StringBuilder) appendable : new StringBuilder(29);
+        if (!print(dateTime, sb)) {
+            DATE_TIME_FORMATTER.printTo(appendable, dateTime);
+        } else if (sb != appendable) {
+            appendable.append(sb);
+        }
+    }
+
+    /**
+     * @return False if the date time is not one ISO8601 can print, in which case nothing is printed
+     */
+    private static boolean print(DateTime dateTime, StringBuilder sb) {
+        long millis = dateTime.getMillis();
+        int offsetMillis = dateTime.getZone().getOffset(millis);
+        long epochSecond = Math.floorDiv(millis, 1000);
+        if (!(dateTime.getChronology() instanceof ISOChronology) || offsetMillis % 1000 != 0 || !ISO8601.isPrintable(epochSecond, offsetMillis / 1000)) {
+            return false;
+        }
+        ISO8601.printDateTime(sb, epochSecond, (int) (millis - epochSecond * 1000) * 1000000, offsetMillis / 1000, true);
+        return true;
     }
 }
@@ -2,12 +2,20 @@
 
 package com.snell.michael.cutlet.converters;
 
-public class DoubleConverter extends NumberConverter<Double> {
+public class DoubleConverter extends NumberConverter<Double> implements PrimitiveConverter.OfDouble {
     @Override
     protected Double readString(String string) {
         return Double.valueOf(string);
     }
 
+    /**
+     * Read from the text as parsed, which needs no plain form
+     */
+    @Override
+    protected Double readRaw(RawNumber number) {
+        return Double.valueOf(number.getText());
+    }
+
     @Override
     protected Double readDouble(Double dbl) {
         return dbl;
@@ -17,4 +25,20 @@ public class DoubleConverter extends NumberConverter<Double> {
     protected Double readInteger(Integer integer) {
         return integer.doubleValue();
     }
-}
\ No newline at end of file
+
+    @Override
+    public double readDouble(Object object) {
+        if (object instanceof Double || object instanceof Integer) {
+            return ((Number) object).doubleValue();
+        } else if (object instanceof RawNumber) {
+            return Double.parseDouble(((RawNumber) object).getText());
+        } else {
+            return readNotNull(object);
+        }
+    }
+
+    @Override
+    public Object writeDouble(double value) {
+        return value;
+    }
+}
@@ -8,6 +8,14 @@ public class FloatConverter extends NumberConverter<Float> {
         return Float.valueOf(string);
     }
 
+    /**
+     * Read from the text as parsed, which needs no plain form
+     */
+    @Override
+    protected Float readRaw(RawNumber number) {
+        return Float.valueOf(number.getText());
+    }
+
     @Override
     protected Float readDouble(Double dbl) {
         return dbl.floatValue();
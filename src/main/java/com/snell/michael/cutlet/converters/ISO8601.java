@@ -0,0 +1,232 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+/**
+ * Parsing and printing of the common fixed layouts of ISO-8601 dates and times, yyyy-MM-dd and
+ * yyyy-MM-ddTHH:mm:ss(.S to .SSSSSSSSS)(Z|+hh:mm|-hh:mm), without the general purpose parser chains of Joda or
+ * java.time. Parse methods return null for anything else (including invalid dates), so callers can fall back to a
+ * general parser, which reports the error if there is one
+ */
+final class ISO8601 {
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    // 0001-01-01T00:00:00Z and 9998-12-31T00:00:00Z, leaving room for any offset
+    private static final long MIN_EPOCH_SECOND = -62135596800L;
+    private static final long MAX_EPOCH_SECOND = 253370678400L;
+
+    private ISO8601() {}
+
+    /**
+     * Fields of a parsed date and time
+     */
+    static final class Parsed {
+        int year;
+        int month;
+        int day;
+        int hour;
+        int minute;
+        int second;
+        int nanos;
+        int offsetSeconds;
+
+        int getMillis() {
+            return nanos / 1000000;
+        }
+
+        /**
+         * @return Seconds since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+         */
+        long getEpochSecond() {
+            int y = month <= 2 ? year - 1 : year;
+            int era = Math.floorDiv(y, 400);
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            long epochDay = era * 146097L + dayOfEra - 719468;
+            return epochDay * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+        }
+    }
+
+    /**
+     * @param s Characters holding yyyy-MM-dd from start to end
+     * @return Fields of the date, or null if s is not a date of that layout
+     */
+    static Parsed parseDate(CharSequence s, int start, int end) {
+        if (end - start != 10) {
+            return null;
+        }
+        Parsed parsed = new Parsed();
+        return parseDate(s, start, parsed) ? parsed : null;
+    }
+
+    /**
+     * @param s Characters holding yyyy-MM-ddTHH:mm:ss(.fraction)(Z|+hh:mm|-hh:mm) from start to end
+     * @return Fields of the date, time and offset, or null if s is not of that layout
+     */
+    static Parsed parseDateTime(CharSequence s, int start, int end) {
+        if (end - start < 20 || s.charAt(start + 10) != 'T' || s.charAt(start + 13) != ':' || s.charAt(start + 16) != ':') {
+            return null;
+        }
+        Parsed parsed = new Parsed();
+        if (!parseDate(s, start, parsed)) {
+            return null;
+        }
+        parsed.hour = digits(s, start + 11, 2);
+        parsed.minute = digits(s, start + 14, 2);
+        parsed.second = digits(s, start + 17, 2);
+        if (parsed.hour > 23 || parsed.minute > 59 || parsed.second > 59) {
+            return null;
+        }
+
+        int i = start + 19;
+        if (s.charAt(i) == '.') {
+            int fractionStart = ++i;
+            int nanos = 0;
+            while (i < end && isDigit(s.charAt(i))) {
+                if (i - fractionStart == 9) {
+                    return null;
+                }
+                nanos = nanos * 10 + (s.charAt(i) - '0');
+                i++;
+            }
+            if (i == fractionStart) {
+                return null;
+            }
+            for (int digits = i - fractionStart; digits < 9; digits++) {
+                nanos *= 10;
+            }
+            parsed.nanos = nanos;
+        }
+
+        if (i == end - 1 && s.charAt(i) == 'Z') {
+            parsed.offsetSeconds = 0;
+        } else if (i == end - 6 && (s.charAt(i) == '+' || s.charAt(i) == '-') && s.charAt(i + 3) == ':') {
+            int hours = digits(s, i + 1, 2);
+            int minutes = digits(s, i + 4, 2);
+            if (hours > 18 || minutes > 59) {
+                return null;
+            }
+            int offset = hours * 3600 + minutes * 60;
+            parsed.offsetSeconds = s.charAt(i) == '-' ? -offset : offset;
+        } else {
+            return null;
+        }
+        return parsed;
+    }
+
+    private static boolean parseDate(CharSequence s, int start, Parsed parsed) {
+        if (s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-') {
+            return false;
+        }
+        parsed.year = digits(s, start, 4);
+        parsed.month = digits(s, start + 5, 2);
+        parsed.day = digits(s, start + 8, 2);
+        return parsed.year >= 0 && parsed.month >= 1 && parsed.month <= 12 && parsed.day >= 1 && parsed.day <= daysInMonth(parsed.year, parsed.month);
+    }
+
+    /**
+     * @return Value of count decimal digits, or -1 if any are not digits
+     */
+    private static int digits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * @return True if a year can be printed by printDate
+     */
+    static boolean isPrintable(int year) {
+        return year >= 0 && year <= 9999;
+    }
+
+    /**
+     * Print yyyy-MM-dd
+     */
+    static StringBuilder printDate(StringBuilder sb, int year, int month, int day) {
+        pad(sb, year, 4).append('-');
+        pad(sb, month, 2).append('-');
+        return pad(sb, day, 2);
+    }
+
+    /**
+     * @return True if an instant and offset can be printed by printDateTime
+     */
+    static boolean isPrintable(long epochSecond, int offsetSeconds) {
+        return epochSecond >= MIN_EPOCH_SECOND && epochSecond <= MAX_EPOCH_SECOND && offsetSeconds % 60 == 0;
+    }
+
+    /**
+     * Print yyyy-MM-ddTHH:mm:ss(.fraction)(Z|+hh:mm|-hh:mm) from a number of seconds since the epoch in an offset
+     * @param fixedMillis True to always print the fraction as milliseconds, otherwise as 3, 6 or 9 digits as needed
+     * (none if it is zero)
+     */
+    static StringBuilder printDateTime(StringBuilder sb, long epochSecond, int nanos, int offsetSeconds, boolean fixedMillis) {
+        long localSecond = epochSecond + offsetSeconds;
+        long epochDay = Math.floorDiv(localSecond, 86400);
+        int secondOfDay = (int) (localSecond - epochDay * 86400);
+
+        // Civil date from days since the epoch, the inverse of Parsed.getEpochSecond
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        printDate(sb, (int) year, month, day).append('T');
+        pad(sb, secondOfDay / 3600, 2).append(':');
+        pad(sb, secondOfDay / 60 % 60, 2).append(':');
+        pad(sb, secondOfDay % 60, 2);
+        if (fixedMillis) {
+            pad(sb.append('.'), nanos / 1000000, 3);
+        } else if (nanos != 0) {
+            if (nanos % 1000000 == 0) {
+                pad(sb.append('.'), nanos / 1000000, 3);
+            } else if (nanos % 1000 == 0) {
+                pad(sb.append('.'), nanos / 1000, 6);
+            } else {
+                pad(sb.append('.'), nanos, 9);
+            }
+        }
+        if (offsetSeconds == 0) {
+            sb.append('Z');
+        } else {
+            int offset = Math.abs(offsetSeconds) / 60;
+            sb.append(offsetSeconds < 0 ? '-' : '+');
+            pad(sb, offset / 60, 2).append(':');
+            pad(sb, offset % 60, 2);
+        }
+        return sb;
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int value, int width) {
+        for (int limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Reads any ISO-8601 date and time with an offset, and writes in UTC
+ */
+public class InstantConverter extends NullConverter<Instant> implements TextConverter<Instant> {
+    private static final DateTimeConverter FALLBACK = new DateTimeConverter();
+
+    @Override
+    public Instant readNotNull(Object object) {
+        String s = object.toString();
+        return read(s, 0, s.length());
+    }
+
+    @Override
+    public Instant read(CharSequence text, int start, int end) {
+        ISO8601.Parsed parsed = ISO8601.parseDateTime(text, start, end);
+        if (parsed == null) {
+            DateTime dateTime = FALLBACK.read(text, start, end);
+            return Instant.ofEpochMilli(dateTime.getMillis());
+        }
+        return Instant.ofEpochSecond(parsed.getEpochSecond(), parsed.nanos);
+    }
+
+    @Override
+    public Object writeNotNull(Instant instant) {
+        StringBuilder sb = new StringBuilder(30);
+        print(instant, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void write(Instant instant, Appendable appendable) throws IOException {
+        if (appendable instanceof StringBuilder) {
+            print(instant, (StringBuilder) appendable);
+        } else {
+            StringBuilder sb = new StringBuilder(30);
+            print(instant, sb);
+            appendable.append(sb);
+        }
+    }
+
+    private static void print(Instant instant, StringBuilder sb) {
+        if (ISO8601.isPrintable(instant.getEpochSecond(), 0)) {
+            ISO8601.printDateTime(sb, instant.getEpochSecond(), instant.getNano(), 0, false);
+        } else {
+            sb.append(instant);
+        }
+    }
+}
@@ -2,9 +2,10 @@
 
 package com.snell.michael.cutlet.converters;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
-public class IntegerConverter extends NumberConverter<Integer> {
+public class IntegerConverter extends NumberConverter<Integer> implements TextConverter<Integer>, PrimitiveConverter.OfInt {
     @Override
     protected Integer readString(String string) {
         return Integer.valueOf(string);
@@ -19,4 +20,35 @@ public class IntegerConverter extends NumberConverter<Integer> {
     protected Integer readInteger(Integer integer) {
         return integer;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Integer read(CharSequence text, int start, int end) {
+        long value = parsePlainLong(text, start, end);
+        if (value == NOT_PLAIN || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return readNotNull(text.subSequence(start, end).toString());
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void write(Integer integer, Appendable appendable) throws IOException {
+        appendLong(integer, appendable);
+    }
+
+    @Override
+    public int readInt(Object object) {
+        if (object instanceof Integer) {
+            return (Integer) object;
+        }
+        long value = parsePlainLong(object);
+        if (value == NOT_PLAIN || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return readNotNull(object);
+        }
+        return (int) value;
+    }
+
+    @Override
+    public Object writeInt(int value) {
+        return value;
+    }
+}
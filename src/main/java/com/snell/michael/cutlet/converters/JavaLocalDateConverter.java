@@ -0,0 +1,55 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Converter for java.time.LocalDate, see LocalDateConverter for Joda's
+ */
+public class JavaLocalDateConverter extends NullConverter<LocalDate> implements TextConverter<LocalDate> {
+    private static final LocalDateConverter FALLBACK = new LocalDateConverter();
+
+    @Override
+    public LocalDate readNotNull(Object object) {
+        String s = object.toString();
+        return read(s, 0, s.length());
+    }
+
+    @Override
+    public LocalDate read(CharSequence text, int start, int end) {
+        ISO8601.Parsed parsed = ISO8601.parseDate(text, start, end);
+        if (parsed == null) {
+            org.joda.time.LocalDate localDate = FALLBACK.read(text, start, end);
+            return LocalDate.of(localDate.getYear(), localDate.getMonthOfYear(), localDate.getDayOfMonth());
+        }
+        return LocalDate.of(parsed.year, parsed.month, parsed.day);
+    }
+
+    @Override
+    public Object writeNotNull(LocalDate localDate) {
+        StringBuilder sb = new StringBuilder(10);
+        print(localDate, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void write(LocalDate localDate, Appendable appendable) throws IOException {
+        if (appendable instanceof StringBuilder) {
+            print(localDate, (StringBuilder) appendable);
+        } else {
+            StringBuilder sb = new StringBuilder(10);
+            print(localDate, sb);
+            appendable.append(sb);
+        }
+    }
+
+    private static void print(LocalDate localDate, StringBuilder sb) {
+        if (ISO8601.isPrintable(localDate.getYear())) {
+            ISO8601.printDate(sb, localDate.getYear(), localDate.getMonthValue(), localDate.getDayOfMonth());
+        } else {
+            sb.append(localDate);
+        }
+    }
+}
@@ -3,20 +3,51 @@
 package com.snell.michael.cutlet.converters;
 
 import org.joda.time.LocalDate;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
-public class LocalDateConverter extends NullConverter<LocalDate> {
+import java.io.IOException;
+
+public class LocalDateConverter extends NullConverter<LocalDate> implements TextConverter<LocalDate> {
     private static final DateTimeFormatter LOCAL_DATE_PARSER = ISODateTimeFormat.localDateParser();
     private static final DateTimeFormatter DATE_FORMATTER = ISODateTimeFormat.date();
 
     @Override
     public LocalDate readNotNull(Object object) {
-        return LOCAL_DATE_PARSER.parseLocalDate(object.toString());
+        String s = object.toString();
+        return read(s, 0, s.length());
+    }
+
+    @Override
+    public LocalDate read(CharSequence text, int start, int end) {
+        ISO8601.Parsed parsed = ISO8601.parseDate(text, start, end);
+        if (parsed == null) {
+            return LOCAL_DATE_PARSER.parseLocalDate(text.subSequence(start, end).toString());
+        }
+        return new LocalDate(parsed.year, parsed.month, parsed.day);
     }
 
     @Override
     public Object writeNotNull(LocalDate localDate) {
-        return DATE_FORMATTER.print(localDate);
+        if (!isPrintable(localDate)) {
+            return DATE_FORMATTER.print(localDate);
+        }
+        return ISO8601.printDate(new StringBuilder(10), localDate.getYear(), localDate.getMonthOfYear(), localDate.getDayOfMonth()).toString();
+    }
+
+    @Override
+    public void write(LocalDate localDate, Appendable appendable) throws IOException {
+        if (!isPrintable(localDate)) {
+            DATE_FORMATTER.printTo(appendable, localDate);
+        } else if (appendable instanceof StringBuilder) {
+            ISO8601.printDate((StringBuilder) appendable, localDate.getYear(), localDate.getMonthOfYear(), localDate.getDayOfMonth());
+        } else {
+            appendable.append(ISO8601.printDate(new StringBuilder(10), localDate.getYear(), localDate.getMonthOfYear(), localDate.getDayOfMonth()));
+        }
+    }
+
+    private static boolean isPrintable(LocalDate localDate) {
+        return localDate.getChronology() instanceof ISOChronology && ISO8601.isPrintable(localDate.getYear());
     }
 }
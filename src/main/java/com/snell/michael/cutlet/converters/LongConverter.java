@@ -2,9 +2,10 @@
 
 package com.snell.michael.cutlet.converters;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
-public class LongConverter extends NumberConverter<Long> {
+public class LongConverter extends NumberConverter<Long> implements TextConverter<Long>, PrimitiveConverter.OfLong {
     @Override
     protected Long readString(String string) {
         return Long.valueOf(string);
@@ -19,4 +20,32 @@ public class LongConverter extends NumberConverter<Long> {
     protected Long readInteger(Integer integer) {
         return integer.longValue();
     }
-}
\ No newline at end of file
+
+    @Override
+    public Long read(CharSequence text, int start, int end) {
+        long value = parsePlainLong(text, start, end);
+        if (value == NOT_PLAIN) {
+            return readNotNull(text.subSequence(start, end).toString());
+        }
+        return value;
+    }
+
+    @Override
+    public void write(Long l, Appendable appendable) throws IOException {
+        appendLong(l, appendable);
+    }
+
+    @Override
+    public long readLong(Object object) {
+        if (object instanceof Long || object instanceof Integer) {
+            return ((Number) object).longValue();
+        }
+        long value = parsePlainLong(object);
+        return value == NOT_PLAIN ? readNotNull(object) : value;
+    }
+
+    @Override
+    public Object writeLong(long value) {
+        return value;
+    }
+}
@@ -2,16 +2,25 @@
 
 package com.snell.michael.cutlet.converters;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
 public abstract class NumberConverter<T> extends NullConverter<T> {
+    /**
+     * Most digits a number may have in plain form, before or after the point, so that a huge exponent (eg 1e1000000000)
+     * is rejected rather than expanded in memory. Ample for any double
+     */
+    private static final int MAX_PLAIN_DIGITS = 10000;
+
     @Override
     public final T readNotNull(Object object) {
-        if (object instanceof String) {
+        if (object instanceof RawNumber) {
+            return readRaw((RawNumber) object);
+        } else if (object instanceof String) {
             String s = (String) object;
             try {
                 if (s.toLowerCase().contains("e")) {
-                    return readString(new BigDecimal(s).toPlainString());
+                    return readString(toPlainString(new BigDecimal(s)));
                 } else {
                     return readString(s);
                 }
@@ -27,11 +36,42 @@ public abstract class NumberConverter<T> extends NullConverter<T> {
             }
         } else if (object instanceof Integer) {
             return readInteger((Integer) object);
+        } else if (object instanceof Number) {
+            // Long, BigInteger and BigDecimal, eg from binary formats
+            return readNotNull(object.toString());
         } else {
             throw new RuntimeException("Cannot convert class [" + object.getClass() + "] value [" + object + "] to a number");
         }
     }
 
+    /**
+     * Read a number from the text it was parsed from. Plain text is read as is, so eg 1.50 is a BigDecimal of scale
+     * 2; text with an exponent, or an integral value with a fraction of zero such as 3.0, is read in plain form
+     */
+    protected T readRaw(RawNumber number) {
+        String s = number.getText();
+        try {
+            if (number.isIntegral()) {
+                return readString(s);
+            }
+            try {
+                return readString(toPlainString(number.bigDecimalValue()));
+            } catch (NumberFormatException e) {
+                return readString(toPlainString(number.bigDecimalValue().stripTrailingZeros()));
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new RuntimeException("Cannot parse [" + s + "] into a number", e);
+        }
+    }
+
+    private static String toPlainString(BigDecimal value) {
+        long digits = Math.max((long) value.precision() - value.scale(), value.scale());
+        if (digits > MAX_PLAIN_DIGITS) {
+            throw new NumberFormatException("[" + value + "] has more than " + MAX_PLAIN_DIGITS + " digits in plain form");
+        }
+        return value.toPlainString();
+    }
+
     protected abstract T readString(String string);
 
     protected abstract T readDouble(Double dbl);
@@ -42,4 +82,70 @@ public abstract class NumberConverter<T> extends NullConverter<T> {
     public final Object writeNotNull(T t) {
         return t;
     }
+
+    /**
+     * Parse a value from the tree as a plain integer, as used by primitive converters
+     * @return The value, or NOT_PLAIN if it is not a string or raw number holding a plain integer
+     */
+    static long parsePlainLong(Object object) {
+        if (object instanceof RawNumber || object instanceof String) {
+            String s = object.toString();
+            return parsePlainLong(s, 0, s.length());
+        } else {
+            return NOT_PLAIN;
+        }
+    }
+
+    /**
+     * Returned by parsePlainLong for text that is not a plain integer
+     */
+    static final long NOT_PLAIN = Long.MIN_VALUE;
+
+    /**
+     * Parse a plain integer of up to 18 digits (so it cannot overflow), as used by text converters
+     * @return The value, or NOT_PLAIN if the text is anything else
+     */
+    static long parsePlainLong(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return NOT_PLAIN;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_PLAIN;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Append the decimal digits of a value without creating a String
+     */
+    static void appendLong(long value, Appendable appendable) throws IOException {
+        if (appendable instanceof StringBuilder) {
+            ((StringBuilder) appendable).append(value);
+            return;
+        }
+        // Digits taken from the negative value, as Long.MIN_VALUE has no positive
+        long n = value;
+        if (n < 0) {
+            appendable.append('-');
+        } else {
+            n = -n;
+        }
+        long divisor = 1;
+        while (n / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            appendable.append((char) ('0' - n / divisor % 10));
+        }
+    }
 }
\ No newline at end of file
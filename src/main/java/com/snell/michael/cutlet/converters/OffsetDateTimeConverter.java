@@ -0,0 +1,61 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+public class OffsetDateTimeConverter extends NullConverter<OffsetDateTime> implements TextConverter<OffsetDateTime> {
+    private static final DateTimeConverter FALLBACK = new DateTimeConverter();
+
+    @Override
+    public OffsetDateTime readNotNull(Object object) {
+        String s = object.toString();
+        return read(s, 0, s.length());
+    }
+
+    @Override
+    public OffsetDateTime read(CharSequence text, int start, int end) {
+        ISO8601.Parsed parsed = ISO8601.parseDateTime(text, start, end);
+        if (parsed == null) {
+            DateTime dateTime = FALLBACK.read(text, start, end);
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(dateTime.getZone().getOffset(dateTime) / 1000);
+            return OffsetDateTime.ofInstant(Instant.ofEpochMilli(dateTime.getMillis()), offset);
+        }
+        return OffsetDateTime.of(parsed.year, parsed.month, parsed.day, parsed.hour, parsed.minute, parsed.second, parsed.nanos,
+            ZoneOffset.ofTotalSeconds(parsed.offsetSeconds));
+    }
+
+    @Override
+    public Object writeNotNull(OffsetDateTime offsetDateTime) {
+        StringBuilder sb = new StringBuilder(35);
+        print(offsetDateTime, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void write(OffsetDateTime offsetDateTime, Appendable appendable) throws IOException {
+        if (appendable instanceof StringBuilder) {
+            print(offsetDateTime, (StringBuilder) appendable);
+        } else {
+            StringBuilder sb = new StringBuilder(35);
+            print(offsetDateTime, sb);
+            appendable.append(sb);
+        }
+    }
+
+    private static void print(OffsetDateTime offsetDateTime, StringBuilder sb) {
+        long epochSecond = offsetDateTime.toEpochSecond();
+        int offsetSeconds = offsetDateTime.getOffset().getTotalSeconds();
+        if (ISO8601.isPrintable(epochSecond, offsetSeconds)) {
+            ISO8601.printDateTime(sb, epochSecond, offsetDateTime.getNano(), offsetSeconds, false);
+        } else {
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME.formatTo(offsetDateTime, sb);
+        }
+    }
+}
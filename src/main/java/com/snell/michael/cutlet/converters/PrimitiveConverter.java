@@ -0,0 +1,39 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+/**
+ * Converters for primitive values, used by the primitive getters (eg getLongValue and getLongArray) and by microtypes
+ * wrapping a primitive, so values are read without boxing. Registered in a ConverterMap by primitive type, alongside
+ * the Converter for the boxed type, or by microtype class for microtypes that read their value differently
+ */
+public final class PrimitiveConverter {
+    private PrimitiveConverter() {}
+
+    public interface OfInt {
+        /**
+         * @param object Object - will not be null
+         */
+        int readInt(Object object);
+
+        Object writeInt(int value);
+    }
+
+    public interface OfLong {
+        /**
+         * @param object Object - will not be null
+         */
+        long readLong(Object object);
+
+        Object writeLong(long value);
+    }
+
+    public interface OfDouble {
+        /**
+         * @param object Object - will not be null
+         */
+        double readDouble(Object object);
+
+        Object writeDouble(double value);
+    }
+}
@@ -0,0 +1,196 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * A number held as the text it was parsed from, converted only when read. Number converters read the text directly,
+ * so eg a BigDecimal is created without rounding through a double. Written as json-lib writes the Integer or Double it
+ * would have parsed the text into (eg 1.50 as 1.5, 1e3 as 1000), and equal to any other number of the same value,
+ * whatever its text or type (eg 1.50 and 1.5, or 1 and Integer 1)
+ */
+public final class RawNumber extends Number {
+    private static final long serialVersionUID = 1L;
+
+    private final String text;
+
+    private RawNumber(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @param text Number in JSON syntax, eg -12.5E3
+     */
+    public static RawNumber valueOf(String text) {
+        if (!isValid(text)) {
+            throw new NumberFormatException("[" + text + "] is not a JSON number");
+        }
+        return new RawNumber(text);
+    }
+
+    /**
+     * @return True if text is a number in JSON syntax: an optional minus sign, an integer without leading zeros, then
+     * optionally a fraction and an exponent
+     */
+    public static boolean isValid(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        if (i < length && text.charAt(i) == '-') {
+            i++;
+        }
+        if (i < length && text.charAt(i) == '0') {
+            i++;
+        } else {
+            int start = i;
+            i = skipDigits(text, i);
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && text.charAt(i) == '.') {
+            int start = ++i;
+            i = skipDigits(text, i);
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                i++;
+            }
+            int start = i;
+            i = skipDigits(text, i);
+            if (i == start) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static int skipDigits(CharSequence text, int i) {
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return True if the number has neither a fraction nor an exponent
+     */
+    public boolean isIntegral() {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public BigDecimal bigDecimalValue() {
+        return new BigDecimal(text);
+    }
+
+    /**
+     * @return The value with any fraction discarded
+     * @throws ArithmeticException If the value is out of the range of an int
+     */
+    @Override
+    public int intValue() {
+        return Math.toIntExact(longValue());
+    }
+
+    /**
+     * @return The value with any fraction discarded
+     * @throws ArithmeticException If the value is out of the range of a long
+     */
+    @Override
+    public long longValue() {
+        if (isIntegral() && text.length() < 19) {
+            return Long.parseLong(text);
+        }
+        BigDecimal value = bigDecimalValue();
+        // Sized from precision and scale first, so that a huge exponent is never expanded
+        long digits = (long) value.precision() - value.scale();
+        if (digits <= 0) {
+            return 0;
+        } else if (digits > 19) {
+            throw new ArithmeticException("[" + text + "] is out of the range of a long");
+        }
+        return value.setScale(0, RoundingMode.DOWN).longValueExact();
+    }
+
+    @Override
+    public float floatValue() {
+        return Float.parseFloat(text);
+    }
+
+    @Override
+    public double doubleValue() {
+        return Double.parseDouble(text);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof RawNumber) {
+            return text.equals(((RawNumber) obj).text) || bigDecimalValue().compareTo(((RawNumber) obj).bigDecimalValue()) == 0;
+        } else if (obj instanceof Number) {
+            BigDecimal other = toBigDecimal((Number) obj);
+            return other != null && bigDecimalValue().compareTo(other) == 0;
+        } else {
+            return false;
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        } else if (number instanceof Double || number instanceof Float) {
+            double d = number.doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d) ? null : new BigDecimal(number.toString());
+        } else {
+            try {
+                return new BigDecimal(number.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Equal for raw numbers of the same value. Other numbers of the same value may be equal but have other hash codes
+     */
+    @Override
+    public int hashCode() {
+        return bigDecimalValue().stripTrailingZeros().hashCode();
+    }
+
+    /**
+     * @return The text of the number, as parsed
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return The number as json-lib would have parsed it: integers as written, and decimals as a Double would give
+     * them, unless a Double would lose precision. Zero is never negative
+     */
+    @Override
+    public String toString() {
+        if (isIntegral()) {
+            return text.equals("-0") ? "0" : text;
+        }
+        // Without the sign of a negative zero, as json-lib drops it
+        double d = Double.parseDouble(text) + 0.0;
+        BigDecimal value = bigDecimalValue();
+        if (!Double.isInfinite(d) && new BigDecimal(Double.toString(d)).compareTo(value) == 0) {
+            return Double.toString(d);
+        } else {
+            return value.toString();
+        }
+    }
+}
@@ -2,7 +2,9 @@
 
 package com.snell.michael.cutlet.converters;
 
-public class StringConverter extends NullConverter<String> {
+import java.io.IOException;
+
+public class StringConverter extends NullConverter<String> implements TextConverter<String> {
     @Override
     public String readNotNull(Object object) {
         if (object instanceof String) {
@@ -16,4 +18,14 @@ public class StringConverter extends NullConverter<String> {
     public Object writeNotNull(String string) {
         return string;
     }
+
+    @Override
+    public String read(CharSequence text, int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+
+    @Override
+    public void write(String string, Appendable appendable) throws IOException {
+        appendable.append(string);
+    }
 }
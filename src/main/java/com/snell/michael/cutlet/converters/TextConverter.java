@@ -0,0 +1,31 @@
+// Copyright (c) 2015 Michael Snell - see https://github.com/snellm/cutlet
+
+package com.snell.michael.cutlet.converters;
+
+import java.io.IOException;
+
+/**
+ * Optional extension of Converter for values with a text form, which can be read from a range of a character buffer
+ * and written to an Appendable without creating an intermediate String. Written by the streaming generators, which
+ * quote the text unless the value is a number or boolean. Read by ConverterMap.read(CharSequence, int, int, Class), for
+ * callers holding values in their own buffers; documents keep parsed values in their tree (numbers as RawNumbers) and
+ * convert them when read, through the Converter methods
+ * @param <T> Type
+ */
+public interface TextConverter<T> extends Converter<T> {
+    /**
+     * Parse a value from a range of characters
+     * @param text Characters - will not be null
+     * @param start Index of the first character of the value
+     * @param end Index after the last character of the value
+     * @return Converted value
+     */
+    T read(CharSequence text, int start, int end);
+
+    /**
+     * Write the text form of a value, unescaped
+     * @param t Value - will not be null
+     * @param appendable Destination
+     */
+    void write(T t, Appendable appendable) throws IOException;
+}
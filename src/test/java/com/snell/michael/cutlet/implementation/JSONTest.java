@@ -2,25 +2,59 @@
 
 package com.snell.michael.cutlet.implementation;
 
+import com.snell.michael.cutlet.BinaryFormat;
 import com.snell.michael.cutlet.ConverterMap;
+import com.snell.michael.cutlet.CutletCache;
+import com.snell.michael.cutlet.CutletIndex;
+import com.snell.michael.cutlet.CutletMetrics;
 import com.snell.michael.cutlet.CutletRuntimeException;
+import com.snell.michael.cutlet.CutletStore;
+import com.snell.michael.cutlet.Fingerprint;
 import com.snell.michael.cutlet.JSON;
+import com.snell.michael.cutlet.JSONGenerator;
+import com.snell.michael.cutlet.ParseOptions;
+import com.snell.michael.cutlet.SymbolTable;
 import com.snell.michael.cutlet.WriteStyle;
+import com.snell.michael.cutlet.XML;
 import com.snell.michael.cutlet.converters.Converter;
+import com.snell.michael.cutlet.converters.PrimitiveConverter;
+import com.snell.michael.cutlet.converters.TextConverter;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Currency;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
@@ -47,6 +81,18 @@ public class JSONTest {
         }
     }
 
+    public static class CentsMicrotype {
+        private final long value;
+
+        public CentsMicrotype(long value) {
+            this.value = value;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+
     @Test
     public void parseString() {
         JSON json = getPersonJSONCutlet();
@@ -76,6 +122,619 @@ public class JSONTest {
         assertEquals(usd, json.getCurrency("currency"));
     }
 
+    @Test
+    public void parseCache() throws IOException {
+        File file = File.createTempFile("cutlet", "json");
+        File other = File.createTempFile("cutlet", "json");
+        FileUtils.write(file, "{\"hello\": \"world\"}");
+        FileUtils.write(other, "{}");
+        CutletCache cache = new CutletCache(1);
+
+        JSON json = JSON.parse(file, cache);
+        json.withString("hello", "there");
+        assertEquals("world", JSON.parse(file, cache).getString("hello"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        FileUtils.write(file, "{\"hello\": \"changed\"}");
+        assertEquals("changed", JSON.parse(file, cache).getString("hello"));
+        assertEquals(2, cache.getMissCount());
+
+        JSON.parse(other, cache);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void store() {
+        CutletStore store = new CutletStore(2, 256);
+        for (int i = 0; i < 100; i++) {
+            store.put("product-" + i, JSON.parse("{\"id\": " + i + ", \"name\": \"Product " + i + "\", \"price\": 1.5, \"tags\": [\"a\", \"b\"]}"));
+        }
+        store.put("catalogue", XML.parse("<catalogue><product id=\"1\">Widget</product></catalogue>"));
+        assertEquals(101, store.size());
+        assertTrue(store.getCapacity() >= store.getBytes());
+
+        JSON product = store.getJSON("product-42");
+        assertTrue(product.isFrozen());
+        assertEquals(42, product.getIntValue("id"));
+        assertEquals(new BigDecimal("1.5"), product.getBigDecimal("price"));
+        assertEquals(newArrayList("a", "b"), product.getStringList("tags"));
+        assertSame(product, store.getJSON("product-42"));
+        assertEquals("Widget", store.getXML("catalogue").getString("product[@id='1']"));
+        assertNull(store.getJSON("missing"));
+
+        store.getJSON("product-1");
+        assertEquals(2, store.getViewCount());
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(1, store.getHitCount());
+        assertEquals(3, store.getMissCount());
+
+        try {
+            store.getJSON("catalogue");
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertEquals("Document [catalogue] is XML, not JSON", e.getMessage());
+        }
+
+        // Replaced and removed documents leave space behind until compacted
+        store.put("product-1", JSON.parse("{\"id\": -1}"));
+        assertEquals(-1, store.getJSON("product-1").getIntValue("id"));
+        for (int i = 2; i < 100; i++) {
+            assertTrue(store.remove("product-" + i));
+        }
+        long capacity = store.getCapacity();
+        store.compact();
+        assertTrue(store.getCapacity() < capacity);
+        assertEquals(3, store.size());
+        assertEquals(0, store.getJSON("product-0").getIntValue("id"));
+        assertEquals(-1, store.getJSON("product-1").getIntValue("id"));
+        assertEquals("Widget", store.getXML("catalogue").getString("product"));
+
+        // Stored as it is, whitespace between elements and all
+        XML spaced = XML.parse("<note>\n  <text>kept</text>\n</note>");
+        store.put("note", spaced);
+        assertFalse(spaced.isFrozen());
+        assertEquals(spaced.write(COMPACT), store.getXML("note").write(COMPACT));
+        assertEquals(2, store.getXML("note").count("text()"));
+        assertEquals("kept", store.getXML("note").getString("text"));
+    }
+
+    @Test
+    public void internedParse() {
+        SymbolTable symbols = new SymbolTable(100);
+        ParseOptions options = new ParseOptions().withInternedKeys().withInternedValues(8).withSymbolTable(symbols);
+        String text = "{\"name\": \"a\", \"items\": [{\"name\": \"b\"}, {\"name\": \"a\"}], \"long\": \"not interned\"}";
+        JSON first = JSON.parse(text, options);
+        JSON second = JSON.parse(text, options);
+
+        assertSame(first.getString("name"), second.getList("items").get(1).getString("name"));
+        assertSame(first.getChildren().iterator().next(), second.getChildren().iterator().next());
+        assertNotSame(first.getString("long"), second.getString("long"));
+        assertEquals(JSON.parse(text).write(COMPACT), first.write(COMPACT));
+        assertEquals(5, symbols.size());
+    }
+
+    @Test
+    public void writeChannelsAndBuffers() throws IOException {
+        JSON json = getPersonJSONCutlet().withString("person/unicode", "\u00e9t\u00e9 \u2603");
+        byte[] expected = json.write(PRETTY).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        json.write(Channels.newChannel(out), PRETTY);
+        assertArrayEquals(expected, out.toByteArray());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length);
+        json.write(buffer, PRETTY);
+        assertEquals(expected.length, buffer.position());
+
+        Path path = File.createTempFile("cutlet", "json").toPath();
+        json.write(path, PRETTY);
+        assertArrayEquals(expected, Files.readAllBytes(path));
+
+        // Streams and Files are written as UTF-8 too, whatever the platform charset
+        out = new ByteArrayOutputStream();
+        json.write(out, PRETTY);
+        assertArrayEquals(expected, out.toByteArray());
+        File file = File.createTempFile("cutlet", "json");
+        json.write(file, PRETTY);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+
+        try {
+            json.write(ByteBuffer.allocate(10), PRETTY);
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "Buffer too small");
+        }
+    }
+
+    @Test
+    public void metrics() {
+        final List<String> events = new ArrayList<>();
+        CutletMetrics metrics = new CutletMetrics() {
+            @Override
+            public void parsed(String format, long nanos, long length, int nodes) {
+                events.add("parsed " + format + " " + length + " " + nodes);
+            }
+
+            @Override
+            public void evaluated(String xpath, long nanos, int results) {
+                events.add("evaluated " + xpath + " " + results);
+            }
+
+            @Override
+            public void converted(Class<?> clazz, long nanos, boolean failed) {
+                events.add("converted " + clazz.getSimpleName() + (failed ? " failed" : ""));
+            }
+
+            @Override
+            public void written(String format, long nanos, int length) {
+                events.add("written " + format + " " + length);
+            }
+        };
+
+        String string = "{\"a\": {\"b\": [1, 2], \"c\": \"x\"}}";
+        JSON json = JSON.parse(string, new ParseOptions().withMetrics(metrics));
+        assertEquals(newArrayList("parsed json " + string.length() + " 6"), events);
+
+        events.clear();
+        JSON a = json.withMetrics(metrics).get("a");
+        assertEquals(newArrayList(1, 2), a.getIntegerList("b"));
+        try {
+            a.getInteger("c");
+            fail();
+        } catch (RuntimeException e) {
+            // Expected - not a number
+        }
+        assertFalse(a.exists("d"));
+        assertEquals(newArrayList("evaluated a 1", "converted Integer", "converted Integer", "evaluated b 2",
+                "evaluated c 1", "converted Integer failed", "evaluated d 0"), events);
+
+        events.clear();
+        String text = json.write(COMPACT);
+        assertEquals(newArrayList("written json " + text.length()), events);
+
+        events.clear();
+        JSON.parse("{}").write(COMPACT);
+        getPersonJSONCutlet().getString("person/name");
+        assertTrue(events.isEmpty());
+
+        CutletMetrics.setGlobal(metrics);
+        try {
+            assertNull(JSON.parse("{}").getString("name"));
+        } finally {
+            CutletMetrics.setGlobal(CutletMetrics.NONE);
+        }
+        assertEquals(newArrayList("parsed json 2 1", "evaluated name 0", "converted String"), events);
+    }
+
+    @Test
+    public void index() {
+        JSON json = getPersonInPersonJSON();
+        CutletIndex<JSON> index = json.index("phoneNumbers", "type");
+        assertEquals("646 555-4567", index.get("fax").getString("number"));
+
+        json.withString("phoneNumbers[2]/type", "work");
+        assertNull(index.get("fax"));
+        assertEquals("646 555-4567", index.get("work").getString("number"));
+
+        JSON orders = JSON.parse("{\"orders\": [{\"customerId\": 7, \"total\": 10}, {\"customerId\": 8, \"total\": 20}, {\"customerId\": 7, \"total\": 30}]}");
+        CutletIndex<JSON> byCustomer = orders.index("orders", "customerId");
+        assertEquals(2, byCustomer.size());
+        assertEquals(2, byCustomer.getAll(7).size());
+        assertEquals(Integer.valueOf(30), byCustomer.getAll(7).get(1).getInteger("total"));
+    }
+
+    @Test
+    public void indexSharedBetweenThreads() throws Exception {
+        StringBuilder sb = new StringBuilder("{\"orders\": [");
+        for (int i = 0; i < 200; i++) {
+            sb.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i).append(", \"customerId\": ").append(i % 10).append("}");
+        }
+        JSON orders = JSON.parse(sb.append("]}").toString()).freeze();
+        final CutletIndex<JSON> index = orders.index("orders", "customerId");
+
+        // The first lookups race to build the index, and every thread must see it whole
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final int customerId = i % 10;
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return index.size() * 100 + index.getAll(customerId).size();
+                }
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(Integer.valueOf(10 * 100 + 20), future.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void groupByAndToMap() {
+        JSON orders = JSON.parse("{\"orders\": [{\"id\": \"a\", \"customerId\": 7, \"total\": 10}, {\"id\": \"b\", \"customerId\": 8, \"total\": 20.5}, {\"id\": \"c\", \"customerId\": 7, \"total\": 30}]}");
+
+        Map<Long, List<JSON>> byCustomer = orders.groupBy("orders", "customerId", Long.class);
+        assertEquals(newArrayList(7L, 8L), newArrayList(byCustomer.keySet()));
+        assertEquals("c", byCustomer.get(7L).get(1).getString("id"));
+
+        Map<String, BigDecimal> totals = orders.toMap("orders", "id", "total", String.class, BigDecimal.class);
+        assertEquals(new BigDecimal("20.5"), totals.get("b"));
+        assertEquals(3, totals.size());
+
+        Map<String, String> cities = getPersonJSONCutlet().toMap("person", "firstName", "address/city", String.class, String.class);
+        assertEquals("New York", cities.get("John"));
+    }
+
+    @Test
+    public void aggregates() {
+        JSON json = getPersonInPersonJSON();
+        assertEquals(4, json.count("favouriteNumbers"));
+        assertEquals(1 + 3.141592 - 42 + 1E7, json.sum("favouriteNumbers"), 0);
+        assertEquals(-42, json.min("favouriteNumbers"), 0);
+        assertEquals(1E7, json.max("favouriteNumbers"), 0);
+        assertEquals((1 + 3.141592 - 42 + 1E7) / 4, json.avg("favouriteNumbers"), 1E-9);
+        assertEquals(new BigDecimal("9999962.141592"), json.sumBigDecimal("favouriteNumbers"));
+        assertEquals(new BigDecimal("-42"), json.minBigDecimal("favouriteNumbers"));
+        assertEquals(0, new BigDecimal("1E7").compareTo(json.maxBigDecimal("favouriteNumbers")));
+
+        JSON lines = JSON.parse("{\"lines\": [{\"amount\": 0.1}, {\"amount\": 0.2}, {\"amount\": null}, {}]}");
+        assertEquals(4, lines.count("lines"));
+        assertEquals(new BigDecimal("0.3"), lines.sumBigDecimal("lines/amount"));
+        assertEquals(0.15, lines.avg("lines/amount"), 1E-9);
+
+        assertEquals(0, json.count("missing"));
+        assertEquals(0, json.sum("missing"), 0);
+        assertTrue(Double.isNaN(json.max("missing")));
+        assertNull(json.minBigDecimal("missing"));
+
+        try {
+            json.sum("favouriteColours");
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "Value [green] at [favouriteColours] is not a number");
+        }
+    }
+
+    @Test
+    public void builder() {
+        JSON json = JSON.builder()
+                .beginObject()
+                    .field("name", "John")
+                    .field("born", new LocalDate(1969, 2, 28))
+                    .field("note", "[not, an, array]")
+                    .field("missing", null)
+                    .beginObject("address").field("city", "New York").endObject()
+                    .beginArray("numbers").element(1).element(new BigDecimal("2.5")).beginObject().field("a", true).endObject().endArray()
+                .endObject()
+                .build();
+
+        assertEquals("{\"name\":\"John\",\"born\":\"1969-02-28\",\"note\":\"[not, an, array]\",\"missing\":null,\"address\":{\"city\":\"New York\"},\"numbers\":[1,2.5,{\"a\":\"true\"}]}", json.write(COMPACT));
+        assertEquals(new LocalDate(1969, 2, 28), json.getLocalDate("born"));
+        assertEquals("New York", json.getString("address/city"));
+        json.withString("address/state", "NY");
+        assertEquals("NY", json.getString("address/state"));
+
+        try {
+            JSON.builder().beginObject().element(1);
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "Fields of an object must be named");
+        }
+        try {
+            JSON.builder().beginObject().beginArray("a").build();
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "2 object(s) or array(s) have not been ended");
+        }
+    }
+
+    @Test
+    public void generator() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JSONGenerator generator = JSON.writer(out)) {
+            generator.beginObject()
+                    .field("name", "Jos\u00e9 \"Pepe\"")
+                    .field("born", new LocalDate(1969, 2, 28))
+                    .list("numbers", newArrayList(1, 2, 3))
+                    .beginArray("rows");
+            for (int i = 0; i < 2; i++) {
+                generator.element(JSON.parse("{\"id\": " + i + ", \"tags\": [\"a\", null]}"));
+            }
+            generator.endArray()
+                    .field("empty", null)
+                    .endObject();
+        }
+
+        String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("{\"name\":\"Jos\u00e9 \\\"Pepe\\\"\",\"born\":\"1969-02-28\",\"numbers\":[1,2,3],\"rows\":[{\"id\":0,\"tags\":[\"a\",null]},{\"id\":1,\"tags\":[\"a\",null]}],\"empty\":null}", text);
+        JSON json = JSON.parse(text);
+        assertEquals("Jos\u00e9 \"Pepe\"", json.getString("name"));
+        assertEquals(Integer.valueOf(1), json.getList("rows").get(1).getInteger("id"));
+
+        try {
+            JSON.writer(new ByteArrayOutputStream()).beginArray().endObject();
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "Cannot end object");
+        }
+
+        // Closing ends whatever is still open, as XMLGenerator does
+        ByteArrayOutputStream early = new ByteArrayOutputStream();
+        JSON.writer(early).beginObject().beginArray("a").beginObject().field("b", 1).close();
+        assertEquals("{\"a\":[{\"b\":1}]}", new String(early.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void generatorCloseEndsOpenContainers() {
+        // A cursor that fails part way through a row still leaves valid JSON holding what was written
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JSONGenerator generator = JSON.writer(out)) {
+            generator.beginObject().beginArray("rows");
+            for (int i = 0; i < 3; i++) {
+                generator.beginObject().field("id", i);
+                if (i == 1) {
+                    throw new IllegalStateException("cursor failed");
+                }
+                generator.endObject();
+            }
+        } catch (IllegalStateException e) {
+            assertEquals("cursor failed", e.getMessage());
+        }
+        String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("{\"rows\":[{\"id\":0},{\"id\":1}]}", text);
+        assertEquals(2, JSON.parse(text).count("rows"));
+
+        // Nothing is added when nothing is open, or by closing again
+        out = new ByteArrayOutputStream();
+        JSON.writer(out).close();
+        assertEquals(0, out.size());
+        out = new ByteArrayOutputStream();
+        JSONGenerator generator = JSON.writer(out).beginArray().element(1).endArray();
+        generator.close();
+        generator.close();
+        assertEquals("[1]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void textConverters() {
+        ConverterMap converterMap = ConverterMap.createWithDefaults().register(StateMicrotype.class, new TextConverter<StateMicrotype>() {
+            @Override
+            public StateMicrotype read(CharSequence text, int start, int end) {
+                return new StateMicrotype("[" + text.subSequence(start, end) + "]");
+            }
+
+            @Override
+            public void write(StateMicrotype state, Appendable appendable) throws IOException {
+                appendable.append(state.getValue());
+            }
+
+            @Override
+            public StateMicrotype read(Object object) {
+                return new StateMicrotype(object.toString());
+            }
+
+            @Override
+            public Object write(StateMicrotype state) {
+                return state.getValue();
+            }
+        });
+
+        // Read from part of a buffer
+        StringBuilder buffer = new StringBuilder("id=-42;min=-9223372036854775808;at=2012-08-07T07:47:46.5+01:00;state=NY;price=1.50");
+        assertEquals(Integer.valueOf(-42), converterMap.read(buffer, 3, 6, Integer.class));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), converterMap.read(buffer, 11, 31, Long.class));
+        assertEquals(Instant.parse("2012-08-07T06:47:46.5Z"), converterMap.read(buffer, 35, 62, Instant.class));
+        assertEquals(new DateTime(2012, 8, 7, 7, 47, 46, 500, DateTimeZone.forOffsetHours(1)), converterMap.read(buffer, 35, 62, DateTime.class));
+        assertEquals("[NY]", converterMap.read(buffer, 69, 71, StateMicrotype.class).getValue());
+        assertEquals(new BigDecimal("1.50"), converterMap.read(buffer, 78, 82, BigDecimal.class));
+
+        // Written straight to the output, as the tree would write them
+        StateMicrotype state = new StateMicrotype("a \"quoted\" </tag>\n\u0001");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JSONGenerator generator = JSON.writer(out).withConverterMap(converterMap)) {
+            generator.beginObject()
+                    .field("state", state)
+                    .field("min", Long.MIN_VALUE)
+                    .field("int", Integer.MIN_VALUE)
+                    .field("at", new DateTime(2012, 8, 7, 7, 47, 46, UTC))
+                    .endObject();
+        }
+        JSON expected = JSON.create().withConverterMap(converterMap)
+            .with("state", state)
+            .withLong("min", Long.MIN_VALUE)
+            .withInteger("int", Integer.MIN_VALUE)
+            .withDateTime("at", new DateTime(2012, 8, 7, 7, 47, 46, UTC));
+        assertEquals(expected.write(COMPACT), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void primitives() {
+        JSON json = JSON.parse("{\"id\": 42, \"big\": 9007199254740993, \"price\": 1.25, \"values\": [1, 2, 3], \"missing\": null, \"gaps\": [1, null]}");
+        assertEquals(42, json.getIntValue("id"));
+        assertEquals(9007199254740993L, json.getLongValue("big"));
+        assertEquals(1.25, json.getDoubleValue("price"), 0);
+        assertArrayEquals(new int[] {1, 2, 3}, json.getIntArray("values"));
+        assertArrayEquals(new long[] {1, 2, 3}, json.getLongArray("values"));
+        assertArrayEquals(new double[] {1, 2, 3}, json.getDoubleArray("values"), 0);
+        assertEquals(0, json.getIntArray("none").length);
+
+        // Grown past the initial capacity as values are read
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            many.add(Integer.toString(i));
+        }
+        JSON longer = JSON.parse("{\"values\": [" + StringUtils.join(many, ", ") + "]}");
+        int[] ints = longer.getIntArray("values");
+        assertEquals(100, ints.length);
+        assertEquals(99, ints[99]);
+        assertEquals(99, longer.getLongArray("values")[99]);
+        assertEquals(99, longer.getDoubleArray("values")[99], 0);
+
+        json.withIntValue("a", -7).withLongValue("b", Long.MAX_VALUE).withDoubleValue("c", 0.5);
+        assertEquals(Integer.valueOf(-7), json.getInteger("a"));
+        assertEquals(Long.MAX_VALUE, json.getLongValue("b"));
+        assertEquals(0.5, json.getDoubleValue("c"), 0);
+
+        try {
+            json.getIntValue("missing");
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertEquals("No value at [missing]", e.getMessage());
+        }
+        try {
+            json.getLongArray("gaps");
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertEquals("Null value at [gaps]", e.getMessage());
+        }
+
+        // Microtypes wrapping a primitive, here with a converter reading amounts as a whole number of cents
+        ConverterMap converterMap = ConverterMap.createWithDefaults().registerPrimitive(CentsMicrotype.class, new PrimitiveConverter.OfLong() {
+            @Override
+            public long readLong(Object object) {
+                return new BigDecimal(object.toString()).movePointRight(2).longValueExact();
+            }
+
+            @Override
+            public Object writeLong(long value) {
+                return BigDecimal.valueOf(value, 2);
+            }
+        });
+        JSON amounts = JSON.parse("{\"price\": 12.34, \"quantity\": 3}").withConverterMap(converterMap);
+        assertEquals(1234L, amounts.get("price", CentsMicrotype.class).getValue());
+        assertNull(amounts.get("missing", CentsMicrotype.class));
+        amounts.with("total", new CentsMicrotype(5));
+        assertEquals(new BigDecimal("0.05"), amounts.getBigDecimal("total"));
+
+        // Other longs still use the default converter
+        assertEquals(3L, amounts.getLongValue("quantity"));
+        assertArrayEquals(new long[] {3}, amounts.getLongArray("quantity"));
+        amounts.withLongValue("count", 7);
+        assertEquals("7", amounts.getString("count"));
+
+        XML xml = XML.parse("<a><id>42</id><v>1</v><v>2</v></a>");
+        assertEquals(42, xml.getIntValue("id"));
+        assertArrayEquals(new long[] {1, 2}, xml.getLongArray("v"));
+    }
+
+    @Test
+    public void attachAndMoveList() {
+        JSON part = JSON.parse("{\"a\": {\"x\": 1}}");
+        JSON json = JSON.create().attach("parts/first", part.get("a"));
+        assertEquals("{\"parts\":{\"first\":{\"x\":1}}}", json.write(COMPACT));
+
+        // Shared without copying, but changes to either side do not affect the other
+        json.withInteger("parts/first/x", 2);
+        part.withInteger("a/x", 3);
+        assertEquals(Integer.valueOf(2), json.getInteger("parts/first/x"));
+        assertEquals(Integer.valueOf(3), part.getInteger("a/x"));
+
+        List<JSON> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rows.add(JSON.parse("{\"id\": " + i + "}"));
+        }
+        json.get("parts").moveList("rows", rows);
+        assertEquals(3, json.count("parts/rows"));
+        assertEquals(Integer.valueOf(2), json.getList("parts/rows").get(2).getInteger("id"));
+        rows.get(0).withInteger("id", 10);
+        assertEquals(Integer.valueOf(0), json.getList("parts/rows").get(0).getInteger("id"));
+        json.getList("parts/rows").get(1).withInteger("id", 11);
+        assertEquals(Integer.valueOf(1), rows.get(1).getInteger("id"));
+
+        JSON frozen = JSON.parse("{\"b\": true}").freeze();
+        json.attach("frozen", frozen);
+        json.withBoolean("frozen/b", false);
+        assertEquals(Boolean.TRUE, frozen.getBoolean("b"));
+
+        // Nodes the source already owned after a snapshot are shared once attached
+        JSON source = JSON.parse("{\"a\": {\"b\": \"1\"}}");
+        source.snapshot();
+        source.withString("a/c", "x");
+        JSON target = JSON.create().attach("x", source.get("a"));
+        source.withString("a/b", "changed");
+        assertEquals("{\"x\":{\"b\":\"1\",\"c\":\"x\"}}", target.write(COMPACT));
+        target.withString("x/c", "y");
+        assertEquals("{\"a\":{\"b\":\"changed\",\"c\":\"x\"}}", source.write(COMPACT));
+
+        // As are subtrees attached elsewhere in the same document
+        JSON same = JSON.parse("{\"a\": {\"b\": \"1\"}}");
+        same.snapshot();
+        same.withString("a/c", "x");
+        same.attach("copy", same.get("a"));
+        same.withString("a/b", "changed");
+        assertEquals("1", same.getString("copy/b"));
+        same.withString("copy/c", "y");
+        assertEquals("x", same.getString("a/c"));
+    }
+
+    @Test
+    public void attachThenMutateSource() {
+        JSON source = getPersonJSONCutlet();
+        JSON target = JSON.create().attach("copy", source.get("person/address"));
+
+        source.withString("person/address/city", "Boston");
+        source.remove("person/address/state");
+        source.withString("person/address/extra/line", "Flat 1");
+        assertEquals("New York", target.getString("copy/city"));
+        assertEquals("NY", target.getString("copy/state"));
+        assertFalse(target.exists("copy/extra"));
+        assertEquals("Boston", source.getString("person/address/city"));
+    }
+
+    @Test
+    public void attachThenMutateTarget() {
+        JSON source = getPersonJSONCutlet();
+        JSON target = JSON.create().attach("copy", source.get("person/address"));
+
+        target.withString("copy/city", "Boston");
+        target.remove("copy/state");
+        target.withString("copy/extra/line", "Flat 1");
+        assertEquals("New York", source.getString("person/address/city"));
+        assertEquals("NY", source.getString("person/address/state"));
+        assertFalse(source.exists("person/address/extra"));
+        assertEquals("Boston", target.getString("copy/city"));
+
+        // Attached again, the source is shared as it now is
+        JSON again = JSON.create().attach("copy", source.get("person/address"));
+        assertEquals("New York", again.getString("copy/city"));
+    }
+
+    @Test
+    public void parseLimits() {
+        String string = "{\"a\": {\"b\": [1, 2, 3]}, \"c\": \"long string\"}";
+        assertEquals(Integer.valueOf(3), JSON.parse(string, new ParseOptions().withMaxDepth(3).withMaxNodes(7).withMaxStringLength(13)).getInteger("a/b[3]"));
+
+        assertParseLimit(string, new ParseOptions().withMaxBytes(10), "input size [" + string.length() + "] greater than maximum [10]");
+        assertParseLimit(string, new ParseOptions().withMaxDepth(2), "nesting depth [3] greater than maximum [2]");
+        assertParseLimit(string, new ParseOptions().withMaxNodes(6), "node count [7] greater than maximum [6]");
+        assertParseLimit(string, new ParseOptions().withMaxStringLength(12), "string length [13] greater than maximum [12]");
+
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            deep.append('[');
+        }
+        assertParseLimit(deep.toString(), new ParseOptions().withMaxDepth(100), "nesting depth [101]");
+
+        try {
+            JSON.parse(new ByteArrayInputStream(new byte[100000]), new ParseOptions().withMaxBytes(1000));
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "greater than maximum [1000]");
+        }
+    }
+
+    private static void assertParseLimit(String string, ParseOptions options, String message) {
+        try {
+            JSON.parse(string, options);
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), message);
+        }
+    }
+
     @Test
     public void errorHandling() {
         JSON json = getPersonInPersonJSON();
@@ -187,6 +846,48 @@ public class JSONTest {
         assertEquals(now.toString(ISODateTimeFormat.dateTime()), json.getString("lastModified"));
     }
 
+    @Test
+    public void isoDateTimes() {
+        JSON json = JSON.create();
+
+        // Common layouts are parsed directly, anything else by Joda, with the same results
+        DateTimeFormatter parser = ISODateTimeFormat.dateTimeParser().withOffsetParsed();
+        for (String s : newArrayList("2012-08-07T07:47:46Z", "2012-08-07T07:47:46.123+05:30", "2000-02-29T23:59:59.9-08:00",
+                "1969-12-31T23:59:59.123456789Z", "2012-08-07T07:47:46+00:00", "2012-08-07", "2012-08-07T07:47", "2012-W32-2T07:47:46Z")) {
+            json.withString("t", s);
+            assertEquals(s, parser.parseDateTime(s), json.getDateTime("t"));
+            assertEquals(s, parser.parseDateTime(s).getMillis(), json.get("t", Instant.class).toEpochMilli());
+        }
+        for (String s : newArrayList("2012-02-30T07:47:46Z", "2012-08-07T24:00:01Z", "2012-13-07")) {
+            try {
+                json.withString("t", s).getDateTime("t");
+                fail(s);
+            } catch (IllegalArgumentException e) {
+                // Expected - rejected by Joda
+            }
+        }
+        assertEquals(new LocalDate(2000, 2, 29), json.withString("d", "2000-02-29").getLocalDate("d"));
+        assertEquals(new LocalDate(2012, 8, 1), json.withString("d", "2012-08").getLocalDate("d"));
+
+        // Written as Joda would
+        for (DateTimeZone zone : newArrayList(UTC, DateTimeZone.forID("America/New_York"), DateTimeZone.forOffsetHoursMinutes(5, 45))) {
+            DateTime dateTime = new DateTime(1960, 3, 4, 5, 6, 7, 8, zone);
+            assertEquals(dateTime.toString(ISODateTimeFormat.dateTime()), json.withDateTime("t", dateTime).getString("t"));
+        }
+        assertEquals("0099-01-02", json.withLocalDate("d", new LocalDate(99, 1, 2)).getString("d"));
+
+        // java.time
+        assertEquals(java.time.LocalDate.of(2000, 2, 29), json.withString("d", "2000-02-29").get("d", java.time.LocalDate.class));
+        assertEquals("2015-04-29", json.with("d", java.time.LocalDate.of(2015, 4, 29)).getString("d"));
+        assertEquals(Instant.parse("1969-12-31T23:59:59.123456789Z"), json.withString("t", "1969-12-31T23:59:59.123456789Z").get("t", Instant.class));
+        assertEquals("2012-08-07T02:17:46.120Z", json.with("t", Instant.parse("2012-08-07T02:17:46.12Z")).getString("t"));
+        assertEquals("2012-08-07T02:17:46Z", json.with("t", Instant.parse("2012-08-07T02:17:46Z")).getString("t"));
+        OffsetDateTime offsetDateTime = OffsetDateTime.of(2012, 8, 7, 7, 47, 46, 1000, ZoneOffset.ofHoursMinutes(5, 30));
+        assertEquals("2012-08-07T07:47:46.000001+05:30", json.with("t", offsetDateTime).getString("t"));
+        assertEquals(offsetDateTime, json.get("t", OffsetDateTime.class));
+        assertEquals(OffsetDateTime.of(2012, 8, 7, 7, 47, 0, 0, ZoneOffset.UTC), json.withString("t", "2012-08-07T07:47Z").get("t", OffsetDateTime.class));
+    }
+
     @Test
     public void decimals() {
         JSON json = getPersonInPersonJSON();
@@ -212,6 +913,69 @@ public class JSONTest {
         }
     }
 
+    @Test
+    public void rawNumbers() {
+        JSON json = JSON.parse("{\"price\": 0.1234567890123456789, \"amount\": 1.50, \"count\": 3.0, " +
+            "\"big\": 12345678901234567890, \"small\": -2.5E-3, \"items\": [{\"id\": 1, \"price\": 0.5}, {\"id\": 2, \"price\": 7}]}");
+
+        // Read straight from the parsed text, without rounding through a double
+        assertEquals(new BigDecimal("0.1234567890123456789"), json.getBigDecimal("price"));
+        assertEquals(new BigDecimal("1.50"), json.getBigDecimal("amount"));
+        assertEquals(new BigDecimal("-0.0025"), json.getBigDecimal("small"));
+        assertEquals(Integer.valueOf(3), json.getInteger("count"));
+        assertEquals(new BigInteger("12345678901234567890"), json.getBigInteger("big"));
+        assertEquals(Double.valueOf(-0.0025), json.getDouble("small"));
+        try {
+            json.getLong("amount");
+            fail();
+        } catch (RuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "Cannot parse [1.50]");
+        }
+
+        // Compared and aggregated as numbers
+        assertEquals(Integer.valueOf(2), json.getInteger("items[price > 1]/id"));
+        assertEquals(new BigDecimal("7.5"), json.sumBigDecimal("items/price"));
+        assertEquals(JSON.parse("{\"a\": 1.5}"), JSON.parse("{\"a\": 1.50}"));
+
+        // Written as parsed
+        TestUtil.assertContains(json.write(COMPACT), "\"price\":0.1234567890123456789");
+        TestUtil.assertContains(json.write(COMPACT), "\"big\":12345678901234567890");
+
+        // Rendered as json-lib renders the Integers and Doubles it would have parsed
+        assertEquals("{\"a\":1.5,\"b\":1000,\"c\":0,\"d\":0,\"e\":3,\"f\":1.0E7,\"g\":-0.0025}",
+            JSON.parse("{\"a\": 1.50, \"b\": 1e3, \"c\": -0, \"d\": -0.0, \"e\": 3.0, \"f\": 1E7, \"g\": -2.5E-3}").write(COMPACT));
+        assertEquals("1.5", json.getString("amount"));
+        assertEquals("1000.0", JSON.parse("{\"b\": 1e3}").getString("b"));
+
+        // Equal to documents built with the same values, either way round
+        JSON built = JSON.create().withInteger("a", 1).withDouble("b", 1.5).withLong("c", 12345678901L).withBigDecimal("d", new BigDecimal("0.25"));
+        JSON parsed = JSON.parse("{\"a\": 1, \"b\": 1.50, \"c\": 12345678901, \"d\": 0.250}");
+        assertEquals(built, parsed);
+        assertEquals(parsed, built);
+        assertNotEquals(parsed, JSON.create().withInteger("a", 1).withDouble("b", 1.25).withLong("c", 12345678901L).withBigDecimal("d", new BigDecimal("0.25")));
+        assertEquals(JSON.create().withDouble("b", 1.5).hashCode(), JSON.parse("{\"b\": 1.50}").hashCode());
+
+        // Huge exponents are rejected rather than expanded
+        JSON huge = JSON.parse("{\"n\": 1e1000000000, \"m\": 1e-1000000000, \"s\": \"1e1000000000\"}");
+        for (String xpath : newArrayList("n", "m", "s")) {
+            try {
+                huge.getBigDecimal(xpath);
+                fail();
+            } catch (RuntimeException e) {
+                TestUtil.assertContains(e.getMessage(), "Cannot parse [1e");
+            }
+        }
+        try {
+            huge.getLong("n");
+            fail();
+        } catch (RuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "Cannot parse [1e1000000000]");
+        }
+        assertEquals(Double.valueOf(Double.POSITIVE_INFINITY), huge.getDouble("n"));
+        assertNotNull(huge.fingerprint());
+        assertEquals(JSON.parse("{\"a\": 1e7}").fingerprint(), JSON.parse("{\"a\": 10000000}").fingerprint());
+    }
+
     @Test
     public void integers() {
         JSON json = getPersonInPersonJSON();
@@ -368,6 +1132,385 @@ public class JSONTest {
         assertEquals("{}", json.write(COMPACT));
     }
 
+    @Test
+    public void freeze() throws Exception {
+        JSON json = getPersonJSONCutlet();
+        final JSON frozen = json.freeze();
+        json.withString("person/firstName", "Jane");
+
+        assertTrue(frozen.isFrozen());
+        assertFalse(json.isFrozen());
+        assertEquals("John", frozen.getString("person/firstName"));
+        assertEquals("New York", frozen.get("person").get("address").getString("city"));
+        assertEquals(2, frozen.getList("person/phoneNumbers").size());
+
+        try {
+            frozen.withString("person/firstName", "Jane");
+            fail();
+        } catch (CutletRuntimeException e) {
+            // Expected
+        }
+
+        try {
+            frozen.get("person").remove("address");
+            fail();
+        } catch (CutletRuntimeException e) {
+            // Expected
+        }
+
+        try {
+            frozen.get("person").getChildren().remove("address");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals("New York", frozen.getString("person/address/city"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return frozen.getString("person/phoneNumbers[type = 'fax']/number");
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("646 555-4567", future.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void snapshots() {
+        JSON base = getPersonJSONCutlet();
+        JSON address = base.get("person/address");
+
+        JSON snapshot = base.snapshot();
+        snapshot.withString("person/address/city", "Boston");
+        snapshot.withString("person/phoneNumbers[2]/type", "work");
+        snapshot.remove("person/children/Albert");
+        snapshot.add("person/pets").withString("dog", "Rex");
+
+        assertEquals("New York", base.getString("person/address/city"));
+        assertEquals("fax", base.getString("person/phoneNumbers[2]/type"));
+        assertTrue(base.exists("person/children/Albert"));
+        assertFalse(base.exists("person/pets"));
+
+        assertEquals("Boston", snapshot.getString("person/address/city"));
+        assertEquals("work", snapshot.getString("person/phoneNumbers[2]/type"));
+        assertFalse(snapshot.exists("person/children/Albert"));
+        assertEquals("Rex", snapshot.getString("person/pets/dog"));
+
+        // Cutlets taken before the snapshot still read and modify their own document
+        base.withString("person/address/city", "Boston");
+        assertEquals("Boston", address.getString("city"));
+        address.withString("state", "MA");
+        assertEquals("MA", base.getString("person/address/state"));
+        assertEquals("MA", address.getString("state"));
+        assertEquals("NY", snapshot.getString("person/address/state"));
+
+        // Snapshots of frozen documents are modifiable
+        JSON frozen = base.freeze();
+        JSON overlay = frozen.snapshot().withString("person/firstName", "Jane");
+        base.withString("person/firstName", "Jim");
+        assertEquals("John", frozen.getString("person/firstName"));
+        assertEquals("Jane", overlay.getString("person/firstName"));
+        assertEquals("Jim", base.getString("person/firstName"));
+    }
+
+    @Test
+    public void snapshotsOfFrozenConcurrently() throws Exception {
+        final JSON frozen = getPersonJSONCutlet().freeze();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String name = "Name" + i;
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return frozen.snapshot().withString("person/address/city", name).getString("person/address/city");
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("Name" + i, futures.get(i).get());
+        }
+        executor.shutdown();
+        assertEquals("New York", frozen.getString("person/address/city"));
+    }
+
+    @Test
+    public void snapshotsReleaseRemovedNodes() throws Exception {
+        JSON json = JSON.parse("{\"a\": {\"b\": {\"c\": 1}, \"d\": [{\"e\": 1}]}}");
+        json.snapshot();
+        json.withInteger("a/b/c", 2).withInteger("a/d[1]/e", 2);
+        assertEquals(5, ownedCount(json));
+
+        // Copies made after the snapshot are not held once they leave the document
+        json.withString("a/b", "replaced");
+        assertEquals(4, ownedCount(json));
+        json.remove("a/d");
+        assertEquals("{\"a\":{\"b\":\"replaced\",\"d\":[]}}", json.write(COMPACT));
+        assertEquals(2, ownedCount(json));
+        json.remove("a");
+        assertEquals(1, ownedCount(json));
+
+        // Removing array elements replaces the array
+        json = JSON.parse("{\"a\": [{\"b\": 1}, {\"b\": 2}, {\"b\": 3}]}");
+        JSON snapshot = json.snapshot();
+        json.withInteger("a[1]/b", 4).withInteger("a[2]/b", 5);
+        assertEquals(4, ownedCount(json));
+        json.remove("a[b > 3]");
+        assertEquals("{\"a\":[{\"b\":3}]}", json.write(COMPACT));
+        assertEquals(1, ownedCount(json));
+        assertEquals("{\"a\":[{\"b\":1},{\"b\":2},{\"b\":3}]}", snapshot.write(COMPACT));
+    }
+
+    /**
+     * @return Number of containers a document has copied since its last snapshot, which it holds on to
+     */
+    private static int ownedCount(JSON json) throws Exception {
+        Field field = JSON.class.getDeclaredField("owned");
+        field.setAccessible(true);
+        return ((Set<?>) field.get(json)).size();
+    }
+
+    @Test
+    public void jsonLibFields() throws Exception {
+        // Snapshots and attach share nodes through these private json-lib fields, so a json-lib upgrade must keep them
+        assertTrue(Map.class.isAssignableFrom(JSONObject.class.getDeclaredField("properties").getType()));
+        assertTrue(List.class.isAssignableFrom(JSONArray.class.getDeclaredField("elements").getType()));
+    }
+
+    @Test
+    public void diffAndApply() {
+        JSON source = getPersonJSONCutlet();
+        JSON target = source.snapshot()
+                .withString("person/address/city", "Boston")
+                .withString("person/nickname", "Johnny");
+        target.remove("person/children/Bethanie");
+        target.remove("person/favouriteColours[2]");
+
+        JSON patch = JSON.diff(source, target);
+        assertEquals("[" +
+                "{\"op\":\"replace\",\"path\":\"/person/address/city\",\"value\":\"Boston\"}," +
+                "{\"op\":\"remove\",\"path\":\"/person/children/Bethanie\"}," +
+                "{\"op\":\"remove\",\"path\":\"/person/favouriteColours/1\"}," +
+                "{\"op\":\"add\",\"path\":\"/person/nickname\",\"value\":\"Johnny\"}]", patch.write(COMPACT));
+
+        JSON patched = getPersonJSONCutlet().apply(JSON.parse(patch.write(COMPACT)));
+        assertEquals(target, patched);
+        assertEquals("[]", JSON.diff(target, patched).write(COMPACT));
+
+        // Numbers are compared by value, whether parsed or set
+        JSON numbers = JSON.parse("{\"a\": 1, \"b\": 2.50, \"c\": [1, 2]}");
+        JSON set = JSON.create().withInteger("a", 1).withBigDecimal("b", new BigDecimal("2.5")).withList("c", newArrayList(1L, 2L), Long.class);
+        assertEquals("[]", JSON.diff(numbers, set).write(COMPACT));
+    }
+
+    @Test
+    public void applyIsAtomic() {
+        JSON json = getPersonInPersonJSON();
+        JSON patch = JSON.parse("[" +
+                "{\"op\": \"replace\", \"path\": \"/person/firstName\", \"value\": \"Jane\"}," +
+                "{\"op\": \"move\", \"from\": \"/person/lastName\", \"path\": \"/person/surname\"}," +
+                "{\"op\": \"add\", \"path\": \"/person/favouriteColours/-\", \"value\": \"red\"}," +
+                "{\"op\": \"test\", \"path\": \"/person/firstName\", \"value\": \"Jane\"}]");
+        json.apply(patch);
+        assertEquals("Jane", json.getString("firstName"));
+        assertEquals("Smith", json.getString("surname"));
+        assertFalse(json.exists("lastName"));
+        assertEquals("red", json.getString("favouriteColours[4]"));
+
+        try {
+            json.apply(JSON.parse("[" +
+                    "{\"op\": \"remove\", \"path\": \"/person/firstName\"}," +
+                    "{\"op\": \"test\", \"path\": \"/person/surname\", \"value\": \"Jones\"}]"));
+            fail();
+        } catch (CutletRuntimeException e) {
+            // Expected
+        }
+        assertEquals("Jane", json.getString("firstName"));
+    }
+
+    @Test
+    public void mergePatch() {
+        JSON json = getPersonInPersonJSON();
+        json.merge(JSON.parse("{\"person\": {\"address\": {\"city\": \"Boston\", \"postalCode\": null}, \"active\": false}}"));
+
+        assertEquals("Boston", json.getString("address/city"));
+        assertEquals("NY", json.getString("address/state"));
+        assertFalse(json.exists("address/postalCode"));
+        assertFalse(json.getBoolean("active"));
+    }
+
+    @Test
+    public void fingerprint() {
+        JSON json = getPersonJSONCutlet();
+        Fingerprint before = json.fingerprint();
+        Fingerprint address = json.get("person/address").fingerprint();
+
+        assertEquals(before, JSON.parse(json.write(PRETTY)).fingerprint());
+        assertEquals(JSON.parse("{\"a\": 1, \"b\": [true, null]}").fingerprint(),
+            JSON.parse("{\"b\": [true, null], \"a\": 1.0}").fingerprint());
+        assertNotEquals(JSON.parse("{\"a\": \"1\"}").fingerprint(), JSON.parse("{\"a\": 1}").fingerprint());
+
+        json.withString("person/firstName", "Jane");
+        assertNotEquals(before, json.fingerprint());
+        assertEquals(address, json.get("person/address").fingerprint());
+
+        json.withString("person/address/city", "Boston");
+        assertNotEquals(address, json.get("person/address").fingerprint());
+        assertEquals(JSON.parse(json.write(COMPACT)).fingerprint(), json.fingerprint());
+
+        json.withString("person/firstName", "John");
+        json.withString("person/address/city", "New York");
+        assertEquals(before, json.fingerprint());
+    }
+
+    @Test
+    public void toXML() {
+        JSON json = JSON.parse("{\"@id\": 7, \"name\": \"John\", \"tags\": [\"a\", \"b\"], \"address\": {\"city\": null}}");
+        XML xml = json.toXML("person");
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><person id=\"7\"><name>John</name>" +
+            "<tags>a</tags><tags>b</tags><address><city/></address></person>", xml.write(COMPACT));
+        assertEquals(newArrayList("a", "b"), xml.getStringList("tags"));
+
+        try {
+            JSON.parse("{\"a\": [[1]]}").toXML("root");
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "nested arrays");
+        }
+
+        // Keys that are not XML names
+        for (String text : newArrayList("{\"a b\": 1}", "{\"1a\": 1}", "{\"\": 1}", "{\"@x<y\": 1}")) {
+            try {
+                JSON.parse(text).toXML("root");
+                fail(text);
+            } catch (CutletRuntimeException e) {
+                TestUtil.assertContains(e.getMessage(), "not a valid");
+            }
+        }
+    }
+
+    @Test
+    public void binaryFormats() {
+        JSON json = getPersonJSONCutlet()
+            .withBigInteger("person/big", new BigInteger("-123456789012345678901234567890"))
+            .withString("person/unicode", "\u00e9t\u00e9 \u2603")
+            .withString("person/long", StringUtils.repeat("x", 300));
+
+        // Parsed numbers are written as they were parsed, but binary formats hold 1E7 as a double
+        String expected = json.write(COMPACT).replace("1E7", "1.0E7");
+        for (BinaryFormat format : BinaryFormat.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            json.writeBinary(out, format);
+            JSON parsed = JSON.parseBinary(new ByteArrayInputStream(out.toByteArray()), format);
+            if (format != BinaryFormat.MESSAGE_PACK) {
+                // MessagePack has no big integers, so writes them as strings
+                assertEquals(format.toString(), expected, parsed.write(COMPACT));
+            }
+            assertEquals(json.getString("person/unicode"), parsed.getString("person/unicode"));
+            assertEquals(json.getBigDecimalList("person/favouriteNumbers"), parsed.getBigDecimalList("person/favouriteNumbers"));
+            assertEquals(new BigInteger("-123456789012345678901234567890"), parsed.getBigInteger("person/big"));
+        }
+
+        assertBinary("a1616101", JSON.parse("{\"a\": 1}"), BinaryFormat.CBOR);
+        assertBinary("3a290a00fa8061c2fb", JSON.parse("{\"a\": 1}"), BinaryFormat.SMILE);
+        assertBinary("81a16101", JSON.parse("{\"a\": 1}"), BinaryFormat.MESSAGE_PACK);
+
+        // Hostile input: a declared length far beyond the data, and nesting deeper than the stack allows
+        try {
+            JSON.parseBinary(new ByteArrayInputStream(new byte[] {(byte) 0x81, 0x7a, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 'a'}), BinaryFormat.CBOR);
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "IO exception reading CBOR");
+        }
+        byte[] deep = new byte[100001];
+        Arrays.fill(deep, (byte) 0x81);
+        deep[deep.length - 1] = 0x01;
+        try {
+            JSON.parseBinary(new ByteArrayInputStream(deep), BinaryFormat.CBOR);
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertEquals("Parse limit exceeded: nesting depth [1001] greater than maximum [1000]", e.getMessage());
+        }
+        try {
+            JSON.parseBinary(new ByteArrayInputStream(deep), BinaryFormat.CBOR, new ParseOptions().withMaxDepth(3));
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertEquals("Parse limit exceeded: nesting depth [4] greater than maximum [3]", e.getMessage());
+        }
+
+        // The other formats, and CBOR tags, which nest without containers
+        assertInvalidBinary(StringUtils.repeat("c6", 1001) + "01", BinaryFormat.CBOR, "Parse limit exceeded: nesting depth [1001] greater than maximum [1000]");
+        assertInvalidBinary(StringUtils.repeat("91", 1001) + "01", BinaryFormat.MESSAGE_PACK, "Parse limit exceeded: nesting depth [1001] greater than maximum [1000]");
+        assertInvalidBinary("3a290a00" + StringUtils.repeat("f8", 1001), BinaryFormat.SMILE, "Parse limit exceeded: nesting depth [1001] greater than maximum [1000]");
+        try {
+            JSON.parseBinary(new ByteArrayInputStream(fromHex("91db7fffffff61")), BinaryFormat.MESSAGE_PACK);
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "IO exception reading MESSAGE_PACK");
+        }
+
+        // Decimal fractions, [exponent, mantissa], must hold integers and a scale that fits an int
+        assertEquals("[273.15]", JSON.parseBinary(new ByteArrayInputStream(fromHex("81c48221196ab3")), BinaryFormat.CBOR).write(COMPACT));
+        assertEquals("[1.5E+20]", JSON.parseBinary(new ByteArrayInputStream(fromHex("81c48213c2410f")), BinaryFormat.CBOR).write(COMPACT));
+        assertInvalidBinary("81c401", BinaryFormat.CBOR, "Invalid binary data at offset [3]: Decimal fraction tag must contain an array of exponent and mantissa");
+        assertInvalidBinary("81c48221f93c00", BinaryFormat.CBOR, "Invalid binary data at offset [7]: Decimal fraction tag must contain an integer exponent and mantissa");
+        assertInvalidBinary("81c482616101", BinaryFormat.CBOR, "Invalid binary data at offset [6]: Decimal fraction tag must contain an integer exponent and mantissa");
+        assertInvalidBinary("81c4823a7fffffff01", BinaryFormat.CBOR, "Invalid binary data at offset [9]: Decimal fraction exponent [-2147483648] out of range");
+        assertInvalidBinary("81c4821b000000010000000001", BinaryFormat.CBOR, "Invalid binary data at offset [13]: Decimal fraction exponent [4294967296] out of range");
+    }
+
+    private static void assertInvalidBinary(String hex, BinaryFormat format, String message) {
+        try {
+            JSON.parseBinary(new ByteArrayInputStream(fromHex(hex)), format);
+            fail(hex);
+        } catch (CutletRuntimeException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void snapshotFiles() throws IOException {
+        JSON json = getPersonJSONCutlet();
+        File file = File.createTempFile("cutlet", "snapshot");
+        json.saveSnapshot(file);
+
+        JSON loaded = JSON.loadSnapshot(file);
+        assertEquals(json.write(COMPACT).replace("1E7", "1.0E7"), loaded.write(COMPACT));
+        assertEquals("New York", loaded.getString("person/address/city"));
+
+        try {
+            XML.loadSnapshot(file);
+            fail();
+        } catch (CutletRuntimeException e) {
+            TestUtil.assertContains(e.getMessage(), "snapshot of JSON");
+        }
+    }
+
+    private static void assertBinary(String hex, JSON json, BinaryFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        json.writeBinary(out, format);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : out.toByteArray()) {
+            sb.append(String.format("%02x", b));
+        }
+        assertEquals(hex, sb.toString());
+    }
+
     private JSON getPersonInPersonJSON() {
         JSON json = getPersonJSONCutlet();
         return json.get("person");
@@ -3,22 +3,45 @@
 package com.snell.michael.cutlet.implementation;
 
 import com.google.common.collect.Lists;
+import com.snell.michael.cutlet.CutletIndex;
 import com.snell.michael.cutlet.CutletRuntimeException;
+import com.snell.michael.cutlet.CutletStore;
+import com.snell.michael.cutlet.Fingerprint;
+import com.snell.michael.cutlet.JSON;
+import com.snell.michael.cutlet.ParseOptions;
+import com.snell.michael.cutlet.SymbolTable;
+import com.snell.michael.cutlet.Transcode;
 import com.snell.michael.cutlet.XML;
+import com.snell.michael.cutlet.XMLGenerator;
+import com.snell.michael.cutlet.XPathProfiler;
+import org.apache.commons.io.FileUtils;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.joda.time.format.ISODateTimeFormat;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
 import static com.snell.michael.cutlet.WriteStyle.COMPACT;
 import static com.snell.michael.cutlet.WriteStyle.PRETTY;
 import static com.snell.michael.cutlet.implementation.TestUtil.assertContains;
 import static java.math.BigDecimal.TEN;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.joda.time.DateTimeZone.UTC;
 import static org.junit.Assert.*;
 
@@ -235,6 +258,446 @@ public class XMLTest {
         assertEquals(one, two);
     }
 
+    @Test
+    public void store() {
+        CutletStore store = new CutletStore(2, 256);
+        XML xml = XML.parse("<order id=\"7\">\n  <!-- customer -->\n  <customer><name>Ann</name></customer>\n  <line>1</line>\n</order>");
+
+        // Stored without freezing, so the document stays modifiable and later changes do not reach the store
+        store.put("order", xml);
+        assertFalse(xml.isFrozen());
+        assertEquals(xml.write(PRETTY), store.getXML("order").write(PRETTY));
+        xml.withString("customer/name", "Bob").withString("line", "2");
+        XML stored = store.getXML("order");
+        assertEquals("Ann", stored.getString("customer/name"));
+        assertEquals("1", stored.getString("line"));
+        assertEquals("7", stored.getString("@id"));
+
+        // Only the element of a Cutlet within a document, and frozen documents as they are
+        store.put("customer", xml.get("customer"));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><customer><name>Bob</name></customer>", store.getXML("customer").write(COMPACT));
+        XML frozen = xml.freeze();
+        store.put("frozen", frozen);
+        assertEquals(frozen.write(COMPACT), store.getXML("frozen").write(COMPACT));
+    }
+
+    @Test
+    public void freeze() throws Exception {
+        XML xml = getPersonXMLCutlet();
+        final XML frozen = xml.freeze();
+        xml.withString("firstName", "Jane");
+
+        assertTrue(frozen.isFrozen());
+        assertEquals("John", frozen.getString("firstName"));
+        assertEquals(newHashSet("Albert", "Bethanie", "Charlie"), frozen.get("children").getChildren());
+
+        try {
+            frozen.get("address").withString("city", "Boston");
+            fail();
+        } catch (CutletRuntimeException e) {
+            // Expected
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return frozen.getString("phoneNumber[type = 'fax']/number");
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("646 555-4567", future.get());
+        }
+
+        // Values of elements with many children, read by many threads at once
+        final XML mixed = XML.parse("<a>\n  <b>one <i>two</i> three</b>\n  <c>four</c>\n  <!-- five -->\n</a>").freeze();
+        futures.clear();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return mixed.getString("b") + "|" + mixed.getString(".") + "|" + mixed.exists("b[. = 'onetwothree']");
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("onetwothree|onetwothreefour|true", future.get());
+        }
+        executor.shutdown();
+
+        // The same values as an unfrozen copy, and whitespace is kept
+        XML unfrozen = XML.parse("<a>\n  <b>one <i>two</i> three</b>\n  <c>four</c>\n  <!-- five -->\n</a>");
+        assertEquals(unfrozen.getString("."), mixed.getString("."));
+        assertEquals(unfrozen.write(COMPACT), mixed.write(COMPACT));
+        assertEquals(unfrozen.write(PRETTY), unfrozen.freeze().write(PRETTY));
+    }
+
+    @Test
+    public void fingerprint() {
+        XML xml = getPersonXMLCutlet();
+        Fingerprint before = xml.fingerprint();
+        Fingerprint address = xml.get("address").fingerprint();
+
+        assertEquals(before, XML.parse(xml.write(COMPACT)).fingerprint());
+        assertEquals(XML.parse("<a x='1' y='2'>\n  <b>text</b>\n</a>").fingerprint(),
+            XML.parse("<a y='2' x='1'><b><![CDATA[text]]></b><!-- ignored --></a>").fingerprint());
+
+        xml.withString("firstName", "Jane");
+        assertNotEquals(before, xml.fingerprint());
+        assertEquals(address, xml.get("address").fingerprint());
+
+        xml.withString("address/city", "Boston");
+        assertNotEquals(address, xml.get("address").fingerprint());
+        assertEquals(XML.parse(xml.write(COMPACT)).fingerprint(), xml.fingerprint());
+
+        xml.withString("firstName", "John");
+        xml.withString("address/city", "New York");
+        assertEquals(before, xml.fingerprint());
+    }
+
+    @Test
+    public void toJSON() {
+        XML xml = getPersonXMLCutlet();
+        JSON json = xml.toJSON();
+
+        assertEquals("New York", json.getString("address/city"));
+        assertEquals("646 555-4567", json.getString("phoneNumber[type = 'fax']/number"));
+        assertEquals(newArrayList("green", "blue", "indigo"), json.getStringList("favouriteColour"));
+        assertEquals(xml.fingerprint(), json.toXML("person").fingerprint());
+
+        JSON attributes = XML.parse("<a x='1'><b y='2'>text</b><c/></a>").toJSON();
+        assertEquals("{\"@x\":\"1\",\"b\":{\"@y\":\"2\",\"#text\":\"text\"},\"c\":\"\"}", attributes.write(COMPACT));
+    }
+
+    @Test
+    public void transcode() throws IOException {
+        String xml = TestUtil.readFileResource(getClass(), "person.xml");
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        Transcode.xmlToJson(new ByteArrayInputStream(xml.getBytes(UTF_8)), json);
+        assertEquals(XML.parse(xml).toJSON(), JSON.parse(new String(json.toByteArray(), UTF_8)));
+
+        ByteArrayOutputStream roundTrip = new ByteArrayOutputStream();
+        Transcode.jsonToXml(new ByteArrayInputStream(json.toByteArray()), roundTrip, "person");
+        assertEquals(XML.parse(xml).fingerprint(), XML.parse(new String(roundTrip.toByteArray(), UTF_8)).fingerprint());
+
+        try {
+            Transcode.xmlToJson(new ByteArrayInputStream("<a><b/><c/><b/></a>".getBytes(UTF_8)), new ByteArrayOutputStream());
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "not consecutive");
+        }
+
+        // Array names given, so single elements are arrays and nothing is held back
+        ByteArrayOutputStream hinted = new ByteArrayOutputStream();
+        Transcode.xmlToJson(new ByteArrayInputStream("<root><items><item id='1'/><item>2</item></items><one><item/></one></root>".getBytes(UTF_8)), hinted, newHashSet("item"));
+        assertEquals("{\"items\":{\"item\":[{\"@id\":\"1\"},\"2\"]},\"one\":{\"item\":[\"\"]}}", new String(hinted.toByteArray(), UTF_8));
+        try {
+            Transcode.xmlToJson(new ByteArrayInputStream("<a><b/><b/></a>".getBytes(UTF_8)), new ByteArrayOutputStream(), newHashSet("c"));
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "not one of the array names");
+        }
+
+        // No DTDs, so external entities are never read
+        File secret = File.createTempFile("cutlet", "secret");
+        FileUtils.write(secret, "SECRET123", UTF_8);
+        String xxe = "<?xml version=\"1.0\"?><!DOCTYPE a [<!ENTITY e SYSTEM \"" + secret.toURI() + "\">]><a>&e;</a>";
+        ByteArrayOutputStream leaked = new ByteArrayOutputStream();
+        try {
+            Transcode.xmlToJson(new ByteArrayInputStream(xxe.getBytes(UTF_8)), leaked);
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertFalse(new String(leaked.toByteArray(), UTF_8).contains("SECRET123"));
+        }
+
+        // Keys that are not XML names give an error rather than malformed XML
+        for (String text : newArrayList("{\"a b\": 1}", "{\"x\": [{\"<y\": 1}]}", "{\"@1\": 1}")) {
+            try {
+                Transcode.jsonToXml(new ByteArrayInputStream(text.getBytes(UTF_8)), new ByteArrayOutputStream(), "root");
+                fail(text);
+            } catch (CutletRuntimeException e) {
+                assertContains(e.getMessage(), "is not a valid element or attribute name");
+            }
+        }
+        try {
+            Transcode.jsonToXml(new ByteArrayInputStream("{}".getBytes(UTF_8)), new ByteArrayOutputStream(), "no root");
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "[no root]");
+        }
+    }
+
+    @Test
+    public void snapshotFiles() throws IOException {
+        XML xml = XML.parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a xmlns:p=\"urn:p\" id=\"1\"><!-- c --><p:b p:x=\"2\">\u00e9<![CDATA[<>]]></p:b><b/></a>");
+        File file = File.createTempFile("cutlet", "snapshot");
+        xml.saveSnapshot(file);
+
+        XML loaded = XML.loadSnapshot(file);
+        assertEquals(xml.write(COMPACT), loaded.write(COMPACT));
+        assertEquals("1", loaded.getString("@id"));
+
+        getPersonXMLCutlet().get("address").saveSnapshot(file);
+        assertEquals("New York", XML.loadSnapshot(file).getString("city"));
+    }
+
+    @Test
+    public void internedParse() {
+        SymbolTable symbols = new SymbolTable(100);
+        ParseOptions options = new ParseOptions().withInternedValues(8).withSymbolTable(symbols);
+        XML first = XML.parse("<a type='home'><b>home</b><c>not interned</c></a>", options);
+        XML.parse("<a type='home'><b>home</b></a>", options);
+
+        assertEquals(1, symbols.size());
+        assertEquals("home", first.getString("b"));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a type=\"home\"><b>home</b><c>not interned</c></a>", first.write(COMPACT));
+    }
+
+    @Test
+    public void parseConcurrently() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File file = File.createTempFile("cutlet", "xml");
+            getPersonXMLCutlet().withInteger("id", i).write(file, COMPACT);
+            files.add(file);
+        }
+
+        List<XML> xmls = XML.parseAll(files, 4);
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(Integer.valueOf(i), xmls.get(i).getInteger("id"));
+        }
+
+        // Files more than parallelism ahead of the consumer are not read until it catches up
+        final List<Integer> ids = new ArrayList<>();
+        XML.parseEach(files, 4, new Consumer<XML>() {
+            @Override
+            public void accept(XML xml) {
+                if (ids.isEmpty()) {
+                    for (int i = 4; i < files.size(); i++) {
+                        getPersonXMLCutlet().withInteger("id", i + 100).write(files.get(i), COMPACT);
+                    }
+                }
+                ids.add(xml.getInteger("id"));
+            }
+        });
+        assertEquals(20, ids.size());
+        assertEquals(Integer.valueOf(3), ids.get(3));
+        assertEquals(Integer.valueOf(104), ids.get(4));
+        assertEquals(Integer.valueOf(119), ids.get(19));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        XML xml = XML.parseAsync(TestUtil.openResourceStream(getClass(), "person.xml"), executor).get();
+        assertEquals("John", xml.getString("firstName"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void index() {
+        XML xml = getPersonXMLCutlet();
+        CutletIndex<XML> index = xml.index("phoneNumber", "type");
+        assertEquals(newHashSet("home", "fax"), index.keySet());
+        assertEquals("646 555-4567", index.get("fax").getString("number"));
+        assertNull(index.get("mobile"));
+        assertTrue(index.getAll("mobile").isEmpty());
+
+        xml.add("phoneNumber[3]").withString("type", "fax").withString("number", "646 555-0000");
+        assertEquals(2, index.getAll("fax").size());
+        assertEquals("646 555-0000", index.getAll("fax").get(1).getString("number"));
+
+        index.get("home").withString("type", "mobile");
+        assertFalse(index.containsKey("home"));
+        assertEquals("212 555-1234", index.get("mobile").getString("number"));
+
+        XML people = XML.parse("<people><person id=\"1\"><name>a</name></person><person id=\"2\"><name>b</name></person><person/></people>");
+        CutletIndex<XML> byId = people.freeze().index("person", "@id");
+        assertEquals(2, byId.size());
+        assertEquals("b", byId.get(2).getString("name"));
+    }
+
+    @Test
+    public void groupByAndToMap() {
+        XML people = XML.parse(TestUtil.readFileResource(getClass(), "example/input.xml"));
+        Map<String, String> mobiles = people.toMap("person", "phonenumber[@type = 'mobile']", "firstname", String.class, String.class);
+        assertEquals(newArrayList("0491570156", "0491570999"), newArrayList(mobiles.keySet()));
+        assertEquals("Alfred", mobiles.get("0491570999"));
+
+        XML xml = getPersonXMLCutlet();
+        Map<String, List<XML>> byType = xml.groupBy("phoneNumber", "type", String.class);
+        assertEquals(newArrayList("home", "fax"), newArrayList(byType.keySet()));
+        assertEquals("646 555-4567", byType.get("fax").get(0).getString("number"));
+
+        Map<Boolean, List<XML>> byChild = xml.groupBy("children/*", "text() = 'boy'", Boolean.class);
+        assertEquals(2, byChild.get(true).size());
+        assertEquals(1, byChild.get(false).size());
+
+        try {
+            people.toMap("person/phonenumber", "@type", ".", String.class, String.class);
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "Duplicate key [home]");
+        }
+    }
+
+    @Test
+    public void aggregates() {
+        XML xml = getPersonXMLCutlet();
+        assertEquals(2, xml.count("phoneNumber"));
+        assertEquals(4, xml.count("favouriteNumber"));
+        assertEquals(-42, xml.min("favouriteNumber"), 0);
+        assertEquals(0, new BigDecimal("1E7").compareTo(xml.maxBigDecimal("favouriteNumber")));
+        assertEquals(new BigDecimal("9999962.141592"), xml.sumBigDecimal("favouriteNumber").stripTrailingZeros());
+    }
+
+    @Test
+    public void builder() {
+        XML xml = XML.builder("person")
+                .attribute("id", 1)
+                .element("firstName", "John")
+                .element("dateOfBirth", new LocalDate(1969, 2, 28))
+                .begin("address").attribute("type", null).element("city", "New York").end()
+                .begin("note").text("a < b").end()
+                .build();
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><person id=\"1\"><firstName>John</firstName><dateOfBirth>1969-02-28</dateOfBirth><address><city>New York</city></address><note>a &lt; b</note></person>", xml.write(COMPACT));
+        assertEquals(Integer.valueOf(1), xml.getInteger("@id"));
+        assertEquals("New York", xml.getString("address/city"));
+        xml.withString("address/state", "NY");
+        assertEquals("NY", xml.getString("address/state"));
+
+        try {
+            XML.builder("a").end();
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "Cannot end the root element [a]");
+        }
+    }
+
+    @Test
+    public void generator() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XMLGenerator generator = XML.writer(out, "people")) {
+            generator.attribute("count", 2);
+            for (int i = 0; i < 2; i++) {
+                generator.begin("person")
+                        .attribute("id", i)
+                        .element("name", "a < b")
+                        .element("born", new LocalDate(1969, 2, 28))
+                        .end();
+            }
+            generator.element(XML.parse("<person id=\"2\"><name>c</name></person>"))
+                    .begin("unclosed").text("text");
+        }
+
+        String text = new String(out.toByteArray(), UTF_8);
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><people count=\"2\"><person id=\"0\"><name>a &lt; b</name><born>1969-02-28</born></person><person id=\"1\"><name>a &lt; b</name><born>1969-02-28</born></person><person id=\"2\"><name>c</name></person><unclosed>text</unclosed></people>", text);
+        assertEquals(3, XML.parse(text).count("person"));
+
+        try {
+            XML.writer(new ByteArrayOutputStream(), "a").element("b", "c").attribute("d", "e");
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "Cannot write attribute [d]");
+        }
+    }
+
+    @Test
+    public void attachAndMoveList() {
+        XML fragment = XML.parse("<fragment><person id=\"1\"/><person id=\"2\"/></fragment>");
+        XML xml = XML.create("people").moveList("all", fragment.getList("person"));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><people><all><person id=\"1\"/><person id=\"2\"/></all></people>", xml.write(COMPACT));
+        assertEquals(0, fragment.count("person"));
+
+        XML other = XML.parse("<person id=\"3\"><name>c</name></person>");
+        xml.attach("all", other);
+        assertEquals("c", xml.getString("all/person[3]/name"));
+
+        // Moving within the document
+        xml.attach(".", xml.get("all/person[1]"));
+        assertEquals(2, xml.count("all/person"));
+        assertEquals(Integer.valueOf(1), xml.getInteger("person/@id"));
+
+        XML frozen = XML.parse("<person id=\"4\"/>").freeze();
+        xml.attach("all", frozen);
+        assertEquals(3, xml.count("all/person"));
+        assertEquals(Integer.valueOf(4), frozen.getInteger("@id"));
+    }
+
+    @Test
+    public void parseLimits() {
+        String xml = "<a x=\"1\"><b y=\"2\" z=\"3\"><c>long text</c></b></a>";
+        ParseOptions limits = new ParseOptions().withMaxDepth(3).withMaxNodes(7).withMaxStringLength(9).withMaxAttributes(2);
+        assertEquals("long text", XML.parse(xml, limits).getString("b/c"));
+
+        assertParseLimit(xml, new ParseOptions().withMaxBytes(10), "input size [" + xml.length() + "] greater than maximum [10]");
+        assertParseLimit(xml, new ParseOptions().withMaxDepth(2), "nesting depth [3] greater than maximum [2]");
+        assertParseLimit(xml, new ParseOptions().withMaxNodes(6), "node count [7] greater than maximum [6]");
+        assertParseLimit(xml, new ParseOptions().withMaxStringLength(8), "string length [9] greater than maximum [8]");
+        assertParseLimit(xml, new ParseOptions().withMaxAttributes(1), "attribute count [2] greater than maximum [1]");
+        assertParseLimit("<a x=\"1\" y=\"2\"/>", new ParseOptions().withMaxAttributes(1), "attribute count [2] greater than maximum [1]");
+
+        try {
+            XML.parse(new ByteArrayInputStream(xml.getBytes(UTF_8)), new ParseOptions().withMaxBytes(10));
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), "greater than maximum [10]");
+        }
+
+        // The parser is reused, without the limits
+        assertEquals("long text", XML.parse(xml).getString("b/c"));
+    }
+
+    private static void assertParseLimit(String xml, ParseOptions options, String message) {
+        try {
+            XML.parse(xml, options);
+            fail();
+        } catch (CutletRuntimeException e) {
+            assertContains(e.getMessage(), message);
+        }
+    }
+
+    @Test
+    public void xpathProfiler() {
+        XPathProfiler profiler = new XPathProfiler();
+        XML xml = getPersonXMLCutlet().withMetrics(profiler);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("New York", xml.getString("address/city"));
+        }
+        assertEquals(3, xml.getList("favouriteColour").size());
+        assertEquals("fax", xml.getString("phoneNumber[number='646 555-4567']/type"));
+        assertFalse(xml.exists("address/country"));
+
+        List<XPathProfiler.Entry> entries = profiler.getEntries();
+        assertEquals(4, entries.size());
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i - 1).getTotalNanos() >= entries.get(i).getTotalNanos());
+        }
+        for (XPathProfiler.Entry entry : entries) {
+            if (entry.getXPath().equals("address/city")) {
+                assertEquals(3, entry.getCount());
+                assertEquals(3, entry.getTotalResults());
+                assertTrue(entry.isSimple());
+            } else if (entry.getXPath().equals("favouriteColour")) {
+                assertEquals(3, entry.getMaxResults());
+            } else if (entry.getXPath().startsWith("phoneNumber")) {
+                assertFalse(entry.isSimple());
+            } else {
+                assertEquals(0, entry.getTotalResults());
+            }
+        }
+        assertContains(profiler.report(), "general phoneNumber[number='646 555-4567']/type");
+
+        assertTrue(XPathProfiler.isSimple("a/b/@c"));
+        assertFalse(XPathProfiler.isSimple("a//b"));
+        assertFalse(XPathProfiler.isSimple("count(a)"));
+        assertFalse(XPathProfiler.isSimple("*"));
+
+        profiler.reset();
+        assertTrue(profiler.getEntries().isEmpty());
+    }
+
     private XML getPersonXMLCutlet() {
         return XML.parse(TestUtil.readFileResource(getClass(), "person.xml"));
     }